@@ -62,6 +62,18 @@ tasks.jar {
     }
 }
 
+task("benchmarkLayout", JavaExec::class) {
+    description = "Measures the speedup of the parallel graph layout."
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass.set("se.dansarie.jsnowball.gui.ForceAtlas2Benchmark")
+}
+
+task("benchmarkReaders", JavaExec::class) {
+    description = "Measures read throughput from the model with and without a writer."
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass.set("se.dansarie.jsnowball.model.SnowballStateBenchmark")
+}
+
 task("copyDependencies", Copy::class) {
     from(configurations.runtimeClasspath).into("$buildDir/jars")
 }
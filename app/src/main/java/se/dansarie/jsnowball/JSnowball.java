@@ -28,25 +28,29 @@ import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RectangularShape;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
 import java.util.prefs.Preferences;
 import java.util.stream.Collectors;
 
+import javax.imageio.ImageIO;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.BoxLayout;
@@ -67,12 +71,14 @@ import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.KeyStroke;
+import javax.swing.ProgressMonitor;
 import javax.swing.ListModel;
 import javax.swing.ListSelectionModel;
 import javax.swing.RowFilter;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
@@ -96,12 +102,20 @@ import se.dansarie.jsnowball.gui.RhombusShape;
 import se.dansarie.jsnowball.model.Article;
 import se.dansarie.jsnowball.model.Arxiv;
 import se.dansarie.jsnowball.model.Author;
+import se.dansarie.jsnowball.model.ChangeJournal;
 import se.dansarie.jsnowball.model.CrossRef;
 import se.dansarie.jsnowball.model.Journal;
+import se.dansarie.jsnowball.model.ProjectWriter;
+import se.dansarie.jsnowball.model.ResponseCache;
+import se.dansarie.jsnowball.model.SnowballCrawler;
 import se.dansarie.jsnowball.model.SnowballState;
 import se.dansarie.jsnowball.model.Tag;
 
 public class JSnowball {
+  private static final int EXPORT_ITERATIONS = 5000;
+  private static final int EXPORT_IMAGE_SIZE = 8192;
+  private static final int JOURNAL_CHECK_INTERVAL_MS = 30000;
+  private static final long JOURNAL_SAVE_SIZE = 1 << 20;
   private ArticlePanel articlePanel = new ArticlePanel();
   private AuthorPanel authorPanel = new AuthorPanel();
   private JournalPanel journalPanel = new JournalPanel();
@@ -131,58 +145,24 @@ public class JSnowball {
   private ListSelectionWatcher<Journal> journalSelectionWatcher;
   private ListSelectionWatcher<Tag> tagSelectionWatcher;
   private File currentFile = null;
+  private SwingWorker<Void, Void> saveWorker = null;
+  private List<Runnable> pendingSaves = new ArrayList<>();
+  private ChangeJournal journal = null;
+  private long idleVersion = -1;
 
-  private GraphPanel<Article> articleGraph = new GraphPanel<>() {
-    {
-      setMemberFilter(m -> m.getStatus() != Article.ArticleStatus.EXCLUDED);
-    }
-    @Override
-    protected ListModel<Article> getListModel() {
-      if (getState() == null) {
-        return null;
-      }
-      return getState().getArticleListModel();
-    }
-
-    @Override
-    protected List<Article> getEdges(Article member) {
-      return member.getReferences();
-    }
-
-    @Override
-    protected Color getColor(Article member) {
-      List<Tag> tags = member.getTags();
-      if (tags.size() == 0) {
-        return Color.BLACK;
-      }
-      return new Color(tags.get(0).getColor());
-    }
-
-    @Override
-    protected RectangularShape getShape(Article member) {
-      List<Tag> tags = member.getTags();
-      if (tags.size() == 0) {
-        return new Ellipse2D.Float(0, 0, 25, 25);
-      }
-      switch (tags.get(0).getShape()) {
-        case CIRCLE:  return new Ellipse2D.Float(0, 0, 25, 25);
-        case SQUARE:  return new Rectangle2D.Float(0, 0, 25, 25);
-        case RHOMBUS: return new RhombusShape(30);
-        default: return new Ellipse2D.Float(0, 0, 25, 25);
-      }
-    }
-
-    @Override
-    protected boolean isSelected(Article member) {
-      return articleList.getSelectedValuesList().contains(member);
-    }
-  };
+  private GraphPanel<Article> articleGraph = new ArticleGraphPanel(
+      m -> articleList.getSelectedValuesList().contains(m));
 
   private GraphPanel<Author> authorGraph = new GraphPanel<>() {
     {
       setMemberFilter(m -> m.getArticles().stream().anyMatch(
           a -> a.getStatus() != Article.ArticleStatus.EXCLUDED));
     }
+    @Override
+    protected String getGraphName() {
+      return "authors";
+    }
+
     @Override
     protected ListModel<Author> getListModel() {
       if (getState() == null) {
@@ -193,18 +173,18 @@ public class JSnowball {
 
     @Override
     protected List<Author> getEdges(Author member) {
-      ArrayList<Author> edgeAuthors = new ArrayList<>();
+      Set<Author> edgeAuthors = new LinkedHashSet<>();
       for (Article ar: member.getArticles()) {
         for (Author au : ar.getAuthors()) {
           if (au == null) {
             throw new RuntimeException();
           }
-          if (au != null && au != member && !edgeAuthors.contains(au)) {
+          if (au != member) {
             edgeAuthors.add(au);
           }
         }
       }
-      return edgeAuthors;
+      return new ArrayList<>(edgeAuthors);
     }
 
     @Override
@@ -229,12 +209,13 @@ public class JSnowball {
     }
     @Override
     public void actionPerformed(ActionEvent ev) {
-      if (saveState(true, false)) {
+      saveState(true, false, () -> {
+        discardJournal();
         frame.setVisible(false);
         LogWindow.getInstance().setVisible(false);
         frame.dispose();
         LogWindow.getInstance().dispose();
-      }
+      });
     }
   };
 
@@ -245,10 +226,10 @@ public class JSnowball {
     }
     @Override
     public void actionPerformed(ActionEvent ev) {
-      if (saveState(true, false)) {
+      saveState(true, false, () -> {
         setState(new SnowballState());
         currentFile = null;
-      }
+      });
     }
   };
 
@@ -259,9 +240,10 @@ public class JSnowball {
     }
     @Override
     public void actionPerformed(ActionEvent ev) {
-      if (!saveState(true, false)) {
-        return;
-      }
+      saveState(true, false, this::openProject);
+    }
+
+    private void openProject() {
       JFileChooser chooser = new JFileChooser();
       chooser.setCurrentDirectory(getDirectoryPreference());
       if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
@@ -284,14 +266,14 @@ public class JSnowball {
     }
     @Override
     public void actionPerformed(ActionEvent ev) {
-      saveState(false, false);
+      saveState(false, false, () -> { });
     }
   };
 
   private Action saveAsAction = new AbstractAction("Save project as...") {
     @Override
     public void actionPerformed(ActionEvent ev) {
-      saveState(false, true);
+      saveState(false, true, () -> { });
     }
   };
 
@@ -308,11 +290,8 @@ public class JSnowball {
         return;
       }
       saveDirectoryPreference(fi);
-      try (
-        FileOutputStream fos = new FileOutputStream(fi);
-        OutputStreamWriter osw = new OutputStreamWriter(fos);
-      ) {
-        articleGraph.getSVG(osw);
+      try (Writer writer = Files.newBufferedWriter(fi.toPath(), StandardCharsets.UTF_8)) {
+        articleGraph.getSVG(writer);
       } catch (IOException ex) {
         LogWindow.getInstance().addThrowable(ex);
       }
@@ -398,6 +377,79 @@ public class JSnowball {
     }
   };
 
+  private Action crawlReferencesAction = new AbstractAction("Crawl references from start set...") {
+    @Override
+    public void actionPerformed(ActionEvent ev) {
+      if (state.getStartSet().isEmpty()) {
+        JOptionPane.showMessageDialog(frame, "The start set is empty.", "Crawl references",
+            JOptionPane.ERROR_MESSAGE);
+        return;
+      }
+      JSpinner hops = new JSpinner(new SpinnerNumberModel(2, 1, 10, 1));
+      if (JOptionPane.showConfirmDialog(frame, new Object[] {"Number of hops from the start set:",
+          hops}, "Crawl references", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE)
+          != JOptionPane.OK_OPTION) {
+        return;
+      }
+      /* A project that has not been saved has no checkpoint, and its crawl cannot be resumed. */
+      Path checkpoint = currentFile == null ? null
+          : SnowballCrawler.checkpointFile(currentFile.toPath());
+      if (checkpoint != null) {
+        try {
+          if (Files.exists(checkpoint) && JOptionPane.showConfirmDialog(frame,
+              "Resume the previous crawl?", "Crawl references", JOptionPane.YES_NO_OPTION,
+              JOptionPane.QUESTION_MESSAGE) != JOptionPane.YES_OPTION) {
+            Files.delete(checkpoint);
+          }
+        } catch (IOException ex) {
+          LogWindow.getInstance().addThrowable(ex);
+          return;
+        }
+      }
+
+      SnowballCrawler crawler = new SnowballCrawler(state, (Integer)hops.getValue());
+      crawler.setCheckpoint(checkpoint);
+      ProgressMonitor pm = new ProgressMonitor(frame, "Crawling references",
+          "Retrieving references.", 0, 1);
+      pm.setMillisToPopup(500);
+      pm.setMillisToDecideToPopup(100);
+      crawler.setProgressListener((depth, done, total, articles) ->
+          SwingUtilities.invokeLater(() -> {
+            if (pm.isCanceled()) {
+              crawler.cancel();
+              return;
+            }
+            pm.setMaximum(total + 1);
+            pm.setProgress(done);
+            pm.setNote("Hop " + (depth + 1) + ": " + done + " of " + total + " articles ("
+                + articles + " expanded)");
+          }));
+      SwingWorker<Void, Void> w = new SwingWorker<>() {
+        @Override
+        protected Void doInBackground() throws IOException, InterruptedException {
+          crawler.run();
+          if (!crawler.isCancelled() && checkpoint != null) {
+            Files.deleteIfExists(checkpoint);
+          }
+          return null;
+        }
+
+        @Override
+        protected void done() {
+          pm.close();
+          try {
+            get();
+          } catch (ExecutionException | InterruptedException ex) {
+            LogWindow.getInstance().addThrowable(ex);
+            JOptionPane.showMessageDialog(frame, "An error occurred while crawling references.",
+                "Crawl references", JOptionPane.ERROR_MESSAGE);
+          }
+        }
+      };
+      w.execute();
+    }
+  };
+
   private ScopusReferenceImportAction articlesFromScopusCsvAction = new ScopusReferenceImportAction(
       "Add articles from Scopus CSV...", state, frame);
 
@@ -407,7 +459,7 @@ public class JSnowball {
       Article art = new Article(state);
       art.setTitle("New article");
       tabbedPane.setSelectedIndex(0);
-      articleList.setSelectedIndex(state.getArticles().indexOf(art));
+      SwingUtilities.invokeLater(() -> articleList.setSelectedValue(art, true));
     }
   };
 
@@ -418,7 +470,7 @@ public class JSnowball {
       au.setLastName("New");
       au.setFirstName("Author");
       tabbedPane.setSelectedIndex(1);
-      authorList.setSelectedIndex(state.getAuthors().indexOf(au));
+      SwingUtilities.invokeLater(() -> authorList.setSelectedValue(au, true));
     }
   };
 
@@ -428,7 +480,7 @@ public class JSnowball {
       Journal jo = new Journal(state);
       jo.setName("New journal");
       tabbedPane.setSelectedIndex(2);
-    journalList.setSelectedIndex(state.getJournals().indexOf(jo));
+      SwingUtilities.invokeLater(() -> journalList.setSelectedValue(jo, true));
     }
   };
 
@@ -438,14 +490,14 @@ public class JSnowball {
       Tag ta = new Tag(state);
       ta.setName("New tag");
       tabbedPane.setSelectedIndex(3);
-      tagList.setSelectedIndex(state.getTags().indexOf(ta));
+      SwingUtilities.invokeLater(() -> tagList.setSelectedValue(ta, true));
     }
   };
 
   private Action pruneAuthorsAction = new AbstractAction("Prune authors...") {
     @Override
     public void actionPerformed(ActionEvent ev) {
-      List<Author> pruneList = state.getAuthors().stream().filter(a -> a.getArticles().size() == 0)
+      List<Author> pruneList = state.getAuthors().stream().filter(a -> a.getArticleCount() == 0)
           .collect(Collectors.toList());
       if (pruneList.size() == 0) {
         JOptionPane.showMessageDialog(frame, "No authors to prune.", "Prune authors",
@@ -465,14 +517,8 @@ public class JSnowball {
   private Action pruneJournalsAction = new AbstractAction("Prune journals...") {
     @Override
     public void actionPerformed(ActionEvent ev) {
-      List<Journal> pruneList = state.getJournals().stream().filter(j -> {
-            for (Article ar : state.getArticles()) {
-              if (ar.getJournal() == j) {
-                return false;
-              }
-            }
-            return true;
-          }).collect(Collectors.toList());
+      List<Journal> pruneList = state.getJournals().stream().filter(j -> j.getArticleCount() == 0)
+          .collect(Collectors.toList());
       if (pruneList.size() == 0) {
         JOptionPane.showMessageDialog(frame, "No journals to prune.", "Prune journals",
             JOptionPane.INFORMATION_MESSAGE);
@@ -512,6 +558,23 @@ public class JSnowball {
     }
   };
 
+  private Action offlineModeAction = new AbstractAction("Offline mode") {
+    {
+      setSelected(getPreferences().getBoolean("offline_mode", false));
+    }
+
+    private void setSelected(boolean selected) {
+      getPreferences().putBoolean("offline_mode", selected);
+      putValue(Action.SELECTED_KEY, selected);
+      ResponseCache.getInstance().setOffline(selected);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent ev) {
+      setSelected((Boolean)getValue(Action.SELECTED_KEY));
+    }
+  };
+
   private Action showLogAction = new AbstractAction("Show debug log...") {
     @Override
     public void actionPerformed(ActionEvent ev) {
@@ -589,7 +652,7 @@ public class JSnowball {
         case 0: return art.toString();
         case 1: return art.getJournal() == null ? "<No journal>" : art.getJournal().toString();
         case 2: return Integer.valueOf(art.getReferencesTo().size());
-        case 3: return art.distanceTo(state.getStartSet().toArray(new Article[0]));
+        case 3: return state.getDistanceFromStartSet(art);
         case 4: return art.getStatus().toString();
       }
       throw new IllegalArgumentException();
@@ -630,24 +693,10 @@ public class JSnowball {
     @Override
     public Object getValueAt(int row, int col) {
       Author au = listModel.getElementAt(row);
-      SnowballState state = au.getState();
-      int i = 0;
       switch (col) {
         case 0: return au.toString();
-        case 1:
-          for (Article art : state.getArticles()) {
-            if (art.getAuthors().contains(au)) {
-              i += 1;
-            }
-          }
-          return Integer.valueOf(i);
-        case 2:
-          for (Article art : state.getArticles()) {
-            if (art.getAuthors().contains(au)) {
-              i += art.getReferencesTo().size();
-            }
-          }
-          return Integer.valueOf(i);
+        case 1: return Integer.valueOf(au.getArticleCount());
+        case 2: return Integer.valueOf(au.getReferenceCount());
       }
       throw new IllegalArgumentException();
     }
@@ -687,24 +736,10 @@ public class JSnowball {
     @Override
     public Object getValueAt(int row, int col) {
       Journal jo = listModel.getElementAt(row);
-      SnowballState state = jo.getState();
-      int i = 0;
       switch (col) {
         case 0: return jo.toString();
-        case 1:
-          for (Article art : state.getArticles()) {
-            if (art.getJournal() == jo) {
-              i += 1;
-            }
-          }
-          return Integer.valueOf(i);
-        case 2:
-          for (Article art : state.getArticles()) {
-            if (art.getJournal() == jo) {
-              i += art.getReferencesTo().size();
-            }
-          }
-          return Integer.valueOf(i);
+        case 1: return Integer.valueOf(jo.getArticleCount());
+        case 2: return Integer.valueOf(jo.getReferenceCount());
       }
       throw new IllegalArgumentException();
     }
@@ -735,14 +770,7 @@ public class JSnowball {
       Tag tag = listModel.getElementAt(row);
       switch (col) {
         case 0: return tag.toString();
-        case 1:
-          int i = 0;
-          for (Article art : state.getArticles()) {
-            if (art.getTags().contains(tag)) {
-              i += 1;
-            }
-          }
-          return Integer.valueOf(i);
+        case 1: return Integer.valueOf(tag.getArticleCount());
       }
       throw new IllegalArgumentException();
     }
@@ -795,6 +823,7 @@ public class JSnowball {
   }
 
   private void setState(SnowballState state) {
+    discardJournal();
     if (this.state != null) {
       articleList.removeListSelectionListener(articleSelectionWatcher);
       authorList.removeListSelectionListener(authorSelectionWatcher);
@@ -841,30 +870,111 @@ public class JSnowball {
     articlesFromScopusCsvAction.setState(state);
   }
 
+  /* Loads a project and replays its change journal before the project is shown. If the journal
+     cannot be replayed, the project is loaded again as it was saved, and the journal is kept
+     under another name. */
   private void loadState(File fi) {
-    try  {
-      String json = Files.readString(fi.toPath());
-      setState(SnowballState.fromJson(json));
-      currentFile = fi;
+    SnowballState loaded;
+    ChangeJournal opened = null;
+    try {
+      loaded = SnowballState.load(fi.toPath());
+      try {
+        opened = ChangeJournal.open(loaded, fi.toPath());
+      } catch (IOException ex) {
+        LogWindow.getInstance().addThrowable(ex);
+        JOptionPane.showMessageDialog(frame, "The change journal of the project could not be "
+            + "replayed. The project has been opened as it was last saved, and the journal has "
+            + "been kept as " + ChangeJournal.failedJournalFile(fi.toPath()).getFileName()
+            + ". Changes will not be recorded until the project is saved.", "File error",
+            JOptionPane.ERROR_MESSAGE);
+        loaded = SnowballState.load(fi.toPath());
+      }
     } catch (IOException | JSONException ex) {
       LogWindow.getInstance().addThrowable(ex);
       JOptionPane.showMessageDialog(frame, "An error occured while attempting to read the project"
           + " file.", "File error", JOptionPane.ERROR_MESSAGE);
+      return;
+    }
+    setState(loaded);
+    currentFile = fi;
+    journal = opened;
+    if (journal != null && journal.getReplayed() > 0) {
+      JOptionPane.showMessageDialog(frame, "Unsaved changes from a previous session have been "
+          + "restored.", "JSnowball", JOptionPane.INFORMATION_MESSAGE);
     }
   }
 
-  private boolean saveState(boolean askFirst, boolean showDialog) {
+  /* Starts recording changes to the current project in a new change journal next to the file that
+     it was last saved to. Any journal already next to the file was made for an older version of it
+     and is deleted. */
+  private void startJournal(File fi) {
+    discardJournal();
+    try {
+      Files.deleteIfExists(ChangeJournal.journalFile(fi.toPath()));
+      journal = ChangeJournal.open(state, fi.toPath());
+    } catch (IOException ex) {
+      LogWindow.getInstance().addThrowable(ex);
+    }
+  }
+
+  private void discardJournal() {
+    if (journal == null) {
+      return;
+    }
+    try {
+      journal.discard();
+    } catch (IOException ex) {
+      LogWindow.getInstance().addThrowable(ex);
+    }
+    journal = null;
+  }
+
+  /* Called periodically. Reports journal errors and saves the project when the user is idle and the
+     journal has grown large, so that the journal does not take long to replay. */
+  private void checkJournal() {
+    if (journal == null) {
+      return;
+    }
+    if (journal.getFailure() != null) {
+      LogWindow.getInstance().addThrowable(journal.getFailure());
+      discardJournal();
+      return;
+    }
+    /* Node positions are recorded in the journal along with other changes. */
+    articleGraph.storeLayout();
+    authorGraph.storeLayout();
+    long version = state.getVersion();
+    if (version == idleVersion && saveWorker == null && journal.size() > JOURNAL_SAVE_SIZE
+        && !state.isSaved()) {
+      saveState(false, false, () -> { });
+    }
+    idleVersion = version;
+  }
+
+  /* Saves the project on a background thread and then runs the action, unless saving fails or is
+     cancelled. The action is run at once if the user chooses not to save. Saves are made one at a
+     time, so that an older snapshot never replaces a newer one. */
+  private void saveState(boolean askFirst, boolean showDialog, Runnable then) {
+    if (saveWorker != null) {
+      pendingSaves.add(() -> saveState(askFirst, showDialog, then));
+      return;
+    }
+    /* Storing the layout marks the project as unsaved if any node has moved. */
+    articleGraph.storeLayout();
+    authorGraph.storeLayout();
     if (askFirst) {
       if (state.isSaved()) {
-        return true;
+        then.run();
+        return;
       }
       int result = JOptionPane.showConfirmDialog(frame, "Current project has not been saved. "
             + "Do you wish to save it?", "Quit", JOptionPane.YES_NO_CANCEL_OPTION);
       if (result == JOptionPane.CANCEL_OPTION) {
-        return false;
+        return;
       }
       if (result == JOptionPane.NO_OPTION) {
-        return true;
+        then.run();
+        return;
       }
     }
     File fi;
@@ -872,27 +982,88 @@ public class JSnowball {
       JFileChooser chooser = new JFileChooser();
       chooser.setCurrentDirectory(getDirectoryPreference());
       if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
-        return false;
+        return;
       }
       fi = chooser.getSelectedFile();
       if (fi == null) {
-        return false;
+        return;
       }
       saveDirectoryPreference(fi);
     } else {
       fi = currentFile;
     }
-    try (PrintWriter pw = new PrintWriter(fi, StandardCharsets.UTF_8)) {
-      pw.print(state.getSerializationProxy().toJson());
-    } catch (IOException ex) {
-      LogWindow.getInstance().addThrowable(ex);
-      JOptionPane.showMessageDialog(frame, "An error occured while attempting to save the project"
-          + " file.", "File error", JOptionPane.ERROR_MESSAGE);
-      return false;
-    }
-    updateRecentFiles(fi);
-    currentFile = fi;
-    return true;
+    SnowballState saving = state;
+    ChangeJournal savingJournal = journal != null
+        && journal.getProjectFile().equals(fi.toPath().toAbsolutePath().normalize())
+        ? journal : null;
+    ProgressMonitor pm = new ProgressMonitor(frame, "Saving project", "Saving " + fi.getName()
+        + ".", 0, 1);
+    pm.setMillisToPopup(500);
+    pm.setMillisToDecideToPopup(100);
+    saveWorker = new SwingWorker<>() {
+      private volatile ProjectWriter writer = null;
+
+      /* The snapshot is taken on the worker thread, since it takes time for large projects and
+         has to wait while an import holds the write lock. */
+      @Override
+      protected Void doInBackground() throws IOException {
+        SnowballState.SerializationProxy snapshot = saving.getSnapshot();
+        ProjectWriter w = new ProjectWriter(snapshot);
+        w.setProgressListener((done, total) ->
+            SwingUtilities.invokeLater(() -> {
+              if (pm.isCanceled()) {
+                w.cancel();
+                return;
+              }
+              pm.setMaximum(total + 1);
+              pm.setProgress(done);
+              pm.setNote("Saved " + done + " of " + total + " items.");
+            }));
+        writer = w;
+        w.save(fi.toPath());
+        saving.markSaved(snapshot);
+        if (savingJournal != null) {
+          try {
+            savingJournal.compact(snapshot);
+          } catch (IOException ex) {
+            /* The project has been saved, and the journal is still valid. */
+            LogWindow.getInstance().addThrowable(ex);
+          }
+        }
+        return null;
+      }
+
+      @Override
+      protected void done() {
+        pm.close();
+        saveWorker = null;
+        boolean success = false;
+        try {
+          get();
+          success = true;
+          updateRecentFiles(fi);
+          if (state == saving) {
+            currentFile = fi;
+            if (journal == null || journal != savingJournal) {
+              startJournal(fi);
+            }
+          }
+        } catch (ExecutionException | InterruptedException ex) {
+          if (writer == null || !writer.isCancelled()) {
+            LogWindow.getInstance().addThrowable(ex);
+            JOptionPane.showMessageDialog(frame, "An error occured while attempting to save the "
+                + "project file.", "File error", JOptionPane.ERROR_MESSAGE);
+          }
+        }
+        List<Runnable> pending = new ArrayList<>(pendingSaves);
+        pendingSaves.clear();
+        if (success) {
+          then.run();
+        }
+        pending.forEach(Runnable::run);
+      }
+    };
+    saveWorker.execute();
   }
 
   private void createMenuBar() {
@@ -923,6 +1094,7 @@ public class JSnowball {
     JMenuItem addArticleDoi = new JMenuItem(articleFromDoiAction);
     JMenuItem addArticleArxiv= new JMenuItem(articleFromArxivAction);
     JMenuItem addArticleScopusCsv = new JMenuItem(articlesFromScopusCsvAction);
+    JMenuItem crawlReferencesItem = new JMenuItem(crawlReferencesAction);
     JMenuItem addArticleManually = new JMenuItem(addArticleAction);
     JMenuItem addAuthorItem = new JMenuItem(addAuthorAction);
     JMenuItem addJournalItem = new JMenuItem(addJournalAction);
@@ -933,6 +1105,7 @@ public class JSnowball {
     operationsMenu.add(addArticleDoi);
     operationsMenu.add(addArticleArxiv);
     operationsMenu.add(addArticleScopusCsv);
+    operationsMenu.add(crawlReferencesItem);
     operationsMenu.addSeparator();
     operationsMenu.add(addAuthorItem);
     operationsMenu.add(addJournalItem);
@@ -942,12 +1115,14 @@ public class JSnowball {
     operationsMenu.add(pruneJournalsItem);
     menubar.add(operationsMenu);
 
+    JMenu optionsMenu = new JMenu("Options");
+    JCheckBoxMenuItem offlineModeItem = new JCheckBoxMenuItem(offlineModeAction);
+    optionsMenu.add(offlineModeItem);
     if (System.getProperty("os.name").startsWith("Windows")) {
-      JMenu optionsMenu = new JMenu("Options");
       JCheckBoxMenuItem osKeystoreItem = new JCheckBoxMenuItem(osKeystoreAction);
       optionsMenu.add(osKeystoreItem);
-      menubar.add(optionsMenu);
     }
+    menubar.add(optionsMenu);
 
     JMenuItem logitem = new JMenuItem(showLogAction);
     JMenuItem aboutitem = new JMenuItem(showAboutAction);
@@ -989,40 +1164,20 @@ public class JSnowball {
     });
 
     articleList.addListSelectionListener(ev -> {
-      int idx = articleList.getSelectedIndex();
-      if (idx < 0) {
-        articlePanel.setItem(null);
-      } else {
-        articlePanel.setItem(state.getArticles().get(idx));
-      }
+      articlePanel.setItem(articleList.getSelectedValue());
+      articleGraph.refresh();
     });
 
     authorList.addListSelectionListener(ev -> {
-      int idx = authorList.getSelectedIndex();
-      if (idx < 0) {
-        authorPanel.setItem(null);
-      } else {
-        authorPanel.setItem(state.getAuthors().get(idx));
-      }
+      authorPanel.setItem(authorList.getSelectedValue());
+      authorGraph.refresh();
     });
 
-    journalList.addListSelectionListener(ev -> {
-      int idx = journalList.getSelectedIndex();
-      if (idx < 0) {
-        journalPanel.setItem(null);
-      } else {
-        journalPanel.setItem(state.getJournals().get(idx));
-      }
-    });
+    journalList.addListSelectionListener(ev ->
+        journalPanel.setItem(journalList.getSelectedValue()));
 
-    tagList.addListSelectionListener(ev -> {
-      int idx = tagList.getSelectedIndex();
-      if (idx < 0) {
-        tagPanel.setItem(null);
-      } else {
-        tagPanel.setItem(state.getTags().get(idx));
-      }
-    });
+    tagList.addListSelectionListener(ev ->
+        tagPanel.setItem(tagList.getSelectedValue()));
   }
 
   private void createLeftSplitPane() {
@@ -1037,20 +1192,29 @@ public class JSnowball {
     SpinnerNumberModel sizeNumber = new SpinnerNumberModel(20, 1, 1000000, 10);
     SpinnerNumberModel gravityNumber = new SpinnerNumberModel(1, 0.01, 1000000, 1);
     SpinnerNumberModel tauNumber = new SpinnerNumberModel(1, 0.01, 1000000, 1);
+    SpinnerNumberModel thetaNumber = new SpinnerNumberModel(1.2, 0, 10, 0.1);
 
     sizeNumber.addChangeListener(ev -> gp.setKr((Integer)sizeNumber.getNumber()));
     gravityNumber.addChangeListener(ev -> gp.setKg((float)(double)gravityNumber.getNumber()));
     tauNumber.addChangeListener(ev -> gp.setTau((float)(double)tauNumber.getNumber()));
+    thetaNumber.addChangeListener(ev -> gp.setTheta((float)(double)thetaNumber.getNumber()));
+    gp.addPropertyChangeListener("kr", ev -> sizeNumber.setValue(Math.round(gp.getKr())));
+    gp.addPropertyChangeListener("kg", ev -> gravityNumber.setValue((double)gp.getKg()));
+    gp.addPropertyChangeListener("tau", ev -> tauNumber.setValue((double)gp.getTau()));
+    gp.addPropertyChangeListener("theta", ev -> thetaNumber.setValue((double)gp.getTheta()));
 
     JSpinner sizeSpinner = new JSpinner(sizeNumber);
     JSpinner gravitySpinner = new JSpinner(gravityNumber);
     JSpinner tauSpinner = new JSpinner(tauNumber);
+    JSpinner thetaSpinner = new JSpinner(thetaNumber);
     sizeSpinner.setPreferredSize(sizeSpinner.getMinimumSize());
     sizeSpinner.setMaximumSize(sizeSpinner.getMinimumSize());
     gravitySpinner.setPreferredSize(gravitySpinner.getMinimumSize());
     gravitySpinner.setMaximumSize(gravitySpinner.getMinimumSize());
     tauSpinner.setPreferredSize(tauSpinner.getMinimumSize());
     tauSpinner.setMaximumSize(tauSpinner.getMinimumSize());
+    thetaSpinner.setPreferredSize(thetaSpinner.getMinimumSize());
+    thetaSpinner.setMaximumSize(thetaSpinner.getMinimumSize());
 
     graphOptionsPanel.setLayout(new BoxLayout(graphOptionsPanel, BoxLayout.X_AXIS));
     graphOptionsPanel.add(new JLabel("Scale: "));
@@ -1059,6 +1223,8 @@ public class JSnowball {
     graphOptionsPanel.add(gravitySpinner);
     graphOptionsPanel.add(new JLabel("Speed: "));
     graphOptionsPanel.add(tauSpinner);
+    graphOptionsPanel.add(new JLabel("Theta: "));
+    graphOptionsPanel.add(thetaSpinner);
     graphOptionsPanel.add(new JCheckBox(gp.getLinlogAction()));
     graphOptionsPanel.add(new JCheckBox(gp.getGravityAction()));
     graphOptionsPanel.add(new JCheckBox(gp.getDissuadeHubsAction()));
@@ -1220,6 +1386,7 @@ public class JSnowball {
       }
     });
 
+    new Timer(JOURNAL_CHECK_INTERVAL_MS, ev -> checkJournal()).start();
     frame.setVisible(true);
   }
 
@@ -1294,9 +1461,7 @@ public class JSnowball {
       }
       JMenuItem recentItem = new JMenuItem(path);
       recentItem.addActionListener(ev -> {
-        if (saveState(true, false)) {
-          loadState(fi);
-        }
+        saveState(true, false, () -> loadState(fi));
       });
       openrecentmenu.add(recentItem);
     }
@@ -1328,9 +1493,144 @@ public class JSnowball {
   }
 
   public static void main(String[] args) {
+    if (args.length > 0 && args[0].equals("--export-graph")) {
+      /* Must be set before any window system classes are loaded. */
+      System.setProperty("java.awt.headless", "true");
+      System.exit(exportGraph(Arrays.copyOfRange(args, 1, args.length)));
+    }
     new JSnowball();
   }
 
+  private static void printExportUsage() {
+    System.err.println("Usage: jsnowball --export-graph [--iterations N] [--size N] [--batik]"
+        + " PROJECT OUTPUT");
+    System.err.println("Lays out the article graph of PROJECT and writes it to OUTPUT, which must"
+        + " end in .svg or .png.");
+    System.err.println("  --iterations N  maximum number of layout iterations (default "
+        + EXPORT_ITERATIONS + ")");
+    System.err.println("  --size N        maximum width and height of PNG images (default "
+        + EXPORT_IMAGE_SIZE + ")");
+    System.err.println("  --batik         write SVG files through Batik instead of streaming them");
+  }
+
+  /* Lays out the article graph of a project and exports it without opening any windows. The
+     layout uses all processors. Returns the exit status. */
+  private static int exportGraph(String[] args) {
+    int iterations = EXPORT_ITERATIONS;
+    int size = EXPORT_IMAGE_SIZE;
+    boolean batik = false;
+    List<String> files = new ArrayList<>();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("--iterations") && i + 1 < args.length) {
+          iterations = Integer.parseInt(args[++i]);
+        } else if (args[i].equals("--size") && i + 1 < args.length) {
+          size = Integer.parseInt(args[++i]);
+        } else if (args[i].equals("--batik")) {
+          batik = true;
+        } else {
+          files.add(args[i]);
+        }
+      }
+    } catch (NumberFormatException ex) {
+      files.clear();
+    }
+    String format = files.size() == 2 ? files.get(1).toLowerCase() : "";
+    format = format.substring(format.lastIndexOf('.') + 1);
+    if (iterations < 0 || size < 1 || !(format.equals("svg") || format.equals("png"))) {
+      printExportUsage();
+      return 2;
+    }
+
+    try {
+      SnowballState state = SnowballState.load(Path.of(files.get(0)));
+      ArticleGraphPanel graph = new ArticleGraphPanel(m -> false);
+      int maxIterations = iterations;
+      int[] result = new int[1];
+      /* The list models post their events to the event dispatch thread, which has handled the
+         events from loading the project before these calls run. */
+      SwingUtilities.invokeAndWait(() -> {
+        graph.setState(state);
+        result[0] = graph.runLayout(maxIterations);
+      });
+      System.err.println("Layout finished after " + result[0] + " iterations.");
+      Path output = Path.of(files.get(1));
+      if (format.equals("svg")) {
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+          if (batik) {
+            graph.getBatikSVG(writer);
+          } else {
+            graph.getSVG(writer);
+          }
+        }
+      } else if (!ImageIO.write(graph.getImage(size), "png", output.toFile())) {
+        throw new IOException("No PNG image writer available.");
+      }
+    } catch (IOException | JSONException | InvocationTargetException ex) {
+      System.err.println("Export failed: " + ex.getMessage());
+      return 1;
+    } catch (InterruptedException ex) {
+      return 1;
+    }
+    return 0;
+  }
+
+  /* Graph of the articles that are not excluded and their references. */
+  private static class ArticleGraphPanel extends GraphPanel<Article> {
+    private final Predicate<Article> selected;
+
+    private ArticleGraphPanel(Predicate<Article> selected) {
+      this.selected = Objects.requireNonNull(selected);
+      setMemberFilter(m -> m.getStatus() != Article.ArticleStatus.EXCLUDED);
+    }
+
+    @Override
+    protected String getGraphName() {
+      return "articles";
+    }
+
+    @Override
+    protected ListModel<Article> getListModel() {
+      if (getState() == null) {
+        return null;
+      }
+      return getState().getArticleListModel();
+    }
+
+    @Override
+    protected List<Article> getEdges(Article member) {
+      return member.getReferences();
+    }
+
+    @Override
+    protected Color getColor(Article member) {
+      List<Tag> tags = member.getTags();
+      if (tags.size() == 0) {
+        return Color.BLACK;
+      }
+      return new Color(tags.get(0).getColor());
+    }
+
+    @Override
+    protected RectangularShape getShape(Article member) {
+      List<Tag> tags = member.getTags();
+      if (tags.size() == 0) {
+        return new Ellipse2D.Float(0, 0, 25, 25);
+      }
+      switch (tags.get(0).getShape()) {
+        case CIRCLE:  return new Ellipse2D.Float(0, 0, 25, 25);
+        case SQUARE:  return new Rectangle2D.Float(0, 0, 25, 25);
+        case RHOMBUS: return new RhombusShape(30);
+        default: return new Ellipse2D.Float(0, 0, 25, 25);
+      }
+    }
+
+    @Override
+    protected boolean isSelected(Article member) {
+      return selected.test(member);
+    }
+  }
+
   private static abstract class SnowballTableModel<E> extends AbstractTableModel
       implements ListDataListener {
     protected ListModel<E> listModel = null;
@@ -1368,7 +1668,12 @@ public class JSnowball {
 
     @Override
     public void contentsChanged(ListDataEvent ev) {
-      fireTableDataChanged();
+      if (ev.getSource() == listModel && ev.getIndex0() >= 0
+          && ev.getIndex0() == ev.getIndex1()) {
+        fireTableRowsUpdated(ev.getIndex0(), ev.getIndex1());
+      } else {
+        fireTableDataChanged();
+      }
     }
 
     @Override
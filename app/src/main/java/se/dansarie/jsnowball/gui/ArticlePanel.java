@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -52,6 +53,7 @@ import se.dansarie.jsnowball.model.Article;
 import se.dansarie.jsnowball.model.Author;
 import se.dansarie.jsnowball.model.CrossRef;
 import se.dansarie.jsnowball.model.Journal;
+import se.dansarie.jsnowball.model.ReferenceImporter;
 import se.dansarie.jsnowball.model.SnowballState;
 import se.dansarie.jsnowball.model.Tag;
 import se.dansarie.jsnowball.model.Article.ArticleStatus;
@@ -110,46 +112,59 @@ public class ArticlePanel extends SnowballMemberPanel<Article> implements ListDa
       pm.setMillisToDecideToPopup(100);
       Article article = getItem();
 
-      SwingWorker<Void, Void> w = new SwingWorker<>() {
+      SwingWorker<Integer, Void> w = new SwingWorker<>() {
+        /* Returns the number of references that could not be imported, or -1 if the metadata of
+           the article could not be retrieved. */
         @Override
-        protected Void doInBackground() {
+        protected Integer doInBackground() throws InterruptedException {
           CrossRef cr;
           try {
             cr = CrossRef.getDoi(doi);
           } catch (IOException ex) {
             LogWindow.getInstance().addThrowable(ex);
-            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(ArticlePanel.this,
-                "Error when retrieving article metadata.",
-                "Import outbound references from CrossRef", JOptionPane.ERROR_MESSAGE));
-            return null;
+            return -1;
           }
-          int i = 1;
-          pm.setMaximum(cr.references.size());
-          for (CrossRef.Reference ref : cr.references) {
-            StringBuilder note = new StringBuilder("Retrieving");
-            if (ref.title != null) {
-              note.append(" \"");
-              note.append(ref.title);
-              note.append("\"");
-            } else if (ref.doi != null) {
-              note.append(" ");
-              note.append(ref.doi);
-            }
-            note.append("...");
-            pm.setNote(note.toString());
-            try {
-              CrossRef.addCrossRefReference(article, ref);
-            } catch (IOException | RuntimeException ex) {
-              LogWindow.getInstance().addThrowable(ex);
-            }
-            pm.setProgress(i++);
+          ReferenceImporter importer = new ReferenceImporter(article, cr.references);
+          importer.setProgressListener((stage, done, total, perSecond) ->
+              SwingUtilities.invokeLater(() -> {
+                if (pm.isCanceled()) {
+                  importer.cancel();
+                  return;
+                }
+                pm.setMaximum(total + 1);
+                pm.setProgress(done);
+                pm.setNote(String.format("%s: %d of %d (%.1f/s)", stage, done, total, perSecond));
+              }));
+          importer.run();
+          List<Throwable> errors = importer.getErrors();
+          for (Throwable ex : errors) {
+            LogWindow.getInstance().addThrowable(ex);
           }
-          return null;
+          return errors.size();
         }
 
         @Override
         protected void done() {
           pm.close();
+          int failed;
+          try {
+            failed = get();
+          } catch (ExecutionException | InterruptedException ex) {
+            LogWindow.getInstance().addThrowable(ex);
+            JOptionPane.showMessageDialog(ArticlePanel.this, "An error occurred while importing "
+                + "references.", "Import outbound references from CrossRef",
+                JOptionPane.ERROR_MESSAGE);
+            return;
+          }
+          if (failed < 0) {
+            JOptionPane.showMessageDialog(ArticlePanel.this,
+                "Error when retrieving article metadata.",
+                "Import outbound references from CrossRef", JOptionPane.ERROR_MESSAGE);
+          } else if (failed > 0) {
+            JOptionPane.showMessageDialog(ArticlePanel.this, failed + (failed == 1
+                ? " reference" : " references") + " could not be imported.",
+                "Import outbound references from CrossRef", JOptionPane.WARNING_MESSAGE);
+          }
         }
       };
       w.execute();
@@ -0,0 +1,548 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* ForceAtlas2 force step on primitive arrays. Node i has its position in x[i] and y[i], its size in
+   size[i] and its outbound edges in edgeTarget[edgeStart[i]] to edgeTarget[edgeStart[i + 1] - 1].
+   Repulsion is computed exactly for small graphs and with the Barnes-Hut approximation for larger
+   graphs, using a quadtree that is rebuilt, but not reallocated, on every step. If a fork-join
+   pool is set, the force computations of large graphs are split into ranges of nodes that are run
+   in the pool.
+
+   @see Jacomy, M., Venturini, T., Heymann, S., & Bastian, M. (2014). ForceAtlas2, a Continuous
+   Graph Layout Algorithm for Handy Network Visualization Designed for the Gephi Software. PLoS
+   ONE, 9(6), e98679. https://doi.org/10.1371/journal.pone.0098679 */
+class ForceAtlas2 {
+  /* Graphs with fewer nodes than this are always laid out with exact repulsion. */
+  static final int EXACT_LIMIT = 400;
+  /* Graphs with fewer nodes than this are always laid out on the calling thread. */
+  static final int PARALLEL_LIMIT = 2000;
+  private static final int CHUNKS_PER_THREAD = 4;
+  private static final int MAX_DEPTH = 24;
+
+  float kr = 20;
+  float kg = 1;
+  float tau = 1;
+  float theta = 1.2F;
+  boolean linlog = false;
+  boolean stronggravity = false;
+  boolean dissuadehubs = false;
+  boolean preventoverlap = false;
+  ForkJoinPool pool = null;
+
+  private final int n;
+  private final int[] degree;
+  private final int[] edgeStart;
+  private final int[] edgeTarget;
+  final float[] x;
+  final float[] y;
+  final float[] size;
+  final float[] fx;
+  final float[] fy;
+  final float[] previousForce;
+  private float displacement = 0;
+  private float[][] partial = new float[0][];
+  private float[][] accumulators = new float[0][];
+
+  /* Quadtree. Cell c covers the square with corner (cellX[c], cellY[c]) and side cellW[c]. The
+     bodies of the cell are order[cellStart[c]] to order[cellEnd[c] - 1]. A cell is a leaf if
+     cellChild[4 * c] is -1. */
+  private final int[] order;
+  private int cells = 0;
+  private float[] cellX = new float[0];
+  private float[] cellY = new float[0];
+  private float[] cellW = new float[0];
+  private float[] cellMass = new float[0];
+  private float[] cellComX = new float[0];
+  private float[] cellComY = new float[0];
+  private float[] cellSize = new float[0];
+  private int[] cellStart = new int[0];
+  private int[] cellEnd = new int[0];
+  private int[] cellChild = new int[0];
+
+  ForceAtlas2(int n, int[] degree, int[] edgeStart, int[] edgeTarget) {
+    if (degree.length != n || edgeStart.length != n + 1) {
+      throw new IllegalArgumentException("Graph arrays do not match the number of nodes.");
+    }
+    this.n = n;
+    this.degree = degree;
+    this.edgeStart = edgeStart;
+    this.edgeTarget = Objects.requireNonNull(edgeTarget);
+    x = new float[n];
+    y = new float[n];
+    size = new float[n];
+    fx = new float[n];
+    fy = new float[n];
+    previousForce = new float[n];
+    order = new int[n];
+  }
+
+  /* Copies the positions and forces of the nodes that were also in a previous layout of the graph.
+     The old index of node i is previousIndex[i], or -1 if it is a new node. */
+  void carryOver(ForceAtlas2 old, int[] previousIndex) {
+    for (int i = 0; i < n; i++) {
+      int j = previousIndex[i];
+      if (j >= 0) {
+        x[i] = old.x[j];
+        y[i] = old.y[j];
+        fx[i] = old.fx[j];
+        fy[i] = old.fy[j];
+      }
+    }
+  }
+
+  /* Returns the mean distance that the nodes moved in the last iteration. */
+  float getDisplacement() {
+    return displacement;
+  }
+
+  /* Runs one iteration of the layout. The node with index pinned, if any, is not moved. Finally,
+     all nodes are translated so that the smallest coordinates are zero. */
+  void step(int pinned) {
+    if (n == 0) {
+      return;
+    }
+    boolean parallel = pool != null && pool.getParallelism() > 1 && n >= PARALLEL_LIMIT;
+    int threads = parallel ? pool.getParallelism() : 1;
+    int chunks = parallel ? threads * CHUNKS_PER_THREAD : 1;
+    if (partial.length < chunks) {
+      partial = new float[chunks][4];
+    }
+
+    forEachChunk(chunks, (c, start, end) -> {
+      float sumx = 0;
+      float sumy = 0;
+      for (int i = start; i < end; i++) {
+        previousForce[i] = (float)Math.hypot(fx[i], fy[i]);
+        fx[i] = 0;
+        fy[i] = 0;
+        sumx += x[i];
+        sumy += y[i];
+      }
+      partial[c][0] = sumx;
+      partial[c][1] = sumy;
+    });
+    float centerx = sum(chunks, 0) / n;
+    float centery = sum(chunks, 1) / n;
+
+    if (n < EXACT_LIMIT || theta <= 0) {
+      if (parallel) {
+        forEachChunk(chunks, (c, start, end) -> {
+          for (int i = start; i < end; i++) {
+            repulseAll(i);
+          }
+        });
+      } else {
+        repulseExact();
+      }
+    } else {
+      buildTree();
+      forEachChunk(chunks, (c, start, end) -> {
+        int[] stack = new int[3 * MAX_DEPTH + 4];
+        for (int i = start; i < end; i++) {
+          repulseTree(i, stack);
+        }
+      });
+    }
+
+    /* The attraction of an edge acts on both of its nodes. In parallel mode, every thread
+       accumulates its forces in separate arrays that are added up afterwards. */
+    if (parallel) {
+      if (accumulators.length != threads) {
+        accumulators = new float[threads][2 * n];
+      }
+      forEachChunk(threads, (c, start, end) -> {
+        float[] acc = accumulators[c];
+        Arrays.fill(acc, 0);
+        for (int i = start; i < end; i++) {
+          attract(i, acc, acc, n);
+        }
+      });
+      forEachChunk(chunks, (c, start, end) -> {
+        for (float[] acc : accumulators) {
+          for (int i = start; i < end; i++) {
+            fx[i] += acc[i];
+            fy[i] += acc[n + i];
+          }
+        }
+      });
+    } else {
+      for (int i = 0; i < n; i++) {
+        attract(i, fx, fy, 0);
+      }
+    }
+
+    forEachChunk(chunks, (c, start, end) -> {
+      float swing = 0;
+      float traction = 0;
+      for (int i = start; i < end; i++) {
+        gravity(i, centerx, centery);
+        float force = (float)Math.hypot(fx[i], fy[i]);
+        swing += (degree[i] + 1) * Math.abs(force - previousForce[i]);
+        traction += (degree[i] + 1) * (force + previousForce[i]) / 2;
+      }
+      partial[c][0] = swing;
+      partial[c][1] = traction;
+    });
+    float globalSwing = sum(chunks, 0);
+    float globalTraction = sum(chunks, 1);
+    displacement = 0;
+    if (globalSwing == 0) {
+      return;
+    }
+    float globalSpeed = tau * globalTraction / globalSwing;
+
+    forEachChunk(chunks, (c, start, end) -> {
+      float minx = Float.MAX_VALUE;
+      float miny = Float.MAX_VALUE;
+      float moved = 0;
+      for (int i = start; i < end; i++) {
+        if (i != pinned) {
+          float force = (float)Math.hypot(fx[i], fy[i]);
+          float swing = Math.abs(force - previousForce[i]);
+          float localspeed = 0.1F * globalSpeed / (1 + globalSpeed * (float)Math.sqrt(swing));
+          x[i] += fx[i] * localspeed;
+          y[i] += fy[i] * localspeed;
+          moved += force * localspeed;
+        }
+        minx = Math.min(x[i], minx);
+        miny = Math.min(y[i], miny);
+      }
+      partial[c][0] = minx;
+      partial[c][1] = miny;
+      partial[c][2] = moved;
+    });
+    float minx = Float.MAX_VALUE;
+    float miny = Float.MAX_VALUE;
+    for (int c = 0; c < chunks; c++) {
+      minx = Math.min(minx, partial[c][0]);
+      miny = Math.min(miny, partial[c][1]);
+    }
+    displacement = sum(chunks, 2) / n;
+    float shiftx = minx;
+    float shifty = miny;
+    forEachChunk(chunks, (c, start, end) -> {
+      for (int i = start; i < end; i++) {
+        x[i] -= shiftx;
+        y[i] -= shifty;
+      }
+    });
+  }
+
+  private float sum(int chunks, int k) {
+    float sum = 0;
+    for (int c = 0; c < chunks; c++) {
+      sum += partial[c][k];
+    }
+    return sum;
+  }
+
+  /* Runs a task for each of a number of consecutive, equally sized ranges of nodes. A single range
+     is run directly on the calling thread, otherwise the ranges are run in the fork-join pool. */
+  private void forEachChunk(int chunks, RangeTask task) {
+    if (chunks == 1) {
+      task.run(0, 0, n);
+    } else {
+      pool.invoke(new RangeAction(task, chunks, 0, chunks));
+    }
+  }
+
+  private interface RangeTask {
+    void run(int chunk, int start, int end);
+  }
+
+  private class RangeAction extends RecursiveAction {
+    private final RangeTask task;
+    private final int chunks;
+    private final int from;
+    private final int to;
+
+    private RangeAction(RangeTask task, int chunks, int from, int to) {
+      this.task = task;
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        task.run(from, (int)((long)from * n / chunks), (int)((long)to * n / chunks));
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new RangeAction(task, chunks, from, mid),
+            new RangeAction(task, chunks, mid, to));
+      }
+    }
+  }
+
+  private float repulsion(float d, float mass, float sizeSum) {
+    if (preventoverlap) {
+      d -= sizeSum / 2;
+    }
+    if (d > 0) {
+      return kr * mass / d;
+    } else if (d < 0) {
+      return kr * mass;
+    }
+    return 0;
+  }
+
+  private void repulseExact() {
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        float dx = x[i] - x[j];
+        float dy = y[i] - y[j];
+        float d = (float)Math.sqrt(dx * dx + dy * dy);
+        if (d == 0) {
+          continue;
+        }
+        float f = repulsion(d, (degree[i] + 1) * (degree[j] + 1), size[i] + size[j]) / d;
+        fx[i] += dx * f;
+        fy[i] += dy * f;
+        fx[j] -= dx * f;
+        fy[j] -= dy * f;
+      }
+    }
+  }
+
+  /* Exact repulsion on a single node, used when the nodes are split between threads. */
+  private void repulseAll(int i) {
+    float massi = degree[i] + 1;
+    for (int j = 0; j < n; j++) {
+      float dx = x[i] - x[j];
+      float dy = y[i] - y[j];
+      float d = (float)Math.sqrt(dx * dx + dy * dy);
+      if (j == i || d == 0) {
+        continue;
+      }
+      float f = repulsion(d, massi * (degree[j] + 1), size[i] + size[j]) / d;
+      fx[i] += dx * f;
+      fy[i] += dy * f;
+    }
+  }
+
+  private void repulseTree(int i, int[] stack) {
+    float xi = x[i];
+    float yi = y[i];
+    float massi = degree[i] + 1;
+    float thetaSq = theta * theta;
+    int sp = 0;
+    stack[sp++] = 0;
+    while (sp > 0) {
+      int c = stack[--sp];
+      if (cellChild[4 * c] < 0) {
+        for (int k = cellStart[c]; k < cellEnd[c]; k++) {
+          int j = order[k];
+          float dx = xi - x[j];
+          float dy = yi - y[j];
+          float d = (float)Math.sqrt(dx * dx + dy * dy);
+          if (j == i || d == 0) {
+            continue;
+          }
+          float f = repulsion(d, massi * (degree[j] + 1), size[i] + size[j]) / d;
+          fx[i] += dx * f;
+          fy[i] += dy * f;
+        }
+        continue;
+      }
+      float dx = xi - cellComX[c];
+      float dy = yi - cellComY[c];
+      float dsq = dx * dx + dy * dy;
+      boolean inside = xi >= cellX[c] && xi <= cellX[c] + cellW[c] && yi >= cellY[c]
+          && yi <= cellY[c] + cellW[c];
+      if (!inside && cellW[c] * cellW[c] < thetaSq * dsq) {
+        /* The cell is far enough away to be treated as a single body. The overlap correction uses
+           the mean size of its nodes. */
+        float d = (float)Math.sqrt(dsq);
+        int count = cellEnd[c] - cellStart[c];
+        float f = repulsion(d, massi * cellMass[c], size[i] + cellSize[c] / count) / d;
+        fx[i] += dx * f;
+        fy[i] += dy * f;
+      } else {
+        for (int q = 0; q < 4; q++) {
+          int child = cellChild[4 * c + q];
+          if (child > 0) {
+            stack[sp++] = child;
+          }
+        }
+      }
+    }
+  }
+
+  private void buildTree() {
+    float minx = Float.MAX_VALUE;
+    float miny = Float.MAX_VALUE;
+    float maxx = -Float.MAX_VALUE;
+    float maxy = -Float.MAX_VALUE;
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+      minx = Math.min(minx, x[i]);
+      miny = Math.min(miny, y[i]);
+      maxx = Math.max(maxx, x[i]);
+      maxy = Math.max(maxy, y[i]);
+    }
+    cells = 0;
+    buildCell(minx, miny, Math.max(Math.max(maxx - minx, maxy - miny), 1), 0, n, 0);
+  }
+
+  /* Creates a cell for order[start] to order[end - 1], partitions them into quadrants and creates
+     the child cells recursively. Returns the index of the new cell. */
+  private int buildCell(float cx, float cy, float w, int start, int end, int depth) {
+    int c = cells++;
+    if (c == cellX.length) {
+      growCells();
+    }
+    cellX[c] = cx;
+    cellY[c] = cy;
+    cellW[c] = w;
+    cellStart[c] = start;
+    cellEnd[c] = end;
+    Arrays.fill(cellChild, 4 * c, 4 * c + 4, -1);
+
+    if (end - start > 1 && depth < MAX_DEPTH) {
+      float h = w / 2;
+      int xsplit = partition(x, cx + h, start, end);
+      int lowsplit = partition(y, cy + h, start, xsplit);
+      int highsplit = partition(y, cy + h, xsplit, end);
+      float mass = 0;
+      float comx = 0;
+      float comy = 0;
+      float sizeSum = 0;
+      for (int q = 0; q < 4; q++) {
+        int qstart = q == 0 ? start : q == 1 ? lowsplit : q == 2 ? xsplit : highsplit;
+        int qend = q == 0 ? lowsplit : q == 1 ? xsplit : q == 2 ? highsplit : end;
+        if (qstart == qend) {
+          continue;
+        }
+        int child = buildCell(cx + (q / 2) * h, cy + (q % 2) * h, h, qstart, qend, depth + 1);
+        cellChild[4 * c + q] = child;
+        mass += cellMass[child];
+        comx += cellComX[child] * cellMass[child];
+        comy += cellComY[child] * cellMass[child];
+        sizeSum += cellSize[child];
+      }
+      /* Empty quadrants are -1 and the root is never a child, so a first entry of 0 marks an
+         internal cell with an empty first quadrant. */
+      if (cellChild[4 * c] < 0) {
+        cellChild[4 * c] = 0;
+      }
+      cellMass[c] = mass;
+      cellComX[c] = comx / mass;
+      cellComY[c] = comy / mass;
+      cellSize[c] = sizeSum;
+      return c;
+    }
+
+    float mass = 0;
+    float comx = 0;
+    float comy = 0;
+    float sizeSum = 0;
+    for (int k = start; k < end; k++) {
+      int i = order[k];
+      float m = degree[i] + 1;
+      mass += m;
+      comx += x[i] * m;
+      comy += y[i] * m;
+      sizeSum += size[i];
+    }
+    cellMass[c] = mass;
+    cellComX[c] = comx / mass;
+    cellComY[c] = comy / mass;
+    cellSize[c] = sizeSum;
+    return c;
+  }
+
+  /* Reorders order[start] to order[end - 1] so that the nodes with a coordinate less than split
+     come first and returns the index of the first node that does not. */
+  private int partition(float[] coord, float split, int start, int end) {
+    int lo = start;
+    int hi = end - 1;
+    while (lo <= hi) {
+      if (coord[order[lo]] < split) {
+        lo++;
+      } else {
+        int tmp = order[lo];
+        order[lo] = order[hi];
+        order[hi--] = tmp;
+      }
+    }
+    return lo;
+  }
+
+  private void growCells() {
+    int len = Math.max(16, cellX.length * 2);
+    cellX = Arrays.copyOf(cellX, len);
+    cellY = Arrays.copyOf(cellY, len);
+    cellW = Arrays.copyOf(cellW, len);
+    cellMass = Arrays.copyOf(cellMass, len);
+    cellComX = Arrays.copyOf(cellComX, len);
+    cellComY = Arrays.copyOf(cellComY, len);
+    cellSize = Arrays.copyOf(cellSize, len);
+    cellStart = Arrays.copyOf(cellStart, len);
+    cellEnd = Arrays.copyOf(cellEnd, len);
+    cellChild = Arrays.copyOf(cellChild, len * 4);
+  }
+
+  /* Adds the attraction of the outbound edges of node i. The forces on node k are added to
+     ax[offset + k] and ay[offset + k]. */
+  private void attract(int i, float[] ax, float[] ay, int offset) {
+    for (int e = edgeStart[i]; e < edgeStart[i + 1]; e++) {
+      int j = edgeTarget[e];
+      float dx = x[i] - x[j];
+      float dy = y[i] - y[j];
+      float dist = (float)Math.sqrt(dx * dx + dy * dy);
+      float d = dist;
+      if (d == 0) {
+        continue;
+      }
+      if (preventoverlap) {
+        d -= size[i] / 2 + size[j] / 2;
+      }
+      if (d < 0) {
+        continue;
+      }
+      float force = linlog ? -(float)Math.log(1 + d) : -d;
+      if (dissuadehubs) {
+        force /= 1 + degree[i];
+      }
+      float f = force / dist;
+      ax[i] += dx * f;
+      ay[offset + i] += dy * f;
+      ax[j] -= dx * f;
+      ay[offset + j] -= dy * f;
+    }
+  }
+
+  private void gravity(int i, float centerx, float centery) {
+    float dx = x[i] - centerx;
+    float dy = y[i] - centery;
+    float d = (float)Math.sqrt(dx * dx + dy * dy);
+    if (d == 0) {
+      return;
+    }
+    float force = -kg * (degree[i] + 1);
+    if (stronggravity) {
+      force *= d;
+    }
+    fx[i] += dx * force / d;
+    fy[i] += dy * force / d;
+  }
+}
@@ -16,41 +16,49 @@ package se.dansarie.jsnowball.gui;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphVector;
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RectangularShape;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
 import java.util.Set;
-import java.util.function.Function;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.JPanel;
+import javax.swing.JViewport;
 import javax.swing.ListModel;
-import javax.swing.Timer;
+import javax.swing.SwingUtilities;
+import javax.swing.ToolTipManager;
 import javax.swing.event.AncestorEvent;
 import javax.swing.event.AncestorListener;
 import javax.swing.event.ListDataEvent;
@@ -62,25 +70,73 @@ import org.w3c.dom.Document;
 import org.w3c.dom.DOMImplementation;
 import se.dansarie.jsnowball.model.Article;
 import se.dansarie.jsnowball.model.Author;
+import se.dansarie.jsnowball.model.GraphSettings;
 import se.dansarie.jsnowball.model.SnowballState;
+import se.dansarie.jsnowball.model.SnowballStateMember;
 
 public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
+  private static final Font LABEL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+  private static final BasicStroke SELECTED_STROKE = new BasicStroke(3);
+  private static final double MIN_ZOOM = 0.02;
+  private static final double MAX_ZOOM = 8;
+  /* Level of detail. Labels are not drawn below LABEL_ZOOM, edges between the same pair of
+     BUNDLE_CELL sized screen cells are drawn as one line below BUNDLE_ZOOM, and nodes are drawn as
+     points below POINT_ZOOM. */
+  private static final double LABEL_ZOOM = 0.6;
+  private static final double BUNDLE_ZOOM = 0.5;
+  private static final double POINT_ZOOM = 0.25;
+  private static final int BUNDLE_CELL = 8;
+  /* Labels may extend this far outside the bounds of their nodes. */
+  private static final float LABEL_MARGIN = 100;
+  /* Distance from the mean position of its neighbors at which a new node is placed. */
+  private static final float SEED_DISTANCE = 30;
+
   private SnowballState state;
-  private Map<Integer, Node<E>> nodeMap = new HashMap<>();
+  /* Copy of the list model, used to find the members that list events refer to. */
+  private List<E> members = new ArrayList<>();
   private Map<E, Node<E>> memberMap = new HashMap<>();
+  /* Nodes by id. The ids of removed nodes are reused. */
+  private List<Node<E>> nodes = new ArrayList<>();
+  private IntSet freeIds = new IntSet();
+  /* Nodes with edges to members that are not in the graph, by member. The edges are added if the
+     member is added. */
+  private Map<E, Set<Node<E>>> pendingEdges = new HashMap<>();
+  /* Nodes removed since the layout was last updated. A member that is removed and added again,
+     which is how the list model moves members, gets its old node back. */
+  private Map<E, Node<E>> removedNodes = new HashMap<>();
+  private boolean layoutPosted = false;
   private Node<E> draggedNode = null;
+  private Random random = new Random();
   private Set<GraphListener<E>> listeners = new HashSet<>();
-  private Timer timer = new Timer(50, ev -> redrawGraph());
   private Predicate<E> filter = m -> true;
-
-  /* ForceAtlas2 settings. */
-  private float kr = 20;
-  private float kg = 1;
-  private float tau = 1;
-  private boolean linlog = false;
-  private boolean stronggravity = false;
-  private boolean dissuadehubs = false;
-  private boolean preventoverlap = false;
+  private Map<E, Label> labelCache = new HashMap<>();
+  private VolatileImage backBuffer = null;
+  private Rectangle bufferView = null;
+  private Rectangle dirty = null;
+  private double zoom = 1;
+  private NodeGrid grid = new NodeGrid(32);
+  private boolean gridValid = false;
+  private int[] hits = new int[16];
+  private int[] visible = new int[0];
+  private long[] bundleKeys = new long[0];
+  private int[] bundleCounts = new int[0];
+  private Line2D.Float line = new Line2D.Float();
+  private List<Node<E>> layoutNodes = new ArrayList<>();
+  private ForceAtlas2 layout = null;
+  private LayoutWorker worker = new LayoutWorker("Graph layout", this::configureLayout,
+      this::frameReady);
+  private AtomicBoolean framePosted = new AtomicBoolean(false);
+  private boolean displayed = false;
+
+  /* ForceAtlas2 settings. These are read by the layout worker thread. */
+  private volatile float kr = 20;
+  private volatile float kg = 1;
+  private volatile float tau = 1;
+  private volatile float theta = 1.2F;
+  private volatile boolean linlog = false;
+  private volatile boolean stronggravity = false;
+  private volatile boolean dissuadehubs = false;
+  private volatile boolean preventoverlap = false;
 
   private Action linlogAction = new AbstractAction("LinLog") {
     {
@@ -89,6 +145,7 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
     @Override
     public void actionPerformed(ActionEvent ev) {
       linlog = (Boolean)getValue(Action.SELECTED_KEY);
+      worker.wake();
     }
   };
 
@@ -99,6 +156,7 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
     @Override
     public void actionPerformed(ActionEvent ev) {
       stronggravity = (Boolean)getValue(Action.SELECTED_KEY);
+      worker.wake();
     }
   };
 
@@ -109,6 +167,7 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
     @Override
     public void actionPerformed(ActionEvent ev) {
       dissuadehubs = (Boolean)getValue(Action.SELECTED_KEY);
+      worker.wake();
     }
   };
 
@@ -119,6 +178,7 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
     @Override
     public void actionPerformed(ActionEvent ev) {
       preventoverlap = (Boolean)getValue(Action.SELECTED_KEY);
+      worker.wake();
     }
   };
 
@@ -128,11 +188,7 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
     }
     @Override
     public void actionPerformed(ActionEvent ev) {
-      if ((Boolean)getValue(Action.SELECTED_KEY)) {
-        timer.stop();
-      } else {
-        timer.start();
-      }
+      updateRunning();
     }
   };
 
@@ -140,12 +196,13 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
     GPMouseListener gpm = new GPMouseListener();
     addMouseListener(gpm);
     addMouseMotionListener(gpm);
+    addMouseWheelListener(gpm);
+    ToolTipManager.sharedInstance().registerComponent(this);
     addAncestorListener(new AncestorListener() {
       @Override
       public void ancestorAdded(AncestorEvent ev) {
-        if (!((Boolean)pauseAction.getValue(Action.SELECTED_KEY))) {
-          timer.start();
-        }
+        displayed = true;
+        updateRunning();
       }
 
       @Override
@@ -154,11 +211,17 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
 
       @Override
       public void ancestorRemoved(AncestorEvent ev) {
-        timer.stop();
+        displayed = false;
+        updateRunning();
       }
     });
   }
 
+  /* The layout is only run while the panel is displayed and not paused. */
+  private void updateRunning() {
+    worker.setRunning(displayed && !((Boolean)pauseAction.getValue(Action.SELECTED_KEY)));
+  }
+
   public void addGraphListener(GraphListener<E> listener) {
     listeners.add(Objects.requireNonNull(listener));
   }
@@ -176,16 +239,32 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
       getListModel().removeListDataListener(this);
     }
     this.state = Objects.requireNonNull(state);
-    nodeMap.clear();
+    members.clear();
     memberMap.clear();
+    nodes.clear();
+    freeIds.clear();
+    pendingEdges.clear();
+    removedNodes.clear();
+    labelCache.clear();
     draggedNode = null;
+    GraphSettings settings = state.getGraphSettings(getGraphName());
+    if (settings != null) {
+      setSettings(settings);
+    }
+    updateNodes();
     getListModel().addListDataListener(this);
   }
 
   public void setMemberFilter(Predicate<E> filter) {
     this.filter = Objects.requireNonNull(filter);
+    if (getListModel() != null) {
+      updateNodes();
+    }
   }
 
+  /* Returns the name under which the layout settings of the graph are stored in the project. */
+  protected abstract String getGraphName();
+
   protected abstract Color getColor(E member);
 
   protected abstract RectangularShape getShape(E member);
@@ -216,289 +295,884 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
     return pauseAction;
   }
 
+  public float getKr() {
+    return kr;
+  }
+
+  public float getKg() {
+    return kg;
+  }
+
+  public float getTau() {
+    return tau;
+  }
+
+  public float getTheta() {
+    return theta;
+  }
+
+  /* The setters fire property change events, so that controls showing the settings can follow
+     when they are restored from a project. */
   public void setKr(float kr) {
     if (kr > 0) {
+      float old = this.kr;
       this.kr = kr;
+      firePropertyChange("kr", old, kr);
+      worker.wake();
     }
   }
 
   public void setKg(float kg) {
     if (kg > 0) {
+      float old = this.kg;
       this.kg = kg;
+      firePropertyChange("kg", old, kg);
+      worker.wake();
     }
   }
 
   public void setTau(float tau) {
     if (tau > 0) {
+      float old = this.tau;
       this.tau = tau;
+      firePropertyChange("tau", old, tau);
+      worker.wake();
     }
   }
 
-  private void updateEdges() {
-    for (Node<E> no : nodeMap.values()) {
-      no.clearEdges();
+  /* Sets the Barnes-Hut accuracy parameter. Lower values give more accurate repulsion at a higher
+     cost. A value of zero makes the repulsion exact. */
+  public void setTheta(float theta) {
+    if (theta >= 0) {
+      float old = this.theta;
+      this.theta = theta;
+      firePropertyChange("theta", old, theta);
+      worker.wake();
     }
-    for (Node<E> no : new ArrayList<>(nodeMap.values())) {
-      for (E adj : new ArrayList<>(getEdges(no.getMember()))) {
-        Node<E> adjNode = memberMap.get(adj);
-        if (adjNode == null) {
-          continue;
+  }
+
+  public GraphSettings getSettings() {
+    return new GraphSettings(kr, kg, tau, theta, linlog, stronggravity, dissuadehubs,
+        preventoverlap);
+  }
+
+  public void setSettings(GraphSettings settings) {
+    setKr(settings.getKr());
+    setKg(settings.getKg());
+    setTau(settings.getTau());
+    setTheta(settings.getTheta());
+    linlog = settings.isLinlog();
+    stronggravity = settings.isStrongGravity();
+    dissuadehubs = settings.isDissuadeHubs();
+    preventoverlap = settings.isPreventOverlap();
+    linlogAction.putValue(Action.SELECTED_KEY, linlog);
+    gravityAction.putValue(Action.SELECTED_KEY, stronggravity);
+    dissuadeHubsAction.putValue(Action.SELECTED_KEY, dissuadehubs);
+    preventOverlapAction.putValue(Action.SELECTED_KEY, preventoverlap);
+    worker.wake();
+  }
+
+  /* Stores the node positions and the layout settings in the state, so that they are saved with
+     the project and the graph can be restored without laying it out again. */
+  public void storeLayout() {
+    if (state == null) {
+      return;
+    }
+    for (Node<E> no : memberMap.values()) {
+      if (no.getMember() instanceof SnowballStateMember) {
+        ((SnowballStateMember)no.getMember()).setGraphPosition(no.pos_x, no.pos_y);
+      }
+    }
+    state.setGraphSettings(getGraphName(), getSettings());
+  }
+
+  /* Adds a node for a member. The list index is used to place new nodes in a grid. */
+  private void addNode(E member, int listIndex) {
+    Node<E> node = removedNodes.remove(member);
+    boolean created = node == null;
+    if (created) {
+      node = new Node<>(this, member);
+    }
+    if (freeIds.size() > 0) {
+      node.id = freeIds.get(freeIds.size() - 1);
+      freeIds.remove(node.id);
+      nodes.set(node.id, node);
+    } else {
+      node.id = nodes.size();
+      nodes.add(node);
+    }
+    memberMap.put(member, node);
+    node.updateShapeSize();
+    updateEdges(node);
+    Set<Node<E>> sources = pendingEdges.remove(member);
+    if (sources != null) {
+      for (Node<E> source : sources) {
+        source.pending.remove(member);
+        source.edges.add(node.id);
+        node.edgesTo.add(source.id);
+      }
+    }
+    if (created) {
+      placeNode(node, listIndex);
+    }
+  }
+
+  /* Places a new node at the position stored in the project, if there is one. Otherwise it is
+     placed next to the nodes it has edges to or from, so that the layout does not have to move it
+     far, or in a grid if there are none. */
+  private void placeNode(Node<E> node, int listIndex) {
+    E member = node.getMember();
+    if (member instanceof SnowballStateMember
+        && ((SnowballStateMember)member).hasGraphPosition()) {
+      node.setX(((SnowballStateMember)member).getGraphX());
+      node.setY(((SnowballStateMember)member).getGraphY());
+      return;
+    }
+    float x = 0;
+    float y = 0;
+    int count = 0;
+    for (IntSet adjacent : List.of(node.edges, node.edgesTo)) {
+      for (int k = 0; k < adjacent.size(); k++) {
+        Node<E> adj = nodes.get(adjacent.get(k));
+        if (adj != node) {
+          x += adj.pos_x;
+          y += adj.pos_y;
+          count += 1;
         }
-        no.addEdge(adjNode);
-        adjNode.addEdgeTo(no);
       }
     }
+    if (count == 0) {
+      node.setX(listIndex % 10 * 30);
+      node.setY(listIndex / 10 * 30);
+      return;
+    }
+    /* The direction is random so that nodes with the same neighbors do not start on top of each
+       other. */
+    double angle = random.nextDouble() * 2 * Math.PI;
+    node.setX(x / count + (float)(Math.cos(angle) * SEED_DISTANCE));
+    node.setY(y / count + (float)(Math.sin(angle) * SEED_DISTANCE));
   }
 
+  private void removeNode(Node<E> node) {
+    E member = node.getMember();
+    clearPendingEdges(node);
+    for (int k = 0; k < node.edges.size(); k++) {
+      nodes.get(node.edges.get(k)).edgesTo.remove(node.id);
+    }
+    node.edges.clear();
+    /* The members that refer to the removed member get their edges back if it is added again. */
+    for (int k = 0; k < node.edgesTo.size(); k++) {
+      Node<E> source = nodes.get(node.edgesTo.get(k));
+      source.edges.remove(node.id);
+      source.pending.add(member);
+      pendingEdges.computeIfAbsent(member, m -> new HashSet<>()).add(source);
+    }
+    node.edgesTo.clear();
+    nodes.set(node.id, null);
+    freeIds.add(node.id);
+    node.id = -1;
+    memberMap.remove(member);
+    labelCache.remove(member);
+    removedNodes.put(member, node);
+    if (draggedNode == node) {
+      draggedNode = null;
+    }
+  }
+
+  private void clearPendingEdges(Node<E> node) {
+    for (E target : node.pending) {
+      Set<Node<E>> sources = pendingEdges.get(target);
+      if (sources != null) {
+        sources.remove(node);
+        if (sources.isEmpty()) {
+          pendingEdges.remove(target);
+        }
+      }
+    }
+    node.pending.clear();
+  }
+
+  /* Updates the outgoing edges of a node and returns true if they changed. */
+  private boolean updateEdges(Node<E> node) {
+    clearPendingEdges(node);
+    List<E> adjacent = getEdges(node.getMember());
+    int[] targets = new int[adjacent.size()];
+    int count = 0;
+    for (E adj : adjacent) {
+      Node<E> adjNode = memberMap.get(adj);
+      if (adjNode != null) {
+        targets[count++] = adjNode.id;
+      } else if (pendingEdges.computeIfAbsent(adj, m -> new HashSet<>()).add(node)) {
+        node.pending.add(adj);
+      }
+    }
+    Arrays.sort(targets, 0, count);
+    boolean changed = false;
+    for (int k = node.edges.size() - 1; k >= 0; k--) {
+      int id = node.edges.get(k);
+      if (Arrays.binarySearch(targets, 0, count, id) < 0) {
+        node.edges.remove(id);
+        nodes.get(id).edgesTo.remove(node.id);
+        changed = true;
+      }
+    }
+    for (int k = 0; k < count; k++) {
+      if (node.edges.add(targets[k])) {
+        nodes.get(targets[k]).edgesTo.add(node.id);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  /* Brings the node of a member up to date with the member and the filter. Returns true if the
+     layout has to be updated. */
+  private boolean updateMember(E member, int listIndex) {
+    Node<E> node = memberMap.get(member);
+    if (!filter.test(member)) {
+      if (node == null) {
+        return false;
+      }
+      removeNode(node);
+      return true;
+    }
+    if (node == null) {
+      addNode(member, listIndex);
+      return true;
+    }
+    float width = node.width;
+    float height = node.height;
+    node.updateShapeSize();
+    boolean changed = updateEdges(node);
+    return changed || width != node.width || height != node.height;
+  }
+
+  /* Rebuilds the layout arrays from the nodes and hands them over to the layout worker. Nodes that
+     were in the previous layout keep the positions and forces they have in the worker. */
+  private void updateLayout() {
+    layoutPosted = false;
+    removedNodes.clear();
+    List<Node<E>> current = new ArrayList<>(memberMap.size());
+    for (Node<E> no : nodes) {
+      if (no != null) {
+        current.add(no);
+      }
+    }
+    int n = current.size();
+    int[] degree = new int[n];
+    int[] edgeStart = new int[n + 1];
+    int[] previousIndex = new int[n];
+    for (int i = 0; i < n; i++) {
+      previousIndex[i] = current.get(i).index;
+    }
+    for (Node<E> no : layoutNodes) {
+      no.index = -1;
+    }
+    for (int i = 0; i < n; i++) {
+      Node<E> no = current.get(i);
+      no.index = i;
+      degree[i] = no.edgesTo.size();
+      edgeStart[i + 1] = edgeStart[i] + no.edges.size();
+    }
+    int[] edgeTarget = new int[edgeStart[n]];
+    for (int i = 0; i < n; i++) {
+      Node<E> no = current.get(i);
+      for (int k = 0; k < no.edges.size(); k++) {
+        edgeTarget[edgeStart[i] + k] = nodes.get(no.edges.get(k)).index;
+      }
+    }
+    ForceAtlas2 fa = new ForceAtlas2(n, degree, edgeStart, edgeTarget);
+    for (int i = 0; i < n; i++) {
+      Node<E> no = current.get(i);
+      fa.x[i] = no.pos_x;
+      fa.y[i] = no.pos_y;
+      fa.size[i] = Math.max(no.width, no.height);
+    }
+    layoutNodes = current;
+    layout = fa;
+    gridValid = false;
+    worker.setLayout(fa, previousIndex);
+    invalidateBuffer(null);
+  }
+
+  /* Called after the nodes have changed. Layout updates are deferred until the current event has
+     been handled, so that a burst of list events only leads to one. */
+  private void nodesChanged(boolean layoutChanged) {
+    if (layoutChanged && !layoutPosted) {
+      layoutPosted = true;
+      SwingUtilities.invokeLater(() -> {
+        if (layoutPosted) {
+          updateLayout();
+        }
+      });
+    }
+    updateSize();
+    invalidateBuffer(null);
+  }
+
+  /* Brings all nodes up to date with the list model. */
   private void updateNodes() {
     ListModel<E> listModel = getListModel();
-    nodeMap.clear();
+    members.clear();
+    Set<E> included = new HashSet<>();
     for (int i = 0; i < listModel.getSize(); i++) {
       E member = listModel.getElementAt(i);
-      if (!filter.test(member)) {
-        continue;
+      members.add(member);
+      if (filter.test(member)) {
+        included.add(member);
       }
-      Node<E> node = memberMap.get(member);
-      if (node == null) {
-        node = new Node<>(this, member);
-        node.setX(i % 10 * 30);
-        node.setY(i / 10 * 30);
-        memberMap.put(member, node);
+    }
+    for (Node<E> node : new ArrayList<>(memberMap.values())) {
+      if (!included.contains(node.getMember())) {
+        removeNode(node);
       }
-      nodeMap.put(i, node);
     }
-    memberMap.values().retainAll(nodeMap.values());
-    updateEdges();
-    updateSize();
-    repaint();
+    for (int i = 0; i < members.size(); i++) {
+      updateMember(members.get(i), i);
+    }
+    nodesChanged(true);
   }
 
   @Override
   public void contentsChanged(ListDataEvent ev) {
-    updateNodes();
+    ListModel<E> listModel = getListModel();
+    if (ev.getIndex0() < 0 || listModel.getSize() != members.size()) {
+      updateNodes();
+      return;
+    }
+    boolean layoutChanged = false;
+    for (int i = ev.getIndex0(); i <= ev.getIndex1(); i++) {
+      E member = listModel.getElementAt(i);
+      members.set(i, member);
+      layoutChanged |= updateMember(member, i);
+    }
+    nodesChanged(layoutChanged);
   }
 
   @Override
   public void intervalAdded(ListDataEvent ev) {
-    updateNodes();
+    ListModel<E> listModel = getListModel();
+    for (int i = ev.getIndex0(); i <= ev.getIndex1(); i++) {
+      E member = listModel.getElementAt(i);
+      members.add(i, member);
+      if (filter.test(member)) {
+        addNode(member, i);
+      }
+    }
+    nodesChanged(true);
   }
 
   @Override
   public void intervalRemoved(ListDataEvent ev) {
-    updateNodes();
+    for (int i = ev.getIndex1(); i >= ev.getIndex0(); i--) {
+      Node<E> node = memberMap.get(members.remove(i));
+      if (node != null) {
+        removeNode(node);
+      }
+    }
+    nodesChanged(true);
   }
 
-  private void drawGraph(Graphics2D g2) {
-    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+  /* Draws the parts of the graph that intersect clip, given in graph coordinates, or the whole
+     graph if clip is null. The level of detail is chosen from the scale of the graphics context. */
+  private void drawGraph(Graphics2D g2, Rectangle2D clip, boolean glyphs) {
+    double scale = g2.getTransform().getScaleX();
+    boolean points = scale < POINT_ZOOM;
+    boolean labels = scale >= LABEL_ZOOM;
+    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, points
+        ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
     g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
         RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-    for (Node<E> no : nodeMap.values()) {
-      Rectangle bounds1 = no.getShape().getBounds();
-      g2.setColor(Color.BLACK);
-      int x1 = (int)bounds1.getCenterX();
-      int y1 = (int)bounds1.getCenterY();
-      for (Node<E> edge : no.getEdges()) {
-        Rectangle bounds2 = edge.getShape().getBounds();
-        g2.drawLine(x1, y1, (int)bounds2.getCenterX(), (int)bounds2.getCenterY());
+
+    int count = 0;
+    if (clip == null) {
+      count = layoutNodes.size();
+      if (visible.length < count) {
+        visible = new int[count];
       }
+      for (int i = 0; i < count; i++) {
+        visible[i] = i;
+      }
+    } else {
+      updateGrid();
+      float margin = labels ? LABEL_MARGIN : 0;
+      int[] found = {0};
+      grid.query((float)clip.getMinX() - margin, (float)clip.getMinY() - margin,
+          (float)clip.getMaxX() + margin, (float)clip.getMaxY() + margin, i -> {
+            visible[found[0]++] = i;
+          });
+      count = found[0];
+      /* Nodes are drawn in the same order regardless of which ones are visible. */
+      Arrays.sort(visible, 0, count);
     }
-    for (Node<E> no : nodeMap.values()) {
-      Shape sh = no.getShape();
-      g2.setColor(getColor(no.getMember()));
-      g2.fill(sh);
-      String label = null;
+
+    g2.setColor(Color.BLACK);
+    if (scale < BUNDLE_ZOOM) {
+      drawBundledEdges(g2, clip, scale);
+    } else {
+      for (Node<E> no : layoutNodes) {
+        float x1 = no.getCenterX();
+        float y1 = no.getCenterY();
+        for (int k = 0; k < no.edges.size(); k++) {
+          Node<E> edge = nodes.get(no.edges.get(k));
+          float x2 = edge.getCenterX();
+          float y2 = edge.getCenterY();
+          if (clip == null || clip.intersectsLine(x1, y1, x2, y2)) {
+            line.setLine(x1, y1, x2, y2);
+            g2.draw(line);
+          }
+        }
+      }
+    }
+
+    g2.setFont(LABEL_FONT);
+    FontRenderContext frc = g2.getFontRenderContext();
+    for (int k = 0; k < count; k++) {
+      Node<E> no = layoutNodes.get(visible[k]);
+      if (no.id < 0) {
+        continue;
+      }
       E member = no.getMember();
-      if (member instanceof Article) {
-        label = ((Article)member).getLabel();
-      } else if (member instanceof Author) {
-        label = ((Author)member).getLabel();
+      g2.setColor(getColor(member));
+      if (points) {
+        /* Points are two pixels wide regardless of the zoom level. */
+        float size = (float)(2 / scale);
+        Rectangle2D.Float point = new Rectangle2D.Float(no.getCenterX() - size / 2,
+            no.getCenterY() - size / 2, size, size);
+        g2.fill(point);
+        if (isSelected(member)) {
+          g2.setColor(Color.RED);
+          point.setRect(point.x - size, point.y - size, 3 * size, 3 * size);
+          g2.fill(point);
+        }
+        continue;
       }
+      Shape sh = no.getShape();
+      g2.fill(sh);
+      Label label = labels ? getLabel(member, frc) : null;
       if (label != null) {
-        Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
-        g2.setFont(font);
-        FontRenderContext frc = g2.getFontRenderContext();
-        GlyphVector gv = font.layoutGlyphVector(frc, label.toCharArray(), 0, label.length(),
-            Font.LAYOUT_LEFT_TO_RIGHT);
-        Rectangle pixelBounds = gv.getPixelBounds(frc, 0, 0);
-        Rectangle2D stringBounds = font.getStringBounds(label, frc);
-        Rectangle nodeBounds = no.getShape().getBounds();
         g2.setColor(Color.BLACK);
-        int x = (int)(nodeBounds.getCenterX() - stringBounds.getWidth()  / 2);
-        int y = (int)(nodeBounds.getCenterY() + pixelBounds.getHeight() / 2);
-        g2.drawString(label, x, y);
+        float x = (float)(int)(no.getCenterX() - label.width / 2);
+        float y = (float)(int)(no.getCenterY() + label.height / 2);
+        if (glyphs) {
+          g2.drawGlyphVector(label.glyphs, x, y);
+        } else {
+          g2.drawString(label.text, x, y);
+        }
       }
-      if (isSelected(no.getMember())) {
+      if (isSelected(member)) {
         g2.setColor(Color.RED);
-        g2.setStroke(new BasicStroke(3));
+        g2.setStroke(SELECTED_STROKE);
         g2.draw(sh);
       }
     }
   }
 
+  /* Draws the edges with both ends in the same pair of screen cells as a single line, with a width
+     that grows with the logarithm of the number of edges. */
+  private void drawBundledEdges(Graphics2D g2, Rectangle2D clip, double scale) {
+    int edges = 0;
+    for (Node<E> no : layoutNodes) {
+      edges += no.edges.size();
+    }
+    int capacity = Integer.highestOneBit(Math.max(edges, 8) * 2);
+    if (bundleKeys.length < capacity || bundleKeys.length > 4 * capacity) {
+      bundleKeys = new long[capacity];
+      bundleCounts = new int[capacity];
+    } else {
+      capacity = bundleKeys.length;
+      Arrays.fill(bundleCounts, 0);
+    }
+    double cell = BUNDLE_CELL / scale;
+    for (Node<E> no : layoutNodes) {
+      float x1 = no.getCenterX();
+      float y1 = no.getCenterY();
+      for (int k = 0; k < no.edges.size(); k++) {
+        Node<E> edge = nodes.get(no.edges.get(k));
+        float x2 = edge.getCenterX();
+        float y2 = edge.getCenterY();
+        if (clip != null && !clip.intersectsLine(x1, y1, x2, y2)) {
+          continue;
+        }
+        long a = (((long)(x1 / cell) & 0xffff) << 16) | ((long)(y1 / cell) & 0xffff);
+        long b = (((long)(x2 / cell) & 0xffff) << 16) | ((long)(y2 / cell) & 0xffff);
+        if (a == b) {
+          continue;
+        }
+        long key = (Math.min(a, b) << 32) | Math.max(a, b);
+        int slot = (int)(key ^ (key >>> 29) ^ (key >>> 17)) & (capacity - 1);
+        while (bundleCounts[slot] != 0 && bundleKeys[slot] != key) {
+          slot = (slot + 1) & (capacity - 1);
+        }
+        bundleKeys[slot] = key;
+        bundleCounts[slot] += 1;
+      }
+    }
+    BasicStroke[] strokes = new BasicStroke[8];
+    for (int slot = 0; slot < capacity; slot++) {
+      int count = bundleCounts[slot];
+      if (count == 0) {
+        continue;
+      }
+      int width = Math.min(strokes.length, 32 - Integer.numberOfLeadingZeros(count));
+      if (strokes[width - 1] == null) {
+        strokes[width - 1] = new BasicStroke((float)(width / scale));
+      }
+      g2.setStroke(strokes[width - 1]);
+      long a = bundleKeys[slot] >>> 32;
+      long b = bundleKeys[slot] & 0xffffffffL;
+      line.setLine(((a >>> 16) + 0.5) * cell, ((a & 0xffff) + 0.5) * cell,
+          ((b >>> 16) + 0.5) * cell, ((b & 0xffff) + 0.5) * cell);
+      g2.draw(line);
+    }
+  }
+
+  /* Returns the topmost node at a point in panel coordinates, or null if there is none. */
+  private Node<E> getNodeAt(int px, int py) {
+    updateGrid();
+    float x = (float)(px / zoom);
+    float y = (float)(py / zoom);
+    int count = grid.find(x, y, hits);
+    /* Nodes are drawn in index order, so the last one is on top. */
+    for (int k = count - 1; k >= 0; k--) {
+      Node<E> no = layoutNodes.get(hits[k]);
+      if (no.id >= 0 && no.getShape().contains(x, y)) {
+        return no;
+      }
+    }
+    return null;
+  }
+
+  /* Returns the tool tip shown when the mouse pointer is over a member in the graph. */
+  protected String getToolTip(E member) {
+    return member.toString();
+  }
+
+  @Override
+  public String getToolTipText(MouseEvent ev) {
+    Node<E> no = getNodeAt(ev.getX(), ev.getY());
+    return no == null ? null : getToolTip(no.getMember());
+  }
+
+  /* Rebuilds the spatial index of the nodes if they have moved since it was last built. */
+  private void updateGrid() {
+    int n = layoutNodes.size();
+    if (visible.length < n) {
+      visible = new int[n];
+    }
+    if (gridValid) {
+      return;
+    }
+    grid.reset(n);
+    for (int i = 0; i < n; i++) {
+      Node<E> no = layoutNodes.get(i);
+      grid.setBounds(i, no.pos_x, no.pos_y, no.width, no.height);
+    }
+    grid.build();
+    gridValid = true;
+  }
+
+  private String getLabelText(E member) {
+    if (member instanceof Article) {
+      return ((Article)member).getLabel();
+    } else if (member instanceof Author) {
+      return ((Author)member).getLabel();
+    }
+    return null;
+  }
+
+  /* Returns the laid out label of a member. Labels are cached until their text changes. */
+  private Label getLabel(E member, FontRenderContext frc) {
+    String text = getLabelText(member);
+    if (text == null) {
+      return null;
+    }
+    Label label = labelCache.get(member);
+    if (label == null || !label.text.equals(text) || !label.frc.equals(frc)) {
+      label = new Label(text, frc);
+      labelCache.put(member, label);
+    }
+    return label;
+  }
+
+  /* Writes the whole graph as SVG, one element at a time. */
   public void getSVG(Writer writer) throws IOException {
+    Rectangle2D bounds = getGraphBounds();
+    SvgWriter svg = new SvgWriter(writer);
+    svg.start(Math.ceil(bounds.getWidth()), Math.ceil(bounds.getHeight()));
+    svg.startGroup("stroke=\"#000000\" stroke-width=\"1\"");
+    for (Node<E> no : nodes) {
+      if (no == null) {
+        continue;
+      }
+      for (int k = 0; k < no.edges.size(); k++) {
+        Node<E> edge = nodes.get(no.edges.get(k));
+        svg.line(no.getCenterX(), no.getCenterY(), edge.getCenterX(), edge.getCenterY());
+      }
+    }
+    svg.endGroup();
+    svg.startGroup("font-family=\"sans-serif\" font-size=\"" + LABEL_FONT.getSize() + "\"");
+    /* Labels are laid out with the same metrics as in drawGraph, but are not cached. */
+    FontRenderContext frc = new FontRenderContext(null, true, true);
+    for (Node<E> no : nodes) {
+      if (no == null) {
+        continue;
+      }
+      E member = no.getMember();
+      boolean selected = isSelected(member);
+      svg.shape(no.getShape(), getColor(member), selected ? Color.RED : null,
+          SELECTED_STROKE.getLineWidth());
+      String text = getLabelText(member);
+      if (text != null && !text.isEmpty()) {
+        Label label = new Label(text, frc);
+        svg.text(text, (int)(no.getCenterX() - label.width / 2),
+            (int)(no.getCenterY() + label.height / 2));
+      }
+    }
+    svg.endGroup();
+    svg.end();
+  }
+
+  /* Writes the whole graph as SVG through Batik, which builds the document in memory before it is
+     written. Kept as a fallback for the streaming writer. */
+  public void getBatikSVG(Writer writer) throws IOException {
     DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
     String svgNS = "http://www.w3.org/2000/svg";
     Document document = domImpl.createDocument(svgNS, "svg", null);
     SVGGraphics2D g2 = new SVGGraphics2D(document);
-    drawGraph(g2);
+    drawGraph(g2, null, false);
     g2.stream(writer);
   }
 
-  @Override
-  protected void paintComponent(Graphics gr) {
-    super.paintComponent(gr);
-    Dimension dim = getSize();
-    BufferedImage bi = new BufferedImage((int)dim.getWidth(), (int)dim.getHeight(),
-        BufferedImage.TYPE_4BYTE_ABGR);
-    Graphics2D g2 = bi.createGraphics();
-    drawGraph(g2);
-    gr.drawImage(bi, 0, 0, null);
+  /* Draws the whole graph on a white background, scaled down if needed so that the image is at
+     most maxSize pixels wide and high. */
+  public BufferedImage getImage(int maxSize) {
+    Rectangle2D size = getGraphBounds();
+    double scale = Math.min(1, maxSize / Math.max(1, Math.max(size.getWidth(), size.getHeight())));
+    BufferedImage image = new BufferedImage((int)Math.ceil(size.getWidth() * scale) + 1,
+        (int)Math.ceil(size.getHeight() * scale) + 1, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2 = image.createGraphics();
+    g2.setColor(Color.WHITE);
+    g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+    g2.scale(scale, scale);
+    drawGraph(g2, null, true);
+    g2.dispose();
+    return image;
   }
 
-  private void updateSize() {
-    Dimension dim = new Dimension();
-    for (Node<E> node : nodeMap.values()) {
-      Rectangle bounds = node.getShape().getBounds();
-      if (bounds.x + bounds.width > dim.width) {
-        dim.width = bounds.x + bounds.width;
-      }
-      if (bounds.y + bounds.height > dim.height) {
-        dim.height = bounds.y + bounds.height;
-      }
+  /* Runs the layout on the calling thread until it has converged or maxIterations iterations have
+     been run, and returns the number of iterations. This is for use without a display, when the
+     layout worker is not running. */
+  public int runLayout(int maxIterations) {
+    if (layoutPosted) {
+      updateLayout();
     }
-    setSize(dim);
-    setPreferredSize(dim);
+    ForceAtlas2 fa = layout;
+    int iterations = 0;
+    int slowIterations = 0;
+    while (iterations < maxIterations && slowIterations < LayoutWorker.CONVERGED_ITERATIONS) {
+      configureLayout(fa);
+      fa.step(-1);
+      iterations += 1;
+      slowIterations = fa.getDisplacement() < LayoutWorker.CONVERGED_DISPLACEMENT
+          ? slowIterations + 1 : 0;
+    }
+    for (int i = 0; i < layoutNodes.size(); i++) {
+      layoutNodes.get(i).pos_x = fa.x[i];
+      layoutNodes.get(i).pos_y = fa.y[i];
+    }
+    gridValid = false;
+    updateSize();
+    invalidateBuffer(null);
+    return iterations;
   }
 
-  private void updateForce(Node<E> n1, Node<E> n2, Function<Float, Float> forceFun) {
-    float dx = n1.getX() - n2.getX();
-    float dy = n1.getY() - n2.getY();
-    float dabs = (float)Math.hypot(dx, dy);
-    if (dabs == 0.0) {
-      return;
+  /* Redraws the graph, for example after the selection or the colors of members have changed. */
+  public void refresh() {
+    invalidateBuffer(null);
+  }
+
+  /* Marks a region of the back buffer as outdated and repaints it. A null region invalidates the
+     whole buffer. */
+  private void invalidateBuffer(Rectangle region) {
+    if (region == null || bufferView == null) {
+      bufferView = null;
+      dirty = null;
+      repaint();
+    } else {
+      dirty = dirty == null ? region : dirty.union(region);
+      repaint(region);
     }
-    float force = forceFun.apply(dabs);
-    dx *= force / dabs;
-    dy *= force / dabs;
-    n1.addForce(dx, dy);
   }
 
-  /* @see Jacomy, M., Venturini, T., Heymann, S., & Bastian, M. (2014). ForceAtlas2, a Continuous
-     Graph Layout Algorithm for Handy Network Visualization Designed for the Gephi Software. PLoS
-     ONE, 9(6), e98679. https://doi.org/10.1371/journal.pone.0098679 */
-  private void drawGraph(Collection<Node<E>> graph) {
-    for (Node<E> n1 : graph) {
-      n1.clearForces();
+  /* Returns the region of the panel that is painted for a node, its label and its edges. */
+  private Rectangle getPaintBounds(Node<E> node) {
+    Rectangle2D.Float bounds = new Rectangle2D.Float(node.pos_x, node.pos_y, node.width,
+        node.height);
+    Label label = labelCache.get(node.getMember());
+    if (label != null) {
+      bounds.add(new Rectangle2D.Float(node.getCenterX() - label.width / 2, node.pos_y,
+          label.width + 1, node.height));
     }
-    float centerx = 0;
-    float centery = 0;
+    for (IntSet adjacent : List.of(node.edges, node.edgesTo)) {
+      for (int k = 0; k < adjacent.size(); k++) {
+        Node<E> adj = nodes.get(adjacent.get(k));
+        bounds.add(adj.getCenterX(), adj.getCenterY());
+      }
+    }
+    Rectangle screen = new Rectangle((int)Math.floor(bounds.x * zoom),
+        (int)Math.floor(bounds.y * zoom), 0, 0);
+    screen.add((int)Math.ceil(bounds.getMaxX() * zoom), (int)Math.ceil(bounds.getMaxY() * zoom));
+    screen.grow((int)Math.ceil(3 * zoom) + 1, (int)Math.ceil(3 * zoom) + 1);
+    return screen;
+  }
 
-    /* Repulsive force. */
-    for (Node<E> n1 : graph) {
-      for (Node<E> n2 : graph) {
-        if (n1 == n2) {
-          continue;
+  /* The graph is drawn into a back buffer covering the visible part of the panel. The buffer is
+     kept between repaints and only redrawn where it has been invalidated. */
+  @Override
+  protected void paintComponent(Graphics gr) {
+    super.paintComponent(gr);
+    Rectangle view = getVisibleRect();
+    if (view.isEmpty()) {
+      return;
+    }
+    do {
+      int status = VolatileImage.IMAGE_INCOMPATIBLE;
+      if (backBuffer != null && backBuffer.getWidth() == view.width
+          && backBuffer.getHeight() == view.height) {
+        status = backBuffer.validate(getGraphicsConfiguration());
+      }
+      if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+        backBuffer = createVolatileImage(view.width, view.height);
+        if (backBuffer == null) {
+          Graphics2D g2 = (Graphics2D)gr.create();
+          g2.scale(zoom, zoom);
+          drawGraph(g2, null, true);
+          g2.dispose();
+          return;
         }
-        Function<Float, Float> repulsiveForce = d -> {
-          if (preventoverlap) {
-            d -= n1.getShapeSize() / 2 + n2.getShapeSize() / 2;
-          }
-          if (d > 0) {
-            return kr * (n1.getDegree() + 1) * (n2.getDegree() + 1) / d;
-          } else if (d < 0) {
-            return kr * (n1.getDegree() + 1) * (n2.getDegree() + 1);
-          } else {
-            return 0.0F;
-          }
-        };
-        updateForce(n1, n2, repulsiveForce);
       }
-
-      /* Attractive force. */
-      for (Node<E> n2 : n1.getEdges()) {
-        Function<Float, Float> attractiveForce = d -> {
-          if (preventoverlap) {
-            d -= n1.getShapeSize() / 2 + n2.getShapeSize() / 2;
-          }
-
-          if (d >= 0) {
-            float force = -d;
-            if (linlog) {
-              force = -(float)Math.log(1 + d);
-            }
-            if (dissuadehubs) {
-              force /= 1 + n1.getDegree(); /* FIXME. */
-            }
-            return force;
-          } else { /* Overlap */
-            return 0.0F;
-          }
-        };
-        updateForce(n1, n2, attractiveForce);
-        updateForce(n2, n1, attractiveForce);
+      if (status != VolatileImage.IMAGE_OK) {
+        bufferView = null;
       }
-      centerx += n1.getX();
-      centery += n1.getY();
+      Rectangle region = view.equals(bufferView) ? dirty : view;
+      if (region != null) {
+        Graphics2D g2 = backBuffer.createGraphics();
+        g2.translate(-view.x, -view.y);
+        g2.clip(region);
+        g2.setColor(getBackground());
+        g2.fill(region);
+        g2.scale(zoom, zoom);
+        drawGraph(g2, new Rectangle2D.Double(region.x / zoom, region.y / zoom,
+            region.width / zoom, region.height / zoom), true);
+        g2.dispose();
+      }
+      bufferView = new Rectangle(view);
+      dirty = null;
+      gr.drawImage(backBuffer, view.x, view.y, null);
+    } while (backBuffer.contentsLost());
+  }
+
+  /* Returns the bounds of the graph in graph coordinates. */
+  private Rectangle2D getGraphBounds() {
+    float width = 0;
+    float height = 0;
+    for (Node<E> node : memberMap.values()) {
+      width = Math.max(width, node.pos_x + node.width);
+      height = Math.max(height, node.pos_y + node.height);
     }
+    return new Rectangle2D.Float(0, 0, width, height);
+  }
 
-    float globalSwing = 0;
-    float globalTraction = 0;
+  private void updateSize() {
+    Rectangle2D size = getGraphBounds();
+    Dimension dim = new Dimension((int)Math.ceil(size.getWidth() * zoom),
+        (int)Math.ceil(size.getHeight() * zoom));
+    setSize(dim);
+    setPreferredSize(dim);
+  }
 
-    Node<E> virtualCenter = new Node<>(this, null);
-    virtualCenter.setX(centerx / graph.size());
-    virtualCenter.setY(centery / graph.size());
-    for (Node<E> n1 : graph) {
-      float num = -kg * (n1.getDegree() + 1);
-      if (stronggravity) {
-        updateForce(n1, virtualCenter, x -> num * x);
-      } else {
-        updateForce(n1, virtualCenter, x -> num);
-      }
-      globalSwing += (n1.getDegree() + 1) * n1.getSwing();
-      globalTraction += (n1.getDegree() + 1) * n1.getTraction();
-    }
-    float globalSpeed = tau * globalTraction / globalSwing;
+  public double getZoom() {
+    return zoom;
+  }
 
-    float minx = Integer.MAX_VALUE;
-    float miny = Integer.MAX_VALUE;
-    for (Node <E> node : graph) {
-      float localspeed = 0.1F * globalSpeed / (1 + globalSpeed * (float)Math.sqrt(node.getSwing()));
-      float dx = node.force_x * localspeed;
-      float dy = node.force_y * localspeed;
-      float x = node.getX() + dx;
-      float y = node.getY() + dy;
-      minx = Math.min(x, minx);
-      miny = Math.min(y, miny);
-      if (node != draggedNode) {
-        node.setX(x);
-        node.setY(y);
-      }
-    }
-    for (Node <E> node : graph) {
-      node.setX(node.getX() - minx);
-      node.setY(node.getY() - miny);
+  public void setZoom(double zoom) {
+    Rectangle view = getVisibleRect();
+    setZoom(zoom, new Point((int)view.getCenterX(), (int)view.getCenterY()));
+  }
+
+  /* Changes the zoom level while keeping the graph point under the anchor, given in panel
+     coordinates, at the same position in the viewport. */
+  private void setZoom(double zoom, Point anchor) {
+    zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+    double factor = zoom / this.zoom;
+    this.zoom = zoom;
+    updateSize();
+    if (getParent() instanceof JViewport) {
+      JViewport viewport = (JViewport)getParent();
+      Point pos = viewport.getViewPosition();
+      Dimension extent = viewport.getExtentSize();
+      int x = (int)(anchor.x * factor) - (anchor.x - pos.x);
+      int y = (int)(anchor.y * factor) - (anchor.y - pos.y);
+      x = Math.max(0, Math.min(x, getWidth() - extent.width));
+      y = Math.max(0, Math.min(y, getHeight() - extent.height));
+      viewport.setViewPosition(new Point(x, y));
     }
+    invalidateBuffer(null);
   }
 
-  private void redrawGraph() {
-    drawGraph(nodeMap.values());
+  /* Called by the layout worker thread before every iteration. */
+  private void configureLayout(ForceAtlas2 fa) {
+    fa.kr = kr;
+    fa.kg = kg;
+    fa.tau = tau;
+    fa.theta = theta;
+    fa.linlog = linlog;
+    fa.stronggravity = stronggravity;
+    fa.dissuadehubs = dissuadehubs;
+    fa.preventoverlap = preventoverlap;
+    fa.pool = ForkJoinPool.commonPool();
+  }
 
-    updateSize();
-    repaint();
+  /* Called by the layout worker thread when a frame is ready. Frames that arrive while an earlier
+     one is waiting to be shown are coalesced. */
+  private void frameReady() {
+    if (framePosted.compareAndSet(false, true)) {
+      SwingUtilities.invokeLater(this::showFrame);
+    }
+  }
+
+  private void showFrame() {
+    framePosted.set(false);
+    LayoutWorker.Frame frame = worker.takeFrame();
+    if (frame == null) {
+      return;
+    }
+    /* Frames computed before the last change of the graph are dropped. */
+    if (frame.layout == layout) {
+      for (int i = 0; i < layoutNodes.size(); i++) {
+        Node<E> no = layoutNodes.get(i);
+        no.pos_x = frame.x[i];
+        no.pos_y = frame.y[i];
+      }
+      gridValid = false;
+      updateSize();
+      invalidateBuffer(null);
+    }
+    worker.releaseFrame(frame);
   }
 
   private class GPMouseListener extends MouseAdapter {
     @Override
     public void mouseClicked(MouseEvent ev) {
-      for (Node<E> no : memberMap.values()) {
-        if (no.getShape().contains(ev.getX(), ev.getY())) {
-          for (GraphListener<E> gl : listeners) {
-            gl.memberSelected(no.getMember());
-          }
-          return;
-        }
+      Node<E> no = getNodeAt(ev.getX(), ev.getY());
+      if (no == null) {
+        worker.wake();
+        return;
+      }
+      for (GraphListener<E> gl : listeners) {
+        gl.memberSelected(no.getMember());
       }
-      redrawGraph();
     }
 
     @Override
@@ -506,38 +1180,86 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
       if (draggedNode == null) {
         return;
       }
-      draggedNode.setX(ev.getX());
-      draggedNode.setY(ev.getY());
+      Rectangle before = getPaintBounds(draggedNode);
+      draggedNode.setX((float)(ev.getX() / zoom));
+      draggedNode.setY((float)(ev.getY() / zoom));
+      worker.setPinned(draggedNode.index, draggedNode.pos_x, draggedNode.pos_y);
+      if (gridValid && draggedNode.index >= 0) {
+        grid.move(draggedNode.index, draggedNode.pos_x, draggedNode.pos_y);
+      }
       updateSize();
-      repaint();
+      invalidateBuffer(before.union(getPaintBounds(draggedNode)));
+    }
+
+    @Override
+    public void mouseMoved(MouseEvent ev) {
+      setCursor(getNodeAt(ev.getX(), ev.getY()) == null ? Cursor.getDefaultCursor()
+          : Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
     }
 
     @Override
     public void mousePressed(MouseEvent ev) {
-      for (Node<E> no : memberMap.values()) {
-        if (no.getShape().contains(ev.getX(), ev.getY())) {
-          draggedNode = no;
-          break;
-        }
+      Node<E> no = getNodeAt(ev.getX(), ev.getY());
+      if (no != null) {
+        draggedNode = no;
+        worker.setPinned(no.index, no.pos_x, no.pos_y);
       }
     }
 
     @Override
     public void mouseReleased(MouseEvent ev) {
+      if (draggedNode != null) {
+        worker.setPinned(-1, 0, 0);
+      }
       draggedNode = null;
     }
+
+    /* Zooms with the control key held down. Other wheel events are passed on to the scroll pane. */
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent ev) {
+      if (ev.isControlDown()) {
+        setZoom(zoom * Math.pow(1.1, -ev.getPreciseWheelRotation()), ev.getPoint());
+      } else if (getParent() != null) {
+        getParent().dispatchEvent(SwingUtilities.convertMouseEvent(GraphPanel.this, ev,
+            getParent()));
+      }
+    }
+  }
+
+  private static class Label {
+    private final String text;
+    private final FontRenderContext frc;
+    private final GlyphVector glyphs;
+    private final float width;
+    private final float height;
+
+    private Label(String text, FontRenderContext frc) {
+      this.text = text;
+      this.frc = frc;
+      glyphs = LABEL_FONT.layoutGlyphVector(frc, text.toCharArray(), 0, text.length(),
+          Font.LAYOUT_LEFT_TO_RIGHT);
+      width = (float)LABEL_FONT.getStringBounds(text, frc).getWidth();
+      /* The pixel bounds are in device space. */
+      height = (float)(glyphs.getPixelBounds(frc, 0, 0).getHeight()
+          / frc.getTransform().getScaleY());
+    }
   }
 
   private static class Node<E> {
     private GraphPanel parent;
     private E member;
-    private List<Node<E>> edges = new ArrayList<>();
-    private List<Node<E>> edgesTo = new ArrayList<>();
+    /* Ids of the nodes that this node has edges to and from. */
+    private final IntSet edges = new IntSet();
+    private final IntSet edgesTo = new IntSet();
+    /* Members without nodes that this node has edges to. */
+    private final List<E> pending = new ArrayList<>();
     float pos_x = 0;
     float pos_y = 0;
-    float force_x = 0;
-    float force_y = 0;
-    float previous_force = 0;
+    float width = 0;
+    float height = 0;
+    int id = -1;
+    int index = -1;
+    private RectangularShape shape = null;
 
     private Node(GraphPanel parent, E member) {
       this.parent = parent;
@@ -548,68 +1270,31 @@ public abstract class GraphPanel<E> extends JPanel implements ListDataListener {
       return member;
     }
 
-    private List<Node<E>> getEdges() {
-      return Collections.unmodifiableList(new ArrayList<>(edges));
-    }
-
-    private float getShapeSize() {
-      Rectangle2D bounds = parent.getShape(member).getBounds2D();
-      return (float)Math.max(bounds.getHeight(), bounds.getWidth());
+    private void updateShapeSize() {
+      shape = parent.getShape(member);
+      Rectangle2D bounds = shape.getBounds2D();
+      width = (float)bounds.getWidth();
+      height = (float)bounds.getHeight();
     }
 
-    private void clearEdges() {
-      edges.clear();
-      edgesTo.clear();
+    private float getCenterX() {
+      return pos_x + width / 2;
     }
 
-    private void addEdge(Node<E> edge) {
-      if (!edges.contains(Objects.requireNonNull(edge))) {
-        edges.add(edge);
-      }
-    }
-
-    private void addEdgeTo(Node<E> edge) {
-      if (!edgesTo.contains(Objects.requireNonNull(edge))) {
-        edgesTo.add(edge);
-      }
-    }
-
-    private void addForce(float x, float y) {
-      force_x += x;
-      force_y += y;
-    }
-
-    private void clearForces() {
-      previous_force = (float)Math.hypot(force_x, force_y);
-      force_x = force_y = 0;
-    }
-
-    private int getDegree() {
-      return edgesTo.size();
+    private float getCenterY() {
+      return pos_y + height / 2;
     }
 
+    /* Returns the shape of the node at its current position. The same shape object is returned on
+       every call, so it must not be kept. */
     private RectangularShape getShape() {
-      RectangularShape shape = parent.getShape(member);
+      if (shape == null) {
+        updateShapeSize();
+      }
       shape.setFrame(pos_x, pos_y, shape.getWidth(), shape.getHeight());
       return shape;
     }
 
-    private float getSwing() {
-      return (float)Math.abs(Math.hypot(force_x, force_y) - previous_force);
-    }
-
-    private float getTraction() {
-      return ((float)Math.hypot(force_x, force_y) + previous_force) / 2;
-    }
-
-    private float getX() {
-      return pos_x;
-    }
-
-    private float getY() {
-      return pos_y;
-    }
-
     private void setX(float x) {
       pos_x = x;
     }
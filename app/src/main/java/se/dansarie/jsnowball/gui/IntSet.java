@@ -0,0 +1,70 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import java.util.Arrays;
+
+/* Set of ints kept in a sorted array. Lookups are binary searches, and adding values in increasing
+   order does not move any elements. */
+class IntSet {
+  private int[] values = new int[0];
+  private int size = 0;
+
+  int size() {
+    return size;
+  }
+
+  /* Returns the k:th smallest value. */
+  int get(int k) {
+    if (k < 0 || k >= size) {
+      throw new IndexOutOfBoundsException(k);
+    }
+    return values[k];
+  }
+
+  boolean contains(int value) {
+    return Arrays.binarySearch(values, 0, size, value) >= 0;
+  }
+
+  boolean add(int value) {
+    int pos = size == 0 || values[size - 1] < value ? -size - 1
+        : Arrays.binarySearch(values, 0, size, value);
+    if (pos >= 0) {
+      return false;
+    }
+    pos = -pos - 1;
+    if (size == values.length) {
+      values = Arrays.copyOf(values, Math.max(4, size * 2));
+    }
+    System.arraycopy(values, pos, values, pos + 1, size - pos);
+    values[pos] = value;
+    size += 1;
+    return true;
+  }
+
+  boolean remove(int value) {
+    int pos = Arrays.binarySearch(values, 0, size, value);
+    if (pos < 0) {
+      return false;
+    }
+    System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+    size -= 1;
+    return true;
+  }
+
+  void clear() {
+    size = 0;
+  }
+}
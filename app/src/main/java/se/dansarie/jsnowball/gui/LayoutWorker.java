@@ -0,0 +1,196 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/* Runs a ForceAtlas2 layout on a background thread. After every iteration the node positions are
+   copied into a frame that is handed over to the reader through an atomic reference. Three frames
+   are used in rotation, so that the worker never writes to the frame that is being read and
+   neither side has to wait for the other.
+
+   The worker runs at most one iteration per display frame and backs off when the layout moves
+   slowly. When the nodes have stopped moving, the worker sleeps until it is woken by a change to
+   the graph, the settings or a pinned node. */
+class LayoutWorker {
+  private static final long MIN_INTERVAL = TimeUnit.MILLISECONDS.toNanos(16);
+  private static final long MAX_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+  /* Mean distance in pixels that nodes move per iteration below which the layout is slowing
+     down, and below which it is considered converged. */
+  private static final float SLOW_DISPLACEMENT = 1;
+  static final float CONVERGED_DISPLACEMENT = 0.1F;
+  static final int CONVERGED_ITERATIONS = 10;
+
+  private final String name;
+  private final Consumer<ForceAtlas2> configure;
+  private final Runnable frameListener;
+  private final AtomicReference<Frame> ready = new AtomicReference<>();
+  private final AtomicReference<Frame> spare = new AtomicReference<>();
+  private Thread thread = null;
+  private boolean running = false;
+  private boolean converged = false;
+  private boolean woken = false;
+  private ForceAtlas2 pendingLayout = null;
+  private int[] pendingIndex = null;
+  private int pinned = -1;
+  private int moved = -1;
+  private float pinnedX = 0;
+  private float pinnedY = 0;
+
+  /* A completed iteration. The positions belong to the nodes of layout. */
+  static class Frame {
+    final ForceAtlas2 layout;
+    final float[] x;
+    final float[] y;
+
+    private Frame(ForceAtlas2 layout, int n) {
+      this.layout = layout;
+      x = new float[n];
+      y = new float[n];
+    }
+  }
+
+  /* The configure function is called by the worker thread before every iteration to apply the
+     current settings to the layout. The frame listener is called by the worker thread when a new
+     frame is ready. */
+  LayoutWorker(String name, Consumer<ForceAtlas2> configure, Runnable frameListener) {
+    this.name = Objects.requireNonNull(name);
+    this.configure = Objects.requireNonNull(configure);
+    this.frameListener = Objects.requireNonNull(frameListener);
+  }
+
+  /* Replaces the layout. Nodes with a non-negative previousIndex keep the position and forces they
+     had in the previous layout. */
+  synchronized void setLayout(ForceAtlas2 layout, int[] previousIndex) {
+    pendingLayout = Objects.requireNonNull(layout);
+    pendingIndex = previousIndex;
+    pinned = -1;
+    moved = -1;
+    wake();
+  }
+
+  /* Fixes the position of a node until it is released with an index of -1. The last position of
+     the node is applied before the next iteration even if the node has been released by then,
+     which happens when a node is dragged while the layout is paused. */
+  synchronized void setPinned(int index, float x, float y) {
+    pinned = index;
+    if (index >= 0) {
+      moved = index;
+      pinnedX = x;
+      pinnedY = y;
+    }
+    wake();
+  }
+
+  synchronized void setRunning(boolean running) {
+    this.running = running;
+    if (running && thread == null) {
+      thread = new Thread(this::run, name);
+      thread.setDaemon(true);
+      thread.start();
+    }
+    wake();
+  }
+
+  /* Resumes a converged layout, for example after its settings have changed. */
+  synchronized void wake() {
+    converged = false;
+    woken = true;
+    notifyAll();
+  }
+
+  /* Returns the latest completed frame, or null if there is no new frame since the last call. The
+     frame must be returned with releaseFrame when the caller is done with it. */
+  Frame takeFrame() {
+    return ready.getAndSet(null);
+  }
+
+  void releaseFrame(Frame frame) {
+    spare.set(frame);
+  }
+
+  private void run() {
+    ForceAtlas2 layout = null;
+    Frame back = null;
+    int slowIterations = 0;
+    long interval = MIN_INTERVAL;
+    try {
+      while (true) {
+        int pin;
+        synchronized (this) {
+          while (!running || converged || (layout == null && pendingLayout == null)) {
+            wait();
+          }
+          if (pendingLayout != null) {
+            if (layout != null && pendingIndex != null) {
+              pendingLayout.carryOver(layout, pendingIndex);
+            }
+            layout = pendingLayout;
+            pendingLayout = null;
+            pendingIndex = null;
+          }
+          if (woken) {
+            woken = false;
+            slowIterations = 0;
+            interval = MIN_INTERVAL;
+          }
+          if (moved >= 0) {
+            layout.x[moved] = pinnedX;
+            layout.y[moved] = pinnedY;
+          }
+          pin = pinned;
+          moved = pin;
+        }
+
+        long start = System.nanoTime();
+        configure.accept(layout);
+        layout.step(pin);
+
+        if (back == null || back.layout != layout) {
+          back = new Frame(layout, layout.x.length);
+        }
+        System.arraycopy(layout.x, 0, back.x, 0, back.x.length);
+        System.arraycopy(layout.y, 0, back.y, 0, back.y.length);
+        back = ready.getAndSet(back);
+        if (back == null) {
+          back = spare.getAndSet(null);
+        }
+        frameListener.run();
+
+        float displacement = layout.getDisplacement();
+        if (displacement < SLOW_DISPLACEMENT) {
+          interval = Math.min(interval * 5 / 4, MAX_INTERVAL);
+        } else {
+          interval = MIN_INTERVAL;
+        }
+        slowIterations = displacement < CONVERGED_DISPLACEMENT ? slowIterations + 1 : 0;
+        synchronized (this) {
+          if (slowIterations >= CONVERGED_ITERATIONS && pinned < 0 && !woken) {
+            converged = true;
+          }
+        }
+        long remaining = interval - (System.nanoTime() - start);
+        if (remaining > 0) {
+          TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+      }
+    } catch (InterruptedException ex) {
+      return;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/* Uniform grid index of node bounding boxes. Node i covers the rectangle from (x[i], y[i]) to
+   (x[i] + w[i], y[i] + h[i]) and is stored in every cell that the rectangle overlaps. The cells
+   are stored in compressed form, with the nodes of cell c in items[cellStart[c]] to
+   items[cellStart[c + 1] - 1]. All arrays are reused when the index is rebuilt.
+
+   Nodes that are moved after the index has been built are kept in a short list that is searched
+   linearly, and their entries in the cells are ignored, until the list grows long enough for the
+   index to be rebuilt. */
+class NodeGrid {
+  private static final int MAX_MOVED = 64;
+
+  private final float minCellSize;
+  private int n = 0;
+  private float[] x = new float[0];
+  private float[] y = new float[0];
+  private float[] w = new float[0];
+  private float[] h = new float[0];
+  private float originX = 0;
+  private float originY = 0;
+  private float cellSize = 1;
+  private int cols = 0;
+  private int rows = 0;
+  private int[] cellStart = new int[1];
+  private int[] items = new int[0];
+  /* Nodes that have been visited by the current query are marked with its stamp. */
+  private int[] marks = new int[0];
+  private int stamp = 0;
+  private boolean[] moved = new boolean[0];
+  private int[] movedList = new int[MAX_MOVED];
+  private int movedCount = 0;
+
+  NodeGrid(float minCellSize) {
+    this.minCellSize = minCellSize;
+  }
+
+  /* Clears the index and makes room for n nodes, whose bounds are then set with setBounds before
+     the index is built. */
+  void reset(int n) {
+    this.n = n;
+    if (x.length < n) {
+      int len = Math.max(n, x.length * 2);
+      x = new float[len];
+      y = new float[len];
+      w = new float[len];
+      h = new float[len];
+      marks = new int[len];
+      moved = new boolean[len];
+      stamp = 0;
+    }
+  }
+
+  void setBounds(int i, float x, float y, float w, float h) {
+    this.x[i] = x;
+    this.y[i] = y;
+    this.w[i] = w;
+    this.h[i] = h;
+  }
+
+  /* Moves a node without rebuilding the index. */
+  void move(int i, float x, float y) {
+    this.x[i] = x;
+    this.y[i] = y;
+    if (!moved[i]) {
+      if (movedCount == MAX_MOVED) {
+        build();
+        return;
+      }
+      moved[i] = true;
+      movedList[movedCount++] = i;
+    }
+  }
+
+  void build() {
+    for (int k = 0; k < movedCount; k++) {
+      moved[movedList[k]] = false;
+    }
+    movedCount = 0;
+
+    float minx = Float.MAX_VALUE;
+    float miny = Float.MAX_VALUE;
+    float maxx = -Float.MAX_VALUE;
+    float maxy = -Float.MAX_VALUE;
+    float maxSize = 0;
+    for (int i = 0; i < n; i++) {
+      minx = Math.min(minx, x[i]);
+      miny = Math.min(miny, y[i]);
+      maxx = Math.max(maxx, x[i] + w[i]);
+      maxy = Math.max(maxy, y[i] + h[i]);
+      maxSize = Math.max(maxSize, Math.max(w[i], h[i]));
+    }
+    if (n == 0) {
+      minx = miny = maxx = maxy = 0;
+    }
+    originX = minx;
+    originY = miny;
+    /* Cells are at least as large as the largest node, so that every node is stored in at most
+       four cells, and are made larger if the grid would have many more cells than nodes. */
+    cellSize = Math.max(minCellSize, maxSize);
+    double area = (double)(maxx - minx) * (maxy - miny);
+    if (area / ((double)cellSize * cellSize) > 4.0 * n + 16) {
+      cellSize = (float)Math.sqrt(area / (4.0 * n + 16));
+    }
+    cols = (int)((maxx - minx) / cellSize) + 1;
+    rows = (int)((maxy - miny) / cellSize) + 1;
+    int cells = cols * rows;
+
+    if (cellStart.length < cells + 1) {
+      cellStart = new int[cells + 1];
+    } else {
+      Arrays.fill(cellStart, 0, cells + 1, 0);
+    }
+    for (int i = 0; i < n; i++) {
+      for (int r = row(y[i]); r <= row(y[i] + h[i]); r++) {
+        for (int c = col(x[i]); c <= col(x[i] + w[i]); c++) {
+          cellStart[r * cols + c + 1] += 1;
+        }
+      }
+    }
+    for (int c = 0; c < cells; c++) {
+      cellStart[c + 1] += cellStart[c];
+    }
+    if (items.length < cellStart[cells]) {
+      items = new int[cellStart[cells] * 5 / 4];
+    }
+    /* The cell starts are moved forward while filling and restored afterwards. */
+    for (int i = 0; i < n; i++) {
+      for (int r = row(y[i]); r <= row(y[i] + h[i]); r++) {
+        for (int c = col(x[i]); c <= col(x[i] + w[i]); c++) {
+          items[cellStart[r * cols + c]++] = i;
+        }
+      }
+    }
+    for (int c = cells; c > 0; c--) {
+      cellStart[c] = cellStart[c - 1];
+    }
+    cellStart[0] = 0;
+  }
+
+  private int col(float px) {
+    return Math.max(0, Math.min(cols - 1, (int)((px - originX) / cellSize)));
+  }
+
+  private int row(float py) {
+    return Math.max(0, Math.min(rows - 1, (int)((py - originY) / cellSize)));
+  }
+
+  /* Calls action once for every node whose bounds intersect the given rectangle. */
+  void query(float minx, float miny, float maxx, float maxy, IntConsumer action) {
+    if (n == 0) {
+      return;
+    }
+    for (int k = 0; k < movedCount; k++) {
+      int i = movedList[k];
+      if (intersects(i, minx, miny, maxx, maxy)) {
+        action.accept(i);
+      }
+    }
+    if (maxx < originX || maxy < originY || minx > originX + cols * cellSize
+        || miny > originY + rows * cellSize) {
+      return;
+    }
+    if (++stamp == 0) {
+      Arrays.fill(marks, 0);
+      stamp = 1;
+    }
+    for (int r = row(miny); r <= row(maxy); r++) {
+      for (int c = col(minx); c <= col(maxx); c++) {
+        for (int k = cellStart[r * cols + c]; k < cellStart[r * cols + c + 1]; k++) {
+          int i = items[k];
+          if (marks[i] != stamp && !moved[i] && intersects(i, minx, miny, maxx, maxy)) {
+            marks[i] = stamp;
+            action.accept(i);
+          }
+        }
+      }
+    }
+  }
+
+  /* Stores the nodes whose bounds contain a point in hits, in increasing order, and returns their
+     number. At most hits.length nodes are returned. */
+  int find(float px, float py, int[] hits) {
+    int count = 0;
+    for (int k = 0; k < movedCount; k++) {
+      int i = movedList[k];
+      if (count < hits.length && intersects(i, px, py, px, py)) {
+        hits[count++] = i;
+      }
+    }
+    if (n > 0 && px >= originX && py >= originY && px <= originX + cols * cellSize
+        && py <= originY + rows * cellSize) {
+      int c = row(py) * cols + col(px);
+      /* A point is in a single cell, so no node is found twice. */
+      for (int k = cellStart[c]; k < cellStart[c + 1] && count < hits.length; k++) {
+        int i = items[k];
+        if (!moved[i] && intersects(i, px, py, px, py)) {
+          hits[count++] = i;
+        }
+      }
+    }
+    Arrays.sort(hits, 0, count);
+    return count;
+  }
+
+  private boolean intersects(int i, float minx, float miny, float maxx, float maxy) {
+    return x[i] <= maxx && x[i] + w[i] >= minx && y[i] <= maxy && y[i] + h[i] >= miny;
+  }
+}
@@ -0,0 +1,221 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Objects;
+
+/* Writes an SVG document element by element, without keeping the document in memory. Output is
+   collected in a small buffer that is passed on to the writer when it fills up. Characters outside
+   of ASCII are written as character references, so the output is valid in any ASCII compatible
+   encoding. */
+class SvgWriter {
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Writer out;
+  private final StringBuilder sb = new StringBuilder(BUFFER_SIZE + 256);
+  private final double[] coords = new double[6];
+
+  SvgWriter(Writer out) {
+    this.out = Objects.requireNonNull(out);
+  }
+
+  /* Starts a document with the given size in pixels. */
+  void start(double width, double height) throws IOException {
+    sb.append("<?xml version=\"1.0\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+    appendNumber(width);
+    sb.append("\" height=\"");
+    appendNumber(height);
+    sb.append("\" viewBox=\"0 0 ");
+    appendNumber(width);
+    sb.append(' ');
+    appendNumber(height);
+    sb.append("\">\n");
+    flushIfFull();
+  }
+
+  /* Ends the document and flushes the writer, which is not closed. */
+  void end() throws IOException {
+    sb.append("</svg>\n");
+    out.append(sb);
+    sb.setLength(0);
+    out.flush();
+  }
+
+  /* Starts a group. The attributes, which apply to all elements in the group, are written as they
+     are and must be valid XML. */
+  void startGroup(String attributes) throws IOException {
+    sb.append("<g ").append(attributes).append(">\n");
+    flushIfFull();
+  }
+
+  void endGroup() throws IOException {
+    sb.append("</g>\n");
+    flushIfFull();
+  }
+
+  void line(double x1, double y1, double x2, double y2) throws IOException {
+    sb.append("<line x1=\"");
+    appendNumber(x1);
+    sb.append("\" y1=\"");
+    appendNumber(y1);
+    sb.append("\" x2=\"");
+    appendNumber(x2);
+    sb.append("\" y2=\"");
+    appendNumber(y2);
+    sb.append("\"/>\n");
+    flushIfFull();
+  }
+
+  /* Writes a filled shape. Ellipses and rectangles get their own elements and other shapes are
+     written as paths. The shape is outlined if stroke is not null. */
+  void shape(Shape shape, Color fill, Color stroke, float strokeWidth) throws IOException {
+    if (shape instanceof Ellipse2D) {
+      Ellipse2D ellipse = (Ellipse2D)shape;
+      sb.append("<ellipse cx=\"");
+      appendNumber(ellipse.getCenterX());
+      sb.append("\" cy=\"");
+      appendNumber(ellipse.getCenterY());
+      sb.append("\" rx=\"");
+      appendNumber(ellipse.getWidth() / 2);
+      sb.append("\" ry=\"");
+      appendNumber(ellipse.getHeight() / 2);
+    } else if (shape instanceof Rectangle2D) {
+      Rectangle2D rect = (Rectangle2D)shape;
+      sb.append("<rect x=\"");
+      appendNumber(rect.getX());
+      sb.append("\" y=\"");
+      appendNumber(rect.getY());
+      sb.append("\" width=\"");
+      appendNumber(rect.getWidth());
+      sb.append("\" height=\"");
+      appendNumber(rect.getHeight());
+    } else {
+      sb.append("<path d=\"");
+      appendPath(shape.getPathIterator(null));
+      if (shape.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+        sb.append("\" fill-rule=\"evenodd");
+      }
+    }
+    sb.append('"');
+    appendColor("fill", fill);
+    if (stroke != null) {
+      appendColor("stroke", stroke);
+      sb.append(" stroke-width=\"");
+      appendNumber(strokeWidth);
+      sb.append('"');
+    }
+    sb.append("/>\n");
+    flushIfFull();
+  }
+
+  /* Writes text with its baseline starting at (x, y). */
+  void text(String text, double x, double y) throws IOException {
+    sb.append("<text x=\"");
+    appendNumber(x);
+    sb.append("\" y=\"");
+    appendNumber(y);
+    sb.append("\">");
+    for (int i = 0; i < text.length(); i++) {
+      char ch = text.charAt(i);
+      switch (ch) {
+        case '&': sb.append("&amp;"); break;
+        case '<': sb.append("&lt;"); break;
+        case '>': sb.append("&gt;"); break;
+        default:
+          if (Character.isHighSurrogate(ch) && i + 1 < text.length()
+              && Character.isLowSurrogate(text.charAt(i + 1))) {
+            sb.append("&#").append(Character.toCodePoint(ch, text.charAt(++i))).append(';');
+          } else if (Character.isSurrogate(ch) || (ch < 0x20 && ch != '\t')) {
+            /* Not allowed in XML. */
+            sb.append(' ');
+          } else if (ch > 0x7e) {
+            sb.append("&#").append((int)ch).append(';');
+          } else {
+            sb.append(ch);
+          }
+      }
+    }
+    sb.append("</text>\n");
+    flushIfFull();
+  }
+
+  private void appendPath(PathIterator it) {
+    boolean first = true;
+    for (; !it.isDone(); it.next()) {
+      int type = it.currentSegment(coords);
+      if (!first) {
+        sb.append(' ');
+      }
+      first = false;
+      int points = 0;
+      switch (type) {
+        case PathIterator.SEG_MOVETO:  sb.append('M'); points = 1; break;
+        case PathIterator.SEG_LINETO:  sb.append('L'); points = 1; break;
+        case PathIterator.SEG_QUADTO:  sb.append('Q'); points = 2; break;
+        case PathIterator.SEG_CUBICTO: sb.append('C'); points = 3; break;
+        default: sb.append('Z'); break;
+      }
+      for (int i = 0; i < 2 * points; i++) {
+        sb.append(' ');
+        appendNumber(coords[i]);
+      }
+    }
+  }
+
+  private void appendColor(String attribute, Color color) {
+    sb.append(' ').append(attribute).append("=\"#");
+    String hex = Integer.toHexString(color.getRGB() & 0xffffff);
+    for (int i = hex.length(); i < 6; i++) {
+      sb.append('0');
+    }
+    sb.append(hex).append('"');
+    if (color.getAlpha() != 255) {
+      sb.append(' ').append(attribute).append("-opacity=\"");
+      appendNumber(color.getAlpha() / 255.0);
+      sb.append('"');
+    }
+  }
+
+  /* Appends a number with at most two decimals, without going through a formatter. */
+  private void appendNumber(double value) {
+    long hundredths = Math.round(value * 100);
+    if (hundredths < 0) {
+      sb.append('-');
+      hundredths = -hundredths;
+    }
+    sb.append(hundredths / 100);
+    int fraction = (int)(hundredths % 100);
+    if (fraction != 0) {
+      sb.append('.').append(fraction / 10);
+      if (fraction % 10 != 0) {
+        sb.append(fraction % 10);
+      }
+    }
+  }
+
+  private void flushIfFull() throws IOException {
+    if (sb.length() >= BUFFER_SIZE) {
+      out.append(sb);
+      sb.setLength(0);
+    }
+  }
+}
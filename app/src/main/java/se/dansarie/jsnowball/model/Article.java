@@ -14,17 +14,18 @@
 
 package se.dansarie.jsnowball.model;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 
 import javax.swing.ListModel;
-import javax.swing.SwingUtilities;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -44,24 +45,42 @@ public class Article extends SnowballStateMember {
   private String year = "";
   private String label = "";
 
-  private ArrayList<Author> authors = new ArrayList<>();
-  private ArrayList<Article> references = new ArrayList<>();
-  private ArrayList<Article> referencesTo = new ArrayList<>();
-  private ArrayList<Tag> tags = new ArrayList<>();
+  private MemberList<Author> authors = new MemberList<>();
+  private MemberList<Article> references = new MemberList<>();
+  private MemberList<Article> referencesTo = new MemberList<>();
+  private MemberList<Tag> tags = new MemberList<>();
 
-  private SnowballListModel<Author> authorsListModel = new SnowballListModel<>(authors);
-  private SnowballListModel<Article> referenceListModel = new SnowballListModel<>(references);
-  private SnowballListModel<Article> referencesToListModel = new SnowballListModel<>(referencesTo);
-  private SnowballListModel<Tag> tagListModel = new SnowballListModel<>(tags);
+  private SnowballListModel<Author> authorsListModel = new SnowballListModel<>();
+  private SnowballListModel<Article> referenceListModel = new SnowballListModel<>();
+  private SnowballListModel<Article> referencesToListModel = new SnowballListModel<>();
+  private SnowballListModel<Tag> tagListModel = new SnowballListModel<>();
 
   public Article(SnowballState state) {
     super(state);
+    addToState();
+  }
+
+  /* Restores an article that is loaded together with the rest of the state. References to other
+     members are restored by restoreRelations once all members have been created. */
+  Article(SnowballState state, SerializationProxy proxy) {
+    super(state, proxy.id, proxy.notes, proxy.graphX, proxy.graphY);
+    doi = Objects.requireNonNullElse(proxy.doi, "");
+    issue = Objects.requireNonNullElse(proxy.issue, "");
+    month = Objects.requireNonNullElse(proxy.month, "");
+    pages = Objects.requireNonNullElse(proxy.pages, "");
+    startSet = proxy.startSet;
+    status = ArticleStatus.valueOf(proxy.status);
+    title = Objects.requireNonNullElse(proxy.title, "");
+    volume = Objects.requireNonNullElse(proxy.volume, "");
+    year = Objects.requireNonNullElse(proxy.year, "");
+    label = Objects.requireNonNullElse(proxy.label, "");
   }
 
   public Article(SnowballState state, CrossRef r) {
     super(state);
     lock();
     try {
+      addToState();
       getState().pushInhibitUpdates();
       setDoi(r.doi);
       setIssue(r.issue);
@@ -98,6 +117,7 @@ public class Article extends SnowballStateMember {
     super(state);
     lock();
     try {
+      addToState();
       getState().pushInhibitUpdates();
       setDoi(r.doi);
       setIssue(r.issue);
@@ -125,6 +145,7 @@ public class Article extends SnowballStateMember {
     super(state);
     lock();
     try {
+      addToState();
       getState().pushInhibitUpdates();
       setMonth(Integer.toString(a.published.getMonthValue()));
       setNotes(a.id);
@@ -180,10 +201,9 @@ public class Article extends SnowballStateMember {
         throw new IllegalArgumentException("Article and author belong to different states.");
       }
       if (!authors.contains(author)) {
-        authors.add(author);
+        int idx = authors.insertSorted(author);
         author.addArticle(this);
-        Collections.sort(authors);
-        SwingUtilities.invokeLater(() -> authorsListModel.fireAdded(author));
+        authorsListModel.fireAdded(idx, author);
         fireUpdated();
       }
     } finally {
@@ -204,14 +224,12 @@ public class Article extends SnowballStateMember {
         if (ref.referencesTo.contains(this)) {
           throw new IllegalStateException();
         }
-        references.add(ref);
-        ref.referencesTo.add(this);
-        Collections.sort(references);
-        Collections.sort(ref.referencesTo);
-        SwingUtilities.invokeLater(() -> {
-          referenceListModel.fireAdded(ref);
-          ref.referencesToListModel.fireAdded(this);
-        });
+        int idx = references.insertSorted(ref);
+        int idx2 = ref.referencesTo.insertSorted(this);
+        referenceListModel.fireAdded(idx, ref);
+        ref.referencesToListModel.fireAdded(idx2, this);
+        ref.updateReferenceCounts(1);
+        getState().referenceAdded(this, ref);
         fireUpdated();
         ref.fireUpdated();
       }
@@ -227,9 +245,9 @@ public class Article extends SnowballStateMember {
         throw new IllegalArgumentException("Article and tag belong to different states.");
       }
       if (!tags.contains(tag)) {
-        tags.add(tag);
-        Collections.sort(tags);
-        SwingUtilities.invokeLater(() -> tagListModel.fireAdded(tag));
+        int idx = tags.insertSorted(tag);
+        tagListModel.fireAdded(idx, tag);
+        tag.addArticle();
         fireUpdated();
       }
     } finally {
@@ -238,7 +256,7 @@ public class Article extends SnowballStateMember {
   }
 
   public int distanceTo(Article... articles) {
-    lock();
+    readLock();
     try {
       SnowballState state = getState();
       List<Article> destinations = Arrays.asList(articles);
@@ -285,7 +303,7 @@ public class Article extends SnowballStateMember {
       }
       return -1;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
@@ -306,173 +324,153 @@ public class Article extends SnowballStateMember {
   }
 
   public List<Author> getAuthors() {
-    lock();
-    try {
-      return Collections.unmodifiableList(new ArrayList<>(authors));
-    } finally {
-      unlock();
-    }
+    return getState().snapshot(authors);
   }
 
   public ListModel<Author> getAuthorsListModel() {
-    lock();
+    readLock();
     try {
       return authorsListModel;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getDoi() {
-    lock();
+    readLock();
     try {
       return doi;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getIssue() {
-    lock();
+    readLock();
     try {
       return issue;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public Journal getJournal() {
-    lock();
+    readLock();
     try {
       return journal;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getLabel() {
-    lock();
+    readLock();
     try {
       return label;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getMonth() {
-    lock();
+    readLock();
     try {
       return month;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public ArticleStatus getStatus() {
-    lock();
+    readLock();
     try {
       return status;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getPages() {
-    lock();
+    readLock();
     try {
       return pages;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public List<Article> getReferences() {
-    lock();
-    try {
-      return Collections.unmodifiableList(new ArrayList<>(references));
-    } finally {
-      unlock();
-    }
+    return getState().snapshot(references);
   }
 
   public ListModel<Article> getReferenceListModel() {
-    lock();
+    readLock();
     try {
       return referenceListModel;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public List<Article> getReferencesTo() {
-    lock();
-    try {
-      return Collections.unmodifiableList(new ArrayList<>(referencesTo));
-    } finally {
-      unlock();
-    }
+    return getState().snapshot(referencesTo);
   }
 
   public ListModel<Article> getReferencesToListModel() {
-    lock();
+    readLock();
     try {
       return referencesToListModel;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public List<Tag> getTags() {
-    lock();
-    try {
-      return Collections.unmodifiableList(new ArrayList<>(tags));
-    } finally {
-      unlock();
-    }
+    return getState().snapshot(tags);
   }
 
   public ListModel<Tag> getTagListModel() {
-    lock();
+    readLock();
     try {
       return tagListModel;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getTitle() {
-    lock();
+    readLock();
     try {
       return title;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getVolume() {
-    lock();
+    readLock();
     try {
       return volume;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getYear() {
-    lock();
+    readLock();
     try {
       return year;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public boolean inStartSet() {
-    lock();
+    readLock();
     try {
       return startSet;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
@@ -523,6 +521,17 @@ public class Article extends SnowballStateMember {
     }
   }
 
+  /* Updates the reference counters of the authors and journal of this article after references
+     to it have been added or removed. */
+  private void updateReferenceCounts(int delta) {
+    for (Author au : authors) {
+      au.addReferenceCount(delta);
+    }
+    if (journal != null) {
+      journal.addReferenceCount(delta);
+    }
+  }
+
   public void removeAuthor(Author author) {
     lock();
     try {
@@ -530,9 +539,9 @@ public class Article extends SnowballStateMember {
       if (idx < 0) {
         throw new IllegalArgumentException("Attempted to remove non-existing author.");
       }
-      authors.remove(author);
+      authors.remove(idx);
       author.removeArticle(this);
-      SwingUtilities.invokeLater(() -> authorsListModel.fireRemoved(idx));
+      authorsListModel.fireRemoved(idx);
       fireUpdated();
     } finally {
       unlock();
@@ -547,15 +556,15 @@ public class Article extends SnowballStateMember {
         throw new IllegalArgumentException("Attempted to remove non-existing reference.");
       }
       int idx2 = ref.referencesTo.indexOf(this);
-      if (idx < 0) {
+      if (idx2 < 0) {
         throw new IllegalStateException();
       }
       references.remove(idx);
       ref.referencesTo.remove(idx2);
-      SwingUtilities.invokeLater(() -> {
-        referenceListModel.fireRemoved(idx);
-        ref.referencesToListModel.fireRemoved(idx2);
-      });
+      referenceListModel.fireRemoved(idx);
+      ref.referencesToListModel.fireRemoved(idx2);
+      ref.updateReferenceCounts(-1);
+      getState().invalidateDistances();
       fireUpdated();
       ref.fireUpdated();
     } finally {
@@ -575,6 +584,13 @@ public class Article extends SnowballStateMember {
       for (Article art : getReferences()) {
         removeReference(art);
       }
+      for (Author au : getAuthors()) {
+        removeAuthor(au);
+      }
+      for (Tag tag : getTags()) {
+        removeTag(tag);
+      }
+      setJournal(null);
       getState().removeMember(this);
     } finally {
       unlock();
@@ -589,7 +605,8 @@ public class Article extends SnowballStateMember {
         throw new IllegalArgumentException("Attempted to remove non-existing tag.");
       }
       tags.remove(idx);
-      SwingUtilities.invokeLater(() -> tagListModel.fireRemoved(idx));
+      tagListModel.fireRemoved(idx);
+      tag.removeArticle();
       fireUpdated();
     } finally {
       unlock();
@@ -599,7 +616,12 @@ public class Article extends SnowballStateMember {
   public void setDoi(String doi) {
     lock();
     try {
+      SnowballState state = getState();
+      boolean indexed = state.unindexMember(this);
       this.doi = Objects.requireNonNullElse(doi, "");
+      if (indexed) {
+        state.indexMember(this);
+      }
       fireUpdated();
     } finally {
       unlock();
@@ -619,7 +641,13 @@ public class Article extends SnowballStateMember {
   public void setJournal(Journal journal) {
     lock();
     try {
+      if (this.journal != null) {
+        this.journal.removeArticle(this);
+      }
       this.journal = journal;
+      if (journal != null) {
+        journal.addArticle(this);
+      }
       fireUpdated();
     } finally {
       unlock();
@@ -659,7 +687,11 @@ public class Article extends SnowballStateMember {
   public void setStatus(ArticleStatus status) {
     lock();
     try {
-      this.status = Objects.requireNonNull(status);
+      if (this.status != Objects.requireNonNull(status)
+          && (this.status == ArticleStatus.EXCLUDED || status == ArticleStatus.EXCLUDED)) {
+        getState().invalidateDistances();
+      }
+      this.status = status;
       fireUpdated();
     } finally {
       unlock();
@@ -669,6 +701,9 @@ public class Article extends SnowballStateMember {
   public void setStartSet(boolean inStartSet) {
     lock();
     try {
+      if (startSet != inStartSet) {
+        getState().invalidateDistances();
+      }
       startSet = inStartSet;
       fireUpdated();
     } finally {
@@ -679,7 +714,21 @@ public class Article extends SnowballStateMember {
   public void setTitle(String title) {
     lock();
     try {
+      SnowballState state = getState();
+      boolean indexed = state.unindexMember(this);
       this.title = Objects.requireNonNullElse(title, "");
+      if (indexed) {
+        state.indexMember(this);
+      }
+      for (Article ref : references) {
+        SnowballState.resortMember(this, ref.referencesTo, ref.referencesToListModel);
+      }
+      for (Article art : referencesTo) {
+        SnowballState.resortMember(this, art.references, art.referenceListModel);
+      }
+      for (Author au : authors) {
+        au.resortArticle(this);
+      }
       fireUpdated();
     } finally {
       unlock();
@@ -706,10 +755,22 @@ public class Article extends SnowballStateMember {
     }
   }
 
+  /* Moves an author to its sorted position in the author list after its name has been
+     changed. */
+  void resortAuthor(Author author) {
+    lock();
+    try {
+      SnowballState.resortMember(author, authors, authorsListModel);
+    } finally {
+      unlock();
+    }
+  }
+
   void sortTags() {
     lock();
     try {
       Collections.sort(tags);
+      tagListModel.fireReset(tags);
       fireUpdated();
     } finally {
       unlock();
@@ -718,95 +779,211 @@ public class Article extends SnowballStateMember {
 
   @Override
   public int compareTo(SnowballStateMember other) {
+    readLock();
+    try {
+      return compareUnlocked((Article)other);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Compares without taking the lock, for sorting on several threads while the state is built. */
+  int compareUnlocked(Article o) {
+    if (title == null) {
+      if (o.title == null) {
+        return 0;
+      }
+      return -1;
+    }
+    if (o.title == null) {
+      return 1;
+    }
+    return title.compareToIgnoreCase(o.title);
+  }
+
+  @Override
+  public String toString() {
+    readLock();
+    try {
+      return getTitle();
+    } finally {
+      readUnlock();
+    }
+  }
+
+  public static Article getByDoi(SnowballState state, String doi) {
+    return state.getArticleByDoi(doi);
+  }
+
+  public static Article getByTitle(SnowballState state, String title) {
+    return state.getArticleByTitle(title);
+  }
+
+  /* Returns a proxy that refers to other members by the indexes given by the function. */
+  SerializationProxy getSerializationProxy(ToIntFunction<SnowballStateMember> index) {
+    readLock();
+    try {
+      return new SerializationProxy(this, index);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Removes the journal, authors, references and tags of the article, so that it can be restored
+     from a newer proxy. */
+  void clearRelations() {
     lock();
     try {
-      Article o = (Article)other;
-      if (getTitle() == null) {
-        if (o.getTitle() == null) {
-          return 0;
-        }
-        return -1;
+      for (Article art : getReferences()) {
+        removeReference(art);
       }
-      if (o.getTitle() == null) {
-        return 1;
+      for (Author au : getAuthors()) {
+        removeAuthor(au);
+      }
+      for (Tag tag : getTags()) {
+        removeTag(tag);
       }
-      return getTitle().compareToIgnoreCase(o.getTitle());
+      setJournal(null);
     } finally {
       unlock();
     }
   }
 
-  @Override
-  public String toString() {
+  /* Restores the article from a proxy. The functions look up the members that the proxy refers to
+     by their index in the project file. */
+  void restoreFromProxy(SerializationProxy proxy, IntFunction<Article> articles,
+      IntFunction<Author> authors, IntFunction<Journal> journals, IntFunction<Tag> tags) {
     lock();
     try {
-      return getTitle();
+      getState().pushInhibitUpdates();
+      try {
+        getState().restoreId(this, proxy.id);
+        setDoi(proxy.doi);
+        setIssue(proxy.issue);
+        setMonth(proxy.month);
+        setPages(proxy.pages);
+        setStartSet(proxy.startSet);
+        setStatus(ArticleStatus.valueOf(proxy.status));
+        setTitle(proxy.title);
+        setVolume(proxy.volume);
+        setYear(proxy.year);
+        setLabel(proxy.label);
+        setNotes(proxy.notes);
+        setGraphPosition(proxy.graphX, proxy.graphY);
+        if (proxy.journal >= 0) {
+          setJournal(journals.apply(proxy.journal));
+        }
+        for (int i : proxy.authors) {
+          addAuthor(authors.apply(i));
+        }
+        for (int i : proxy.references) {
+          addReference(articles.apply(i));
+        }
+        for (int i : proxy.tags) {
+          addTag(tags.apply(i));
+        }
+      } finally {
+        getState().popInhibitUpdates();
+      }
     } finally {
       unlock();
     }
   }
 
-  public static Article getByDoi(SnowballState state, String doi) {
-    for (Article art : state.getArticles()) {
-      if (art.getDoi().equalsIgnoreCase(doi.trim())) {
-        return art;
+  /* Fills the lists of the article directly from the indexes in a proxy, without sorting them or
+     firing any updates. Duplicate indexes are dropped after sorting a copy of the indexes, rather
+     than by searching the lists. Called for many articles at once on different threads while the
+     state is built. Only the article itself is changed, so no lock is taken. */
+  void restoreRelations(SerializationProxy proxy, Article[] articles, Author[] authors,
+      Journal[] journals, Tag[] tags) {
+    if (proxy.journal >= 0) {
+      journal = journals[proxy.journal];
+    }
+    int[] indexes = distinct(proxy.authors);
+    this.authors.ensureCapacity(indexes.length);
+    for (int i : indexes) {
+      this.authors.add(authors[i]);
+    }
+    indexes = distinct(proxy.references);
+    references.ensureCapacity(indexes.length);
+    for (int i : indexes) {
+      Article ref = articles[i];
+      if (ref == this) {
+        throw new IllegalArgumentException("Circular references not allowed.");
       }
+      references.add(ref);
+    }
+    indexes = distinct(proxy.tags);
+    this.tags.ensureCapacity(indexes.length);
+    for (int i : indexes) {
+      this.tags.add(tags[i]);
     }
-    return null;
   }
 
-  public static Article getByTitle(SnowballState state, String title) {
-    for (Article art : state.getArticles()) {
-      if(art.getTitle().equals(title)) {
-        return art;
+  /* Returns the indexes in ascending order without duplicates. */
+  private static int[] distinct(int[] indexes) {
+    int[] ret = indexes.clone();
+    Arrays.sort(ret);
+    int n = 0;
+    for (int i = 0; i < ret.length; i++) {
+      if (n == 0 || ret[i] != ret[n - 1]) {
+        ret[n++] = ret[i];
       }
     }
-    return null;
+    return n == ret.length ? ret : Arrays.copyOf(ret, n);
   }
 
-  SerializationProxy getSerializationProxy() {
+  /* Adds the article to the members it refers to, once the relations of all articles have been
+     restored. */
+  void linkLoaded() {
     lock();
     try {
-      return new SerializationProxy(this);
+      if (journal != null) {
+        journal.addLoadedArticle();
+      }
+      for (Author au : authors) {
+        au.addLoadedArticle(this);
+      }
+      for (Article ref : references) {
+        ref.referencesTo.add(this);
+      }
+      for (Tag tag : tags) {
+        tag.addArticle();
+      }
     } finally {
       unlock();
     }
   }
 
-  void restoreFromProxy(SerializationProxy proxy, List<Article> articles,
-      List<Author> authors, List<Journal> journals, List<Tag> tags) {
+  /* Updates the reference counts of the authors and the journal once all articles have been
+     linked. */
+  void countLoadedReferences() {
     lock();
     try {
-      getState().pushInhibitUpdates();
-      setDoi(proxy.doi);
-      setIssue(proxy.issue);
-      setMonth(proxy.month);
-      setPages(proxy.pages);
-      setStartSet(proxy.startSet);
-      setStatus(ArticleStatus.valueOf(proxy.status));
-      setTitle(proxy.title);
-      setVolume(proxy.volume);
-      setYear(proxy.year);
-      setLabel(proxy.label);
-      setNotes(proxy.notes);
-      if (proxy.journal >= 0) {
-        setJournal(journals.get(proxy.journal));
-      }
-      for (int i : proxy.authors) {
-        addAuthor(authors.get(i));
-      }
-      for (int i : proxy.references) {
-        addReference(articles.get(i));
-      }
-      for (int i : proxy.tags) {
-        addTag(tags.get(i));
-      }
-      getState().popInhibitUpdates();
+      updateReferenceCounts(referencesTo.size());
     } finally {
       unlock();
     }
   }
 
+  /* Sorts the lists of the article once all articles have been linked. Called for many articles at
+     once on different threads while the state is built. Only the lists of this article are
+     changed, so no lock is taken apart from the read lock taken when tags are compared. */
+  void finishLoad() {
+    finishList(authors, authorsListModel, Author::compareUnlocked);
+    finishList(references, referenceListModel, Article::compareUnlocked);
+    finishList(referencesTo, referencesToListModel, Article::compareUnlocked);
+    finishList(tags, tagListModel, Tag::compareTo);
+  }
+
+  private static <E extends SnowballStateMember> void finishList(MemberList<E> list,
+      SnowballListModel<E> listModel, Comparator<? super E> order) {
+    if (!list.isEmpty()) {
+      list.sort(order);
+      listModel.initialize(list);
+    }
+  }
+
   public enum ArticleStatus {
     INCLUDED, EXCLUDED, UNDECIDED
   }
@@ -827,8 +1004,19 @@ public class Article extends SnowballStateMember {
     private final int journal;
     private final int[] references;
     private final int[] tags;
+    private final float graphX;
+    private final float graphY;
+    private final int id;
+
+    /* Column types in the binary project format. */
+    static final int[] COLUMNS = {BinaryProject.STRING, BinaryProject.STRING,
+        BinaryProject.STRING, BinaryProject.STRING, BinaryProject.STRING, BinaryProject.INT,
+        BinaryProject.STRING, BinaryProject.STRING, BinaryProject.STRING, BinaryProject.STRING,
+        BinaryProject.STRING, BinaryProject.INT, BinaryProject.FLOAT, BinaryProject.FLOAT,
+        BinaryProject.LIST, BinaryProject.LIST, BinaryProject.LIST, BinaryProject.INT};
 
     SerializationProxy(JSONObject json) throws JSONException {
+      id = json.optInt("id", -1);
       doi = json.getString("doi");
       issue = json.getString("issue");
       journal = json.getInt("journal");
@@ -841,6 +1029,8 @@ public class Article extends SnowballStateMember {
       volume = json.getString("volume");
       year = json.getString("year");
       label = json.optString("label", "");
+      graphX = (float)json.optDouble("x", Double.NaN);
+      graphY = (float)json.optDouble("y", Double.NaN);
 
       JSONArray au = json.getJSONArray("authors");
       authors = new int[au.length()];
@@ -861,7 +1051,8 @@ public class Article extends SnowballStateMember {
       }
     }
 
-    private SerializationProxy(Article art) {
+    private SerializationProxy(Article art, ToIntFunction<SnowballStateMember> index) {
+      id = art.getId();
       doi = art.doi;
       issue = art.issue;
       month = art.month;
@@ -873,35 +1064,55 @@ public class Article extends SnowballStateMember {
       volume = art.volume;
       year = art.year;
       label = art.label;
-      SnowballState state = art.getState();
+      graphX = art.getGraphX();
+      graphY = art.getGraphY();
 
       authors = new int[art.authors.size()];
-      List<Author> aulist = state.getAuthors();
       for (int i = 0; i < art.authors.size(); i++) {
-        authors[i] = aulist.indexOf(art.authors.get(i));
+        authors[i] = index.applyAsInt(art.authors.get(i));
       }
 
       if (art.journal == null) {
         journal = -1;
       } else {
-        journal = state.getJournals().indexOf(art.journal);
+        journal = index.applyAsInt(art.journal);
       }
 
       references = new int[art.references.size()];
-      List<Article> articles = state.getArticles();
       for (int i = 0; i < art.references.size(); i++) {
-        references[i] = articles.indexOf(art.references.get(i));
+        references[i] = index.applyAsInt(art.references.get(i));
       }
 
       tags = new int[art.tags.size()];
-      List<Tag> taglist = state.getTags();
       for (int i = 0; i < art.tags.size(); i++) {
-        tags[i] = taglist.indexOf(art.tags.get(i));
+        tags[i] = index.applyAsInt(art.tags.get(i));
       }
     }
 
+    SerializationProxy(BinaryProject.SectionReader in) {
+      doi = in.getString();
+      issue = in.getString();
+      month = in.getString();
+      notes = in.getString();
+      pages = in.getString();
+      startSet = in.getInt() != 0;
+      status = in.getString();
+      title = in.getString();
+      volume = in.getString();
+      year = in.getString();
+      label = in.getString();
+      journal = in.getInt();
+      graphX = in.getFloat();
+      graphY = in.getFloat();
+      authors = in.getList();
+      references = in.getList();
+      tags = in.getList();
+      id = in.getInt();
+    }
+
     JSONObject toJson() {
       JSONObject json = new JSONObject();
+      json.put("id", id);
       json.put("doi", doi);
       json.put("issue", issue);
       json.put("journal", journal);
@@ -917,7 +1128,33 @@ public class Article extends SnowballStateMember {
       json.put("references", references);
       json.put("tags", tags);
       json.put("label", label);
+      if (!Float.isNaN(graphX) && !Float.isNaN(graphY)) {
+        json.put("x", graphX);
+        json.put("y", graphY);
+      }
       return json;
     }
+
+    void toBinary(BinaryProject.SectionWriter out) {
+      out.putString(doi);
+      out.putString(issue);
+      out.putString(month);
+      out.putString(notes);
+      out.putString(pages);
+      out.putInt(startSet ? 1 : 0);
+      out.putString(status);
+      out.putString(title);
+      out.putString(volume);
+      out.putString(year);
+      out.putString(label);
+      out.putInt(journal);
+      out.putFloat(graphX);
+      out.putFloat(graphY);
+      out.putList(authors);
+      out.putList(references);
+      out.putList(tags);
+      out.putInt(id);
+      out.endRow();
+    }
   }
  }
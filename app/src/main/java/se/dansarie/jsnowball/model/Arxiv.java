@@ -16,8 +16,10 @@ package se.dansarie.jsnowball.model;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -31,6 +33,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import se.dansarie.jsnowball.gui.LogWindow;
@@ -90,34 +93,57 @@ public class Arxiv {
   }
 
   public synchronized static Arxiv getArxiv(String id) throws IOException {
+    ResponseCache cache = ResponseCache.getInstance();
+    String xml = cache.get(ResponseCache.arxivKey(id));
+    if (xml != null) {
+      return parse(xml);
+    }
+    if (cache.isOffline()) {
+      IOException ex = new IOException("Offline mode: " + id + " is not in the cache.");
+      LogWindow.getInstance().addThrowable(ex);
+      throw ex;
+    }
 
     InputStream stream = null;
     try {
       URL url = new URL("https://export.arxiv.org/api/query?id_list=" + id);
       URLConnection connection = url.openConnection();
       stream = (InputStream)connection.getContent();
+      xml = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException ex) {
+      LogWindow.getInstance().addThrowable(ex);
+      throw ex;
+    } finally {
+      if (stream != null) {
+        try {
+          stream.close();
+        } catch (IOException ex) {
+          LogWindow.getInstance().addThrowable(ex);
+        }
+      }
+    }
+    Arxiv ret = parse(xml);
+    if (ret != null) {
+      cache.put(ResponseCache.arxivKey(id), xml);
+    }
+    return ret;
+  }
+
+  private static Arxiv parse(String xml) throws IOException {
+    try {
       DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
       factory.setIgnoringComments(true);
       factory.setIgnoringElementContentWhitespace(true);
       factory.setNamespaceAware(false);
       factory.setValidating(false);
       DocumentBuilder builder = factory.newDocumentBuilder();
-      Document xml = builder.parse(stream);
-      return new Arxiv(xml);
+      return new Arxiv(builder.parse(new InputSource(new StringReader(xml))));
     } catch (IOException ex) {
       LogWindow.getInstance().addThrowable(ex);
       throw ex;
     } catch (ParserConfigurationException | SAXException ex) {
       LogWindow.getInstance().addThrowable(ex);
       return null;
-    } finally {
-      if (stream != null) {
-        try {
-          stream.close();
-        } catch (IOException ex) {
-          LogWindow.getInstance().addThrowable(ex);
-        }
-      }
     }
   }
 
@@ -14,8 +14,6 @@
 
 package se.dansarie.jsnowball.model;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -29,17 +27,20 @@ public class Author extends SnowballStateMember {
   private String orgname = "";
   private String orcid = "";
   private String label = "";
-  private String stringrepr = null;
-  private List<Article> articles = new ArrayList<>();
+  private volatile String stringrepr = null;
+  private MemberList<Article> articles = new MemberList<>();
+  private int referenceCount = 0;
 
   public Author(SnowballState state) {
     super(state);
+    addToState();
   }
 
   public Author(SnowballState state, CrossRef.Author r) {
     super(state);
     lock();
     try {
+      addToState();
       setFirstName(r.firstName);
       setLastName(r.lastName);
       setOrcId(r.orcid);
@@ -48,70 +49,121 @@ public class Author extends SnowballStateMember {
     }
   }
 
+  /* Restores an author that is loaded together with the rest of the state. */
+  Author(SnowballState state, SerializationProxy proxy) {
+    super(state, proxy.id, proxy.notes, proxy.graphX, proxy.graphY);
+    firstname = Objects.requireNonNullElse(proxy.firstname, "");
+    lastname = Objects.requireNonNullElse(proxy.lastname, "");
+    orgname = Objects.requireNonNullElse(proxy.orgname, "");
+    orcid = Objects.requireNonNullElse(proxy.orcid, "");
+    label = Objects.requireNonNullElse(proxy.label, "");
+  }
+
   void addArticle(Article art) {
     lock();
     try {
       if(articles.contains(Objects.requireNonNull(art))) {
         return;
       }
+      articles.insertSorted(art);
+      referenceCount += art.getReferencesTo().size();
+    } finally {
+      unlock();
+    }
+  }
+
+  /* Adds an article while the state is being loaded. The list is sorted and the reference count
+     is updated when loading is finished. */
+  void addLoadedArticle(Article art) {
+    lock();
+    try {
       articles.add(art);
-      Collections.sort(articles);
     } finally {
       unlock();
     }
   }
 
+  /* Sorts the article list once all articles have been added. Called for many authors at once
+     on different threads while the state is built. Only the list of this author is changed, so no
+     lock is taken. */
+  void finishLoad() {
+    articles.sort(Article::compareUnlocked);
+  }
+
   public List<Article> getArticles() {
+    return getState().snapshot(articles);
+  }
+
+  public int getArticleCount() {
+    readLock();
+    try {
+      return articles.size();
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Returns the total number of references to the articles written by this author. */
+  public int getReferenceCount() {
+    readLock();
+    try {
+      return referenceCount;
+    } finally {
+      readUnlock();
+    }
+  }
+
+  void addReferenceCount(int delta) {
     lock();
     try {
-      return Collections.unmodifiableList(new ArrayList<>(articles));
+      referenceCount += delta;
     } finally {
       unlock();
     }
   }
 
   public String getFirstName() {
-    lock();
+    readLock();
     try {
       return firstname;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getLabel() {
-    lock();
+    readLock();
     try {
       return label;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getLastName() {
-    lock();
+    readLock();
     try {
       return lastname;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getOrgName() {
-    lock();
+    readLock();
     try {
       return orgname;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public String getOrcId() {
-    lock();
+    readLock();
     try {
       return orcid;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
@@ -144,7 +196,7 @@ public class Author extends SnowballStateMember {
   public void remove() {
     lock();
     try {
-      for (Article art : articles) {
+      for (Article art : getArticles()) {
         art.removeAuthor(this);
       }
       getState().removeMember(this);
@@ -153,10 +205,26 @@ public class Author extends SnowballStateMember {
     }
   }
 
+  /* Moves an article to its sorted position in the article list after its title has been
+     changed. */
+  void resortArticle(Article art) {
+    lock();
+    try {
+      int idx = articles.indexOf(art);
+      if (idx >= 0) {
+        articles.resort(idx);
+      }
+    } finally {
+      unlock();
+    }
+  }
+
   void removeArticle(Article art) {
     lock();
     try {
-      articles.remove(Objects.requireNonNull(art));
+      if (articles.remove(Objects.requireNonNull(art))) {
+        referenceCount -= art.getReferencesTo().size();
+      }
     } finally {
       unlock();
     }
@@ -166,7 +234,15 @@ public class Author extends SnowballStateMember {
     lock();
     try {
       stringrepr = null;
+      SnowballState state = getState();
+      boolean indexed = state.unindexMember(this);
       firstname = Objects.requireNonNullElse(name, "");
+      if (indexed) {
+        state.indexMember(this);
+      }
+      for (Article art : articles) {
+        art.resortAuthor(this);
+      }
       fireUpdated();
     } finally {
       unlock();
@@ -187,7 +263,15 @@ public class Author extends SnowballStateMember {
     lock();
     try {
       stringrepr = null;
+      SnowballState state = getState();
+      boolean indexed = state.unindexMember(this);
       lastname = Objects.requireNonNullElse(name, "");
+      if (indexed) {
+        state.indexMember(this);
+      }
+      for (Article art : articles) {
+        art.resortAuthor(this);
+      }
       fireUpdated();
     } finally {
       unlock();
@@ -207,7 +291,12 @@ public class Author extends SnowballStateMember {
   public void setOrcId(String id) {
     lock();
     try {
+      SnowballState state = getState();
+      boolean indexed = state.unindexMember(this);
       orcid = Objects.requireNonNullElse(id, "");
+      if (indexed) {
+        state.indexMember(this);
+      }
       fireUpdated();
     } finally {
       unlock();
@@ -216,75 +305,72 @@ public class Author extends SnowballStateMember {
 
   @Override
   public int compareTo(SnowballStateMember other) {
-    lock();
+    readLock();
     try {
-      Author o = (Author)other;
-      if (getLastName() == null) {
-        if (o.getLastName() == null) {
-          return 0;
-        }
-        return -1;
-      }
-      if (o.getLastName() == null) {
-        return 1;
-      }
-      int ret = getLastName().compareToIgnoreCase(o.getLastName());
-      if (ret != 0) {
-        return ret;
-      }
-      if (getFirstName() == null) {
-        if (o.getFirstName() == null) {
-          return 0;
-        }
-        return -1;
+      return compareUnlocked((Author)other);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Compares without taking the lock, for sorting on several threads while the state is built. */
+  int compareUnlocked(Author o) {
+    if (lastname == null) {
+      if (o.lastname == null) {
+        return 0;
       }
-      if (o.getFirstName() == null) {
-        return 1;
+      return -1;
+    }
+    if (o.lastname == null) {
+      return 1;
+    }
+    int ret = lastname.compareToIgnoreCase(o.lastname);
+    if (ret != 0) {
+      return ret;
+    }
+    if (firstname == null) {
+      if (o.firstname == null) {
+        return 0;
       }
-      return getFirstName().compareToIgnoreCase(o.getFirstName());
-    } finally {
-      unlock();
+      return -1;
+    }
+    if (o.firstname == null) {
+      return 1;
     }
+    return firstname.compareToIgnoreCase(o.firstname);
   }
 
   @Override
   public String toString() {
-    lock();
+    readLock();
     try {
-      if (stringrepr != null) {
-        return stringrepr;
+      /* Called with only the read lock held. Concurrent readers may race to fill in the cached
+         value, but they all compute the same string. */
+      String ret = stringrepr;
+      if (ret == null) {
+        ret = getLastName() + ", " + getFirstName();
+        stringrepr = ret;
       }
-      stringrepr = getLastName() + ", " + getFirstName();
-      return stringrepr;
+      return ret;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public static Author getByOrcid(SnowballState state, String orcid) {
-    for (Author au : state.getAuthors()) {
-      if (au.getOrcId().equals(orcid)) {
-        return au;
-      }
-    }
-    return null;
+    return state.getAuthorByOrcid(orcid);
   }
 
   public static Author getByName(SnowballState state, String first, String last) {
-    for (Author au : state.getAuthors()) {
-      if (au.getFirstName().equalsIgnoreCase(first) && au.getLastName().equalsIgnoreCase(last)) {
-        return au;
-      }
-    }
-    return null;
+    return state.getAuthorByName(first, last);
   }
 
   SerializationProxy getSerializationProxy() {
-    lock();
+    readLock();
     try {
       return new SerializationProxy(this);
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
@@ -292,13 +378,18 @@ public class Author extends SnowballStateMember {
     lock();
     try {
       getState().pushInhibitUpdates();
-      setFirstName(proxy.firstname);
-      setLabel(proxy.label);
-      setLastName(proxy.lastname);
-      setNotes(proxy.notes);
-      setOrcId(proxy.orcid);
-      setOrgName(proxy.orgname);
-      getState().popInhibitUpdates();
+      try {
+        getState().restoreId(this, proxy.id);
+        setFirstName(proxy.firstname);
+        setLabel(proxy.label);
+        setLastName(proxy.lastname);
+        setNotes(proxy.notes);
+        setOrcId(proxy.orcid);
+        setOrgName(proxy.orgname);
+        setGraphPosition(proxy.graphX, proxy.graphY);
+      } finally {
+        getState().popInhibitUpdates();
+      }
     } finally {
       unlock();
     }
@@ -311,34 +402,78 @@ public class Author extends SnowballStateMember {
     private final String orcid;
     private final String orgname;
     private final String label;
+    private final float graphX;
+    private final float graphY;
+    private final int id;
+
+    /* Column types in the binary project format. */
+    static final int[] COLUMNS = {BinaryProject.STRING, BinaryProject.STRING,
+        BinaryProject.STRING, BinaryProject.STRING, BinaryProject.STRING, BinaryProject.STRING,
+        BinaryProject.FLOAT, BinaryProject.FLOAT, BinaryProject.INT};
 
     SerializationProxy(JSONObject json) throws JSONException {
+      id = json.optInt("id", -1);
       firstname = json.getString("firstname");
       lastname = json.getString("lastname");
       notes = json.getString("notes");
       orcid = json.getString("orcid");
       orgname = json.getString("orgname");
       label = json.optString("label", "");
+      graphX = (float)json.optDouble("x", Double.NaN);
+      graphY = (float)json.optDouble("y", Double.NaN);
     }
 
     private SerializationProxy(Author au) {
+      id = au.getId();
       firstname = au.firstname;
       lastname = au.lastname;
       notes = au.getNotes();
       orcid = au.orcid;
       orgname = au.orgname;
       label = au.label;
+      graphX = au.getGraphX();
+      graphY = au.getGraphY();
+    }
+
+    SerializationProxy(BinaryProject.SectionReader in) {
+      firstname = in.getString();
+      lastname = in.getString();
+      notes = in.getString();
+      orcid = in.getString();
+      orgname = in.getString();
+      label = in.getString();
+      graphX = in.getFloat();
+      graphY = in.getFloat();
+      id = in.getInt();
     }
 
     JSONObject toJson() {
       JSONObject json = new JSONObject();
+      json.put("id", id);
       json.put("firstname", firstname);
       json.put("lastname", lastname);
       json.put("notes", notes);
       json.put("orcid", orcid);
       json.put("orgname", orgname);
       json.put("label", label);
+      if (!Float.isNaN(graphX) && !Float.isNaN(graphY)) {
+        json.put("x", graphX);
+        json.put("y", graphY);
+      }
       return json;
     }
+
+    void toBinary(BinaryProject.SectionWriter out) {
+      out.putString(firstname);
+      out.putString(lastname);
+      out.putString(notes);
+      out.putString(orcid);
+      out.putString(orgname);
+      out.putString(label);
+      out.putFloat(graphX);
+      out.putFloat(graphY);
+      out.putInt(id);
+      out.endRow();
+    }
   }
 }
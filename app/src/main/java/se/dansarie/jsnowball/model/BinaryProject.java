@@ -0,0 +1,469 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/* Binary project format. The file starts with a header holding the offset and length of every
+   section. The first section is a table of all strings in the project, each stored once, and the
+   others hold the members of each kind. Members are stored column by column, with one array of
+   32-bit values per field, in which strings are stored as indexes into the string table. Lists of
+   indexes, such as the references of the articles, are stored as an array of start positions
+   followed by the indexes of all rows. All values are little endian and all arrays are aligned, so
+   that the file can be read directly from a memory mapping.
+
+   The members are converted to and from the same proxies as those of the JSON format. */
+class BinaryProject {
+  static final String EXTENSION = ".jsnb";
+
+  /* Column types. */
+  static final int INT = 0;
+  static final int FLOAT = 1;
+  static final int STRING = 2;
+  static final int LIST = 3;
+
+  private static final byte[] MAGIC = "JSNOWBIN".getBytes(StandardCharsets.US_ASCII);
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int ENTRY_SIZE = 24;
+  private static final int CHUNK_ROWS = 4096;
+
+  /* Section identifiers. */
+  private static final int STRINGS = 0;
+  private static final int AUTHORS = 1;
+  private static final int JOURNALS = 2;
+  private static final int TAGS = 3;
+  private static final int ARTICLES = 4;
+  private static final int GRAPHS = 5;
+
+  private static final int[] GRAPH_COLUMNS = {STRING, FLOAT, FLOAT, FLOAT, FLOAT, INT};
+
+  private BinaryProject() {
+  }
+
+  /* Returns true if a file should be saved in the binary format, based on its name. */
+  static boolean isBinaryName(Path file) {
+    return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(EXTENSION);
+  }
+
+  /* Returns true if a file is in the binary format, based on its contents. */
+  static boolean isBinary(Path file) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+    }
+  }
+
+  static void write(SnowballState.SerializationProxy project, WritableByteChannel channel,
+      ProjectWriter progress) throws IOException {
+    StringTable strings = new StringTable();
+    SectionWriter authors = new SectionWriter(strings, Author.SerializationProxy.COLUMNS);
+    for (Author.SerializationProxy proxy : project.authors) {
+      proxy.toBinary(authors);
+      progress.memberWritten();
+    }
+    SectionWriter journals = new SectionWriter(strings, Journal.SerializationProxy.COLUMNS);
+    for (Journal.SerializationProxy proxy : project.journals) {
+      proxy.toBinary(journals);
+      progress.memberWritten();
+    }
+    SectionWriter tags = new SectionWriter(strings, Tag.SerializationProxy.COLUMNS);
+    for (Tag.SerializationProxy proxy : project.tags) {
+      proxy.toBinary(tags);
+      progress.memberWritten();
+    }
+    SectionWriter articles = new SectionWriter(strings, Article.SerializationProxy.COLUMNS);
+    for (Article.SerializationProxy proxy : project.articles) {
+      proxy.toBinary(articles);
+      progress.memberWritten();
+    }
+    SectionWriter graphs = new SectionWriter(strings, GRAPH_COLUMNS);
+    for (Map.Entry<String, GraphSettings> e : project.graphs.entrySet()) {
+      GraphSettings settings = e.getValue();
+      graphs.putString(e.getKey());
+      graphs.putFloat(settings.getKr());
+      graphs.putFloat(settings.getKg());
+      graphs.putFloat(settings.getTau());
+      graphs.putFloat(settings.getTheta());
+      graphs.putInt((settings.isLinlog() ? 1 : 0) | (settings.isStrongGravity() ? 2 : 0)
+          | (settings.isDissuadeHubs() ? 4 : 0) | (settings.isPreventOverlap() ? 8 : 0));
+      graphs.endRow();
+    }
+
+    int[] ids = {STRINGS, AUTHORS, JOURNALS, TAGS, ARTICLES, GRAPHS};
+    ByteBuffer[] sections = {strings.toBuffer(), authors.toBuffer(), journals.toBuffer(),
+        tags.toBuffer(), articles.toBuffer(), graphs.toBuffer()};
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + ENTRY_SIZE * sections.length)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    header.put(MAGIC).putInt(FORMAT_VERSION).putInt(sections.length);
+    long offset = header.capacity();
+    for (int i = 0; i < sections.length; i++) {
+      header.putInt(ids[i]).putInt(0).putLong(offset).putLong(sections[i].remaining());
+      offset += sections[i].remaining();
+    }
+    header.flip();
+    writeFully(channel, header);
+    for (ByteBuffer section : sections) {
+      writeFully(channel, section);
+    }
+  }
+
+  private static void writeFully(WritableByteChannel channel, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      channel.write(buf);
+    }
+  }
+
+  /* Reads a project through a memory mapping of the file. */
+  static SnowballState.SerializationProxy read(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Project file too large.");
+      }
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  static SnowballState.SerializationProxy read(ByteBuffer buf) throws IOException {
+    try {
+      buf = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      byte[] magic = new byte[MAGIC.length];
+      buf.get(magic);
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw new IOException("Not a binary project file.");
+      }
+      int version = buf.getInt(MAGIC.length);
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported project file version: " + version);
+      }
+      int count = buf.getInt(MAGIC.length + 4);
+      Map<Integer, ByteBuffer> sections = new HashMap<>();
+      for (int i = 0; i < count; i++) {
+        int pos = HEADER_SIZE + ENTRY_SIZE * i;
+        long offset = buf.getLong(pos + 8);
+        long length = buf.getLong(pos + 16);
+        if (offset < 0 || length < 0 || offset + length > buf.limit()) {
+          throw new IOException("Invalid section in project file.");
+        }
+        ByteBuffer section = buf.duplicate();
+        section.position((int)offset).limit((int)(offset + length));
+        sections.put(buf.getInt(pos), section.slice().order(ByteOrder.LITTLE_ENDIAN));
+      }
+      String[] strings = readStrings(section(sections, STRINGS));
+
+      /* Rows are read in parallel chunks, each with its own reader. */
+      Author.SerializationProxy[] authors = readRows(new SectionReader(section(sections, AUTHORS),
+          strings, Author.SerializationProxy.COLUMNS), Author.SerializationProxy[]::new,
+          Author.SerializationProxy::new);
+      Journal.SerializationProxy[] journals = readRows(new SectionReader(section(sections,
+          JOURNALS), strings, Journal.SerializationProxy.COLUMNS),
+          Journal.SerializationProxy[]::new, Journal.SerializationProxy::new);
+      Tag.SerializationProxy[] tags = readRows(new SectionReader(section(sections, TAGS),
+          strings, Tag.SerializationProxy.COLUMNS), Tag.SerializationProxy[]::new,
+          Tag.SerializationProxy::new);
+      Article.SerializationProxy[] articles = readRows(new SectionReader(section(sections,
+          ARTICLES), strings, Article.SerializationProxy.COLUMNS),
+          Article.SerializationProxy[]::new, Article.SerializationProxy::new);
+
+      Map<String, GraphSettings> graphs = new HashMap<>();
+      SectionReader in = new SectionReader(section(sections, GRAPHS), strings, GRAPH_COLUMNS);
+      for (int i = 0; i < in.rows(); i++) {
+        in.nextRow();
+        String name = in.getString();
+        float kr = in.getFloat();
+        float kg = in.getFloat();
+        float tau = in.getFloat();
+        float theta = in.getFloat();
+        int flags = in.getInt();
+        graphs.put(name, new GraphSettings(kr, kg, tau, theta, (flags & 1) != 0,
+            (flags & 2) != 0, (flags & 4) != 0, (flags & 8) != 0));
+      }
+      return new SnowballState.SerializationProxy(articles, authors, journals, tags, graphs);
+    } catch (IndexOutOfBoundsException | IllegalArgumentException | BufferUnderflowException
+        | NegativeArraySizeException ex) {
+      throw new IOException("Corrupt project file.", ex);
+    }
+  }
+
+  private static ByteBuffer section(Map<Integer, ByteBuffer> sections, int id)
+      throws IOException {
+    ByteBuffer section = sections.get(id);
+    if (section == null) {
+      throw new IOException("Section " + id + " missing from project file.");
+    }
+    return section;
+  }
+
+  private static <P> P[] readRows(SectionReader in, IntFunction<P[]> newArray,
+      Function<SectionReader, P> proxy) {
+    P[] rows = newArray.apply(in.rows());
+    int chunks = (rows.length + CHUNK_ROWS - 1) / CHUNK_ROWS;
+    IntStream.range(0, chunks).parallel().forEach(chunk -> {
+      SectionReader reader = new SectionReader(in, chunk * CHUNK_ROWS);
+      int end = Math.min(rows.length, (chunk + 1) * CHUNK_ROWS);
+      for (int i = chunk * CHUNK_ROWS; i < end; i++) {
+        rows[i] = proxy.apply(reader.nextRow());
+      }
+    });
+    return rows;
+  }
+
+  private static String[] readStrings(ByteBuffer buf) {
+    int count = buf.getInt(0);
+    int base = 4 * (count + 2);
+    byte[] data = new byte[buf.getInt(4 * (count + 1))];
+    buf.duplicate().position(base).get(data);
+    int[] offsets = new int[count + 1];
+    buf.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(4).asIntBuffer().get(offsets);
+    String[] strings = new String[count];
+    Arrays.parallelSetAll(strings, i -> new String(data, offsets[i], offsets[i + 1] - offsets[i],
+        StandardCharsets.UTF_8));
+    return strings;
+  }
+
+  /* Growable array of 32-bit values. */
+  private static class IntColumn {
+    private int[] values = new int[16];
+    private int size = 0;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void writeTo(ByteBuffer buf) {
+      buf.asIntBuffer().put(values, 0, size);
+      buf.position(buf.position() + 4 * size);
+    }
+  }
+
+  /* Strings of a project, each stored once. */
+  private static class StringTable {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final IntColumn offsets = new IntColumn();
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+    StringTable() {
+      offsets.add(0);
+    }
+
+    int add(String s) {
+      s = Objects.requireNonNullElse(s, "");
+      Integer id = ids.get(s);
+      if (id == null) {
+        id = ids.size();
+        ids.put(s, id);
+        data.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+        offsets.add(data.size());
+      }
+      return id;
+    }
+
+    ByteBuffer toBuffer() {
+      ByteBuffer buf = allocate(4 * (offsets.size() + 1) + data.size());
+      buf.putInt(ids.size());
+      offsets.writeTo(buf);
+      buf.put(data.toByteArray());
+      buf.position(0);
+      return buf;
+    }
+  }
+
+  /* Collects the members of a section row by row. Each row is made up of one value per column,
+     given in column order and ended with endRow. */
+  static class SectionWriter {
+    private final StringTable strings;
+    private final int[] types;
+    private final IntColumn[] values;
+    private final IntColumn[] starts;
+    private int column = 0;
+    private int rows = 0;
+
+    private SectionWriter(StringTable strings, int[] types) {
+      this.strings = strings;
+      this.types = types;
+      values = new IntColumn[types.length];
+      starts = new IntColumn[types.length];
+      for (int c = 0; c < types.length; c++) {
+        values[c] = new IntColumn();
+        if (types[c] == LIST) {
+          starts[c] = new IntColumn();
+          starts[c].add(0);
+        }
+      }
+    }
+
+    void putInt(int value) {
+      next(INT).add(value);
+    }
+
+    void putFloat(float value) {
+      next(FLOAT).add(Float.floatToRawIntBits(value));
+    }
+
+    void putString(String value) {
+      next(STRING).add(strings.add(value));
+    }
+
+    void putList(int[] list) {
+      IntColumn col = next(LIST);
+      for (int value : list) {
+        col.add(value);
+      }
+      starts[column - 1].add(col.size());
+    }
+
+    void endRow() {
+      if (column != types.length) {
+        throw new IllegalStateException("Row ended early.");
+      }
+      column = 0;
+      rows += 1;
+    }
+
+    private IntColumn next(int type) {
+      if (column == types.length || types[column] != type) {
+        throw new IllegalStateException("Wrong column type.");
+      }
+      return values[column++];
+    }
+
+    /* Layout: number of rows and columns, the type and offset of each column, and the columns. */
+    private ByteBuffer toBuffer() {
+      int size = 8 + 8 * types.length;
+      for (int c = 0; c < types.length; c++) {
+        size += 4 * values[c].size() + (starts[c] == null ? 0 : 4 * starts[c].size());
+      }
+      ByteBuffer buf = allocate(size);
+      buf.putInt(rows).putInt(types.length);
+      int offset = 8 + 8 * types.length;
+      for (int c = 0; c < types.length; c++) {
+        buf.putInt(types[c]).putInt(offset);
+        offset += 4 * values[c].size() + (starts[c] == null ? 0 : 4 * starts[c].size());
+      }
+      for (int c = 0; c < types.length; c++) {
+        if (starts[c] != null) {
+          starts[c].writeTo(buf);
+        }
+        values[c].writeTo(buf);
+      }
+      buf.position(0);
+      return buf;
+    }
+  }
+
+  /* Reads the members of a section row by row, in the order they were written. */
+  static class SectionReader {
+    private final ByteBuffer buf;
+    private final String[] strings;
+    private final int rows;
+    private final int[] offsets;
+    private int row = -1;
+    private int column = 0;
+
+    private SectionReader(ByteBuffer buf, String[] strings, int[] types) throws IOException {
+      this.buf = buf;
+      this.strings = strings;
+      rows = buf.getInt(0);
+      if (rows < 0 || buf.getInt(4) != types.length) {
+        throw new IOException("Unsupported section layout in project file.");
+      }
+      offsets = new int[types.length];
+      for (int c = 0; c < types.length; c++) {
+        if (buf.getInt(8 + 8 * c) != types[c]) {
+          throw new IOException("Unsupported section layout in project file.");
+        }
+        offsets[c] = buf.getInt(12 + 8 * c);
+      }
+    }
+
+    /* Creates a reader of the same section that starts at the given row. Readers keep track of the
+       current row, so each thread needs its own. */
+    private SectionReader(SectionReader other, int row) {
+      buf = other.buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      strings = other.strings;
+      rows = other.rows;
+      offsets = other.offsets;
+      this.row = row - 1;
+    }
+
+    private int rows() {
+      return rows;
+    }
+
+    private SectionReader nextRow() {
+      row += 1;
+      column = 0;
+      return this;
+    }
+
+    int getInt() {
+      return buf.getInt(offsets[column++] + 4 * row);
+    }
+
+    float getFloat() {
+      return Float.intBitsToFloat(getInt());
+    }
+
+    String getString() {
+      return strings[getInt()];
+    }
+
+    int[] getList() {
+      int offset = offsets[column++];
+      int start = buf.getInt(offset + 4 * row);
+      int end = buf.getInt(offset + 4 * row + 4);
+      if (start < 0 || end < start) {
+        throw new IndexOutOfBoundsException(start);
+      }
+      int base = offset + 4 * (rows + 1 + start);
+      int[] list = new int[end - start];
+      for (int i = 0; i < list.length; i++) {
+        list[i] = buf.getInt(base + 4 * i);
+      }
+      return list;
+    }
+  }
+
+  /* Allocates a buffer whose size is rounded up to a multiple of eight, so that the next section
+     stays aligned. */
+  private static ByteBuffer allocate(int size) {
+    return ByteBuffer.allocate((size + 7) & ~7).order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
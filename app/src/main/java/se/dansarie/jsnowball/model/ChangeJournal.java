@@ -0,0 +1,548 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.json.JSONObject;
+
+/* Append-only journal of the changes made to a state since its project file was saved. The journal
+   is kept next to the project file and is replayed when the project is opened, so that changes are
+   not lost if the program exits without saving.
+
+   Changed members are collected while the state is modified and written as records once a second,
+   with the file being synced to disk at most every five seconds. Each record holds the complete
+   current contents of one member, in the same form as in a project file, with other members
+   referred to by their identifiers. Replaying a record is therefore the same as restoring the
+   member from a project file, and replaying a record more than once has no further effect. Records
+   are framed by their length and a checksum, so that a record that was only partly written when
+   the program exited is detected and dropped.
+
+   After the state has been saved, the records from before the copy of the state that was saved
+   are dropped from the journal by compact. */
+public class ChangeJournal {
+  private static final byte[] MAGIC = "JSNOWJNL".getBytes(StandardCharsets.US_ASCII);
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 12;
+  private static final int MAX_RECORD_SIZE = 1 << 26;
+  private static final long FLUSH_INTERVAL_MS = 1000;
+  private static final long SYNC_INTERVAL_MS = 5000;
+
+  /* Record types. */
+  private static final byte CHANGED = 1;
+  private static final byte REMOVED = 2;
+  private static final byte TAG_ORDER = 3;
+
+  /* Member kinds. */
+  private static final byte ARTICLE = 0;
+  private static final byte AUTHOR = 1;
+  private static final byte JOURNAL = 2;
+  private static final byte TAG = 3;
+
+  private final SnowballState state;
+  private final Path projectFile;
+  private final Path file;
+  private final ScheduledExecutorService flusher;
+
+  /* Changes that have not been written yet. Modified while holding the state write lock and
+     written while holding the state read lock. */
+  private final Set<SnowballStateMember> changed = new LinkedHashSet<>();
+  private final List<Integer> removed = new ArrayList<>();
+  private boolean tagsReordered = false;
+
+  /* Positions count the bytes of all records written to the journal, including those that have
+     since been dropped from the file by compact. */
+  private volatile long position = 0;
+  private volatile long dropped = 0;
+  private FileChannel channel = null;
+  private boolean unsynced = false;
+  private long lastSync = 0;
+  private int replayed = 0;
+  private volatile IOException failure = null;
+
+  private ChangeJournal(SnowballState state, Path projectFile) {
+    this.state = state;
+    this.projectFile = projectFile.toAbsolutePath().normalize();
+    file = journalFile(this.projectFile);
+    flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread th = new Thread(r, "Change journal");
+      th.setDaemon(true);
+      return th;
+    });
+  }
+
+  /* Returns the path of the journal of a project file. */
+  public static Path journalFile(Path projectFile) {
+    return projectFile.resolveSibling(projectFile.getFileName() + ".journal");
+  }
+
+  /* Returns the path that a journal that could not be replayed is moved to. */
+  public static Path failedJournalFile(Path projectFile) {
+    return projectFile.resolveSibling(projectFile.getFileName() + ".journal.failed");
+  }
+
+  /* Replays the journal of a project file, if there is one, into a state that has just been
+     loaded from the file. Changes to the state are then recorded in the journal. If a record
+     cannot be replayed, the journal is moved to failedJournalFile, so that it is kept when a new
+     journal is started, and IOException is thrown. The state is then only partly replayed and
+     should be loaded again. */
+  public static ChangeJournal open(SnowballState state, Path projectFile) throws IOException {
+    ChangeJournal journal = new ChangeJournal(state, projectFile);
+    try {
+      journal.start();
+    } catch (IOException ex) {
+      journal.flusher.shutdownNow();
+      throw ex;
+    }
+    return journal;
+  }
+
+  private synchronized void start() throws IOException {
+    long valid = HEADER_SIZE;
+    if (Files.exists(file)) {
+      try {
+        valid = replay();
+      } catch (IOException ex) {
+        try {
+          Files.move(file, failedJournalFile(projectFile), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex2) {
+          ex.addSuppressed(ex2);
+        }
+        throw ex;
+      }
+    }
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      if (channel.size() < HEADER_SIZE) {
+        writeFully(channel, header(), 0);
+      }
+      /* Drops a record that was only partly written. */
+      channel.truncate(valid);
+      position = valid - HEADER_SIZE;
+      state.setChangeJournal(this);
+    } catch (IOException ex) {
+      channel.close();
+      throw ex;
+    }
+    flusher.scheduleWithFixedDelay(this::flushInBackground, FLUSH_INTERVAL_MS,
+        FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  public Path getProjectFile() {
+    return projectFile;
+  }
+
+  /* Returns the number of records that were replayed when the journal was opened. */
+  public int getReplayed() {
+    return replayed;
+  }
+
+  /* Returns the size of the journal file in bytes. */
+  public long size() {
+    return HEADER_SIZE + position - dropped;
+  }
+
+  /* Returns the error that stopped the journal from recording changes, or null. */
+  public IOException getFailure() {
+    return failure;
+  }
+
+  /* The following three methods are called by the state while holding its write lock. */
+
+  void memberChanged(SnowballStateMember member) {
+    changed.add(member);
+  }
+
+  void memberRemoved(SnowballStateMember member) {
+    changed.remove(member);
+    removed.add(member.getId());
+  }
+
+  void tagsReordered() {
+    tagsReordered = true;
+  }
+
+  /* Returns the current position in the journal. Called by the state while holding its lock, when
+     a copy of the state is made for saving. */
+  long mark() {
+    return position;
+  }
+
+  /* Writes the changes collected since the last call. */
+  public void flush() throws IOException {
+    state.readLock();
+    try {
+      synchronized (this) {
+        if (channel == null || (changed.isEmpty() && removed.isEmpty() && !tagsReordered)) {
+          return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (SnowballStateMember member : changed) {
+          writeRecord(out, changedRecord(member));
+        }
+        for (int id : removed) {
+          writeRecord(out, ByteBuffer.allocate(5).put(REMOVED).putInt(id).array());
+        }
+        if (tagsReordered) {
+          List<Tag> tags = state.getTags();
+          ByteBuffer buf = ByteBuffer.allocate(5 + 4 * tags.size()).put(TAG_ORDER)
+              .putInt(tags.size());
+          for (Tag tag : tags) {
+            buf.putInt(tag.getId());
+          }
+          writeRecord(out, buf.array());
+        }
+        changed.clear();
+        removed.clear();
+        tagsReordered = false;
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), size());
+        position += bytes.size();
+        unsynced = true;
+      }
+    } finally {
+      state.readUnlock();
+    }
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      if (channel != null && unsynced && now - lastSync >= SYNC_INTERVAL_MS) {
+        channel.force(false);
+        unsynced = false;
+        lastSync = now;
+      }
+    }
+  }
+
+  private void flushInBackground() {
+    try {
+      flush();
+    } catch (IOException ex) {
+      failure = ex;
+      state.setChangeJournal(null);
+      flusher.shutdown();
+    }
+  }
+
+  private static byte[] changedRecord(SnowballStateMember member) {
+    byte kind;
+    JSONObject json;
+    if (member instanceof Article) {
+      kind = ARTICLE;
+      json = ((Article)member).getSerializationProxy(SnowballStateMember::getId).toJson();
+    } else if (member instanceof Author) {
+      kind = AUTHOR;
+      json = ((Author)member).getSerializationProxy().toJson();
+    } else if (member instanceof Journal) {
+      kind = JOURNAL;
+      json = ((Journal)member).getSerializationProxy().toJson();
+    } else if (member instanceof Tag) {
+      kind = TAG;
+      json = ((Tag)member).getSerializationProxy().toJson();
+    } else {
+      throw new IllegalStateException();
+    }
+    byte[] data = json.toString().getBytes(StandardCharsets.UTF_8);
+    return ByteBuffer.allocate(6 + data.length).put(CHANGED).putInt(member.getId()).put(kind)
+        .put(data).array();
+  }
+
+  private static void writeRecord(DataOutputStream out, byte[] record) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    out.writeInt(record.length);
+    out.writeInt((int)crc.getValue());
+    out.write(record);
+  }
+
+  /* Drops the records that are covered by a saved copy of the state. */
+  public void compact(SnowballState.SerializationProxy snapshot) throws IOException {
+    if (snapshot.changeJournal != this) {
+      return;
+    }
+    synchronized (this) {
+      long mark = snapshot.journalMark;
+      if (channel == null || mark <= dropped) {
+        return;
+      }
+      Path tmp = Files.createTempFile(file.getParent(), "." + file.getFileName(), ".tmp");
+      try {
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+          writeFully(out, header(), 0);
+          out.position(HEADER_SIZE);
+          long start = HEADER_SIZE + mark - dropped;
+          long end = size();
+          for (long pos = start; pos < end; ) {
+            pos += channel.transferTo(pos, end - pos, out);
+          }
+          out.force(false);
+        }
+        channel.close();
+        try {
+          Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+          Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        dropped = mark;
+      } finally {
+        Files.deleteIfExists(tmp);
+        if (!channel.isOpen()) {
+          channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+      }
+    }
+  }
+
+  /* Writes all changes and closes the journal, which is kept for replaying. */
+  public void close() throws IOException {
+    flusher.shutdownNow();
+    try {
+      flush();
+    } finally {
+      state.setChangeJournal(null);
+      synchronized (this) {
+        if (channel != null) {
+          channel.force(false);
+          channel.close();
+          channel = null;
+        }
+      }
+    }
+  }
+
+  /* Stops recording changes and deletes the journal. Used when all changes have been saved or when
+     the user has chosen to discard them. */
+  public void discard() throws IOException {
+    flusher.shutdownNow();
+    state.setChangeJournal(null);
+    synchronized (this) {
+      if (channel != null) {
+        channel.close();
+        channel = null;
+      }
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static ByteBuffer header() {
+    return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).putInt(FORMAT_VERSION).flip();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buf, long pos)
+      throws IOException {
+    while (buf.hasRemaining()) {
+      pos += channel.write(buf, pos);
+    }
+  }
+
+  /* Applies the records in the journal file to the state and returns the end position of the last
+     complete record. */
+  private long replay() throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(file)))) {
+      byte[] magic = new byte[MAGIC.length];
+      try {
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+          throw new IOException("Not a change journal: " + file);
+        }
+        if (in.readInt() != FORMAT_VERSION) {
+          throw new IOException("Unsupported change journal version: " + file);
+        }
+      } catch (EOFException ex) {
+        /* The header was not completely written. */
+        return HEADER_SIZE;
+      }
+      long pos = HEADER_SIZE;
+      state.lock();
+      try {
+        state.pushInhibitUpdates();
+        try {
+          Replay replay = new Replay();
+          while (true) {
+            byte[] record;
+            try {
+              int length = in.readInt();
+              int checksum = in.readInt();
+              if (length < 1 || length > MAX_RECORD_SIZE) {
+                break;
+              }
+              record = new byte[length];
+              in.readFully(record);
+              CRC32 crc = new CRC32();
+              crc.update(record);
+              if ((int)crc.getValue() != checksum) {
+                break;
+              }
+            } catch (EOFException ex) {
+              break;
+            }
+            try {
+              replay.apply(record);
+            } catch (RuntimeException ex) {
+              throw new IOException("Invalid record in change journal: " + file, ex);
+            }
+            pos += 8 + record.length;
+            replayed += 1;
+          }
+          replay.finish();
+        } finally {
+          state.popInhibitUpdates();
+        }
+      } finally {
+        state.unlock();
+      }
+      return pos;
+    }
+  }
+
+  /* Applies records to the state. Members that are referred to before the record that creates them
+     are created in advance, and are removed at the end if no such record is found. */
+  private class Replay {
+    private final Map<Integer, SnowballStateMember> members = new HashMap<>();
+    private final Set<SnowballStateMember> placeholders = new HashSet<>();
+
+    Replay() {
+      for (SnowballStateMember member : state.getArticles()) {
+        members.put(member.getId(), member);
+      }
+      for (SnowballStateMember member : state.getAuthors()) {
+        members.put(member.getId(), member);
+      }
+      for (SnowballStateMember member : state.getJournals()) {
+        members.put(member.getId(), member);
+      }
+      for (SnowballStateMember member : state.getTags()) {
+        members.put(member.getId(), member);
+      }
+    }
+
+    private <E extends SnowballStateMember> E get(int id, Class<E> cls, Supplier<E> factory) {
+      SnowballStateMember member = members.get(id);
+      if (member == null) {
+        E created = factory.get();
+        state.restoreId(created, id);
+        members.put(id, created);
+        placeholders.add(created);
+        return created;
+      }
+      if (!cls.isInstance(member)) {
+        throw new IllegalStateException("Member " + id + " has the wrong type.");
+      }
+      return cls.cast(member);
+    }
+
+    private Article article(int id) {
+      return get(id, Article.class, () -> new Article(state));
+    }
+
+    private Author author(int id) {
+      return get(id, Author.class, () -> new Author(state));
+    }
+
+    private Journal journal(int id) {
+      return get(id, Journal.class, () -> new Journal(state));
+    }
+
+    private Tag tag(int id) {
+      return get(id, Tag.class, () -> new Tag(state));
+    }
+
+    void apply(byte[] record) {
+      ByteBuffer buf = ByteBuffer.wrap(record);
+      byte type = buf.get();
+      if (type == CHANGED) {
+        int id = buf.getInt();
+        byte kind = buf.get();
+        JSONObject json = new JSONObject(new String(record, buf.position(), buf.remaining(),
+            StandardCharsets.UTF_8));
+        switch (kind) {
+          case ARTICLE:
+            Article art = article(id);
+            if (!placeholders.remove(art)) {
+              art.clearRelations();
+            }
+            art.restoreFromProxy(new Article.SerializationProxy(json), this::article,
+                this::author, this::journal, this::tag);
+            break;
+          case AUTHOR:
+            Author au = author(id);
+            placeholders.remove(au);
+            au.restoreFromProxy(new Author.SerializationProxy(json));
+            break;
+          case JOURNAL:
+            Journal jo = journal(id);
+            placeholders.remove(jo);
+            jo.restoreFromProxy(new Journal.SerializationProxy(json));
+            break;
+          case TAG:
+            Tag tag = tag(id);
+            placeholders.remove(tag);
+            tag.restoreFromProxy(new Tag.SerializationProxy(json));
+            break;
+          default:
+            throw new IllegalStateException("Unknown member kind: " + kind);
+        }
+      } else if (type == REMOVED) {
+        SnowballStateMember member = members.remove(buf.getInt());
+        if (member != null) {
+          placeholders.remove(member);
+          member.remove();
+        }
+      } else if (type == TAG_ORDER) {
+        int[] ids = new int[buf.getInt()];
+        for (int i = 0; i < ids.length; i++) {
+          ids[i] = buf.getInt();
+        }
+        state.reorderTags(ids);
+      } else {
+        throw new IllegalStateException("Unknown record type: " + type);
+      }
+    }
+
+    void finish() {
+      for (SnowballStateMember member : placeholders) {
+        member.remove();
+      }
+    }
+  }
+}
@@ -14,11 +14,15 @@
 
 package se.dansarie.jsnowball.model;
 
-import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -26,6 +30,12 @@ import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -162,64 +172,117 @@ public class CrossRef {
     return sb.toString();
   }
 
-  private static int rate_limit = -1;
-  private static int rate_limit_interval = -1;
-  private static List<Long> previousRequests = new ArrayList<>();
-
-  public synchronized static CrossRef getDoi(String doi) throws IOException {
-    if (rate_limit > 0 && rate_limit_interval > 0) {
-      long timenow = System.nanoTime();
-      previousRequests.removeIf(t -> (timenow - t) > rate_limit_interval * 1000000000L);
-      if (previousRequests.size() >= rate_limit) {
-        long sleeptime = rate_limit_interval * 1000000000L +
-            previousRequests.get(previousRequests.size() - rate_limit) - timenow;
-        try {
-          Thread.sleep(sleeptime / 1000000L, (int)(sleeptime % 1000000L));
-        } catch (InterruptedException ex) {
-          LogWindow.getInstance().addThrowable(ex);
-        }
-        return getDoi(doi);
+  private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+  private static final RateLimiter rateLimiter = new RateLimiter();
+  private static final HttpClient client = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .connectTimeout(Duration.ofSeconds(30))
+      .build();
+  private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS, 30, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(), r -> {
+        Thread th = new Thread(r, "CrossRef");
+        th.setDaemon(true);
+        return th;
+      });
+
+  static {
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /* Sets the number of requests that may be in flight at the same time. Requests are also limited
+     by the rate limit reported by the CrossRef API. */
+  public static synchronized void setMaxConcurrentRequests(int max) {
+    if (max < 1) {
+      throw new IllegalArgumentException("At least one concurrent request is required.");
+    }
+    if (max > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(max);
+      executor.setCorePoolSize(max);
+    } else {
+      executor.setCorePoolSize(max);
+      executor.setMaximumPoolSize(max);
+    }
+  }
+
+  public static CrossRef getDoi(String doi) throws IOException {
+    try {
+      return getDoiAsync(doi).join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException)ex.getCause();
+      }
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException)ex.getCause();
+      }
+      throw ex;
+    }
+  }
+
+  /* Retrieves the metadata for a DOI in the background. Requests are queued and sent at the rate
+     allowed by the CrossRef API, over a shared connection. */
+  public static CompletableFuture<CrossRef> getDoiAsync(String doi) {
+    ResponseCache cache = ResponseCache.getInstance();
+    String cached = cache.get(ResponseCache.doiKey(doi));
+    if (cached != null) {
+      try {
+        return CompletableFuture.completedFuture(parse(cached));
+      } catch (DateTimeParseException | JSONException ex) {
+        return CompletableFuture.failedFuture(ex);
       }
     }
-    previousRequests.add(System.nanoTime());
+    if (cache.isOffline()) {
+      return CompletableFuture.failedFuture(new IOException("Offline mode: " + doi
+          + " is not in the cache."));
+    }
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return fetch(doi);
+      } catch (IOException ex) {
+        throw new CompletionException(ex);
+      }
+    }, executor);
+  }
 
-    InputStream stream = null;
+  private static CrossRef fetch(String doi) throws IOException {
     String jsondata = null;
     try {
-      URL url = new URL("https://api.crossref.org/works/" + doi);
-      URLConnection connection = url.openConnection();
-      connection.setRequestProperty("User-Agent", "JSnowball; (mailto:marcus@dansarie.se)");
-      stream = (InputStream)connection.getContent();
-      jsondata = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
-      String limitstr = connection.getHeaderField("X-Rate-Limit-Limit");
-      String intervalstr = connection.getHeaderField("X-Rate-Limit-Interval");
-      if (limitstr != null && intervalstr != null) {
-        intervalstr = intervalstr.trim();
-        intervalstr = intervalstr.substring(0, intervalstr.length() - 1);
-        try {
-          int limit = Integer.parseInt(limitstr);
-          int interval = Integer.parseInt(intervalstr);
-          if (limit > 0 && interval > 0) {
-            rate_limit = limit;
-            rate_limit_interval = interval;
-          }
-        } catch (NumberFormatException ex) {
-          LogWindow.getInstance().addThrowable(ex);
-        }
+      rateLimiter.acquire();
+      HttpRequest request = HttpRequest.newBuilder(
+          new URI("https", "api.crossref.org", "/works/" + doi, null))
+          .header("User-Agent", "JSnowball; (mailto:marcus@dansarie.se)")
+          .timeout(Duration.ofSeconds(60))
+          .GET()
+          .build();
+      HttpResponse<String> response = client.send(request,
+          HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+      updateRateLimit(response);
+      if (response.statusCode() != 200) {
+        throw new IOException("CrossRef returned HTTP status " + response.statusCode() + " for "
+            + doi + ".");
       }
+      jsondata = response.body();
+    } catch (URISyntaxException ex) {
+      IOException ioex = new IOException("Invalid DOI: " + doi, ex);
+      LogWindow.getInstance().addThrowable(ioex);
+      throw ioex;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      IOException ioex = new InterruptedIOException("Interrupted while retrieving " + doi + ".");
+      LogWindow.getInstance().addThrowable(ioex);
+      throw ioex;
     } catch (IOException ex) {
       LogWindow.getInstance().addThrowable(ex);
       throw ex;
-    } finally {
-      if (stream != null) {
-        try {
-          stream.close();
-        } catch (IOException ex) {
-          LogWindow.getInstance().addThrowable(ex);
-        }
-      }
     }
 
+    CrossRef cr = parse(jsondata);
+    ResponseCache.getInstance().put(ResponseCache.doiKey(doi), jsondata);
+    return cr;
+  }
+
+  static CrossRef parse(String jsondata) throws DateTimeParseException, JSONException {
     try {
       JSONObject json = new JSONObject(jsondata);
       if (!json.getString("status").equals("ok")) {
@@ -235,61 +298,81 @@ public class CrossRef {
     }
   }
 
-  public synchronized static void addCrossRefReference(Article art, CrossRef.Reference ref)
-      throws IOException {
-    SnowballState state = art.getState();
-    state.pushInhibitUpdates();
-    Article a = null;
-    if (ref.doi != null) {
-      a = Article.getByDoi(state, ref.doi);
-    }
-    if (a == null && ref.title != null) {
-      a = Article.getByTitle(state, ref.title);
+  private static void updateRateLimit(HttpResponse<?> response) {
+    String limitstr = response.headers().firstValue("X-Rate-Limit-Limit").orElse(null);
+    String intervalstr = response.headers().firstValue("X-Rate-Limit-Interval").orElse(null);
+    if (limitstr == null || intervalstr == null) {
+      return;
     }
-    if (a == null && ref.doi != null) {
-      CrossRef cr = getDoi(ref.doi);
-      a = new Article(art.getState(), cr);
-    } else if (a == null && ref.title != null) {
-      a = new Article(art.getState());
-      a.setTitle(ref.title);
-      a.setIssue(ref.issue);
-      a.setPages(ref.page);
-      a.setVolume(ref.volume);
-      a.setYear(ref.year);
-
-      Journal j = null;
-      if (ref.issn != null) {
-        j = Journal.getByIssn(state, ref.issn);
+    intervalstr = intervalstr.trim();
+    intervalstr = intervalstr.substring(0, intervalstr.length() - 1);
+    try {
+      int limit = Integer.parseInt(limitstr.trim());
+      int interval = Integer.parseInt(intervalstr);
+      if (limit > 0 && interval > 0) {
+        rateLimiter.setRate(limit, interval, TimeUnit.SECONDS);
       }
-      if (j == null && ref.journal != null) {
-        j = Journal.getByName(state, ref.journal);
-        if (j == null) {
-          j = new Journal(state);
-          j.setName(ref.journal);
-          if (ref.issn != null) {
-            j.setIssn(ref.issn);
-          }
-        }
+    } catch (NumberFormatException ex) {
+      LogWindow.getInstance().addThrowable(ex);
+    }
+  }
+
+  public static void addCrossRefReference(Article art, CrossRef.Reference ref)
+      throws IOException {
+    ReferenceImporter importer = new ReferenceImporter(art, List.of(ref));
+    try {
+      importer.run();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    for (Throwable ex : importer.getErrors()) {
+      if (ex instanceof IOException) {
+        throw (IOException)ex;
       }
-      if (j != null) {
-        a.setJournal(j);
+      if (ex instanceof RuntimeException) {
+        throw (RuntimeException)ex;
       }
+    }
+  }
+
+  /* Creates an article from the metadata in a reference, for references that lack a DOI. */
+  static Article createArticle(SnowballState state, CrossRef.Reference ref) {
+    Article a = new Article(state);
+    a.setTitle(ref.title);
+    a.setIssue(ref.issue);
+    a.setPages(ref.page);
+    a.setVolume(ref.volume);
+    a.setYear(ref.year);
 
-      if (ref.author != null) {
-        se.dansarie.jsnowball.model.Author au =
-            se.dansarie.jsnowball.model.Author.getByName(state, "", ref.author);
-        if (au == null) {
-          au = new se.dansarie.jsnowball.model.Author(state);
-          au.setLastName(ref.author);
+    Journal j = null;
+    if (ref.issn != null) {
+      j = Journal.getByIssn(state, ref.issn);
+    }
+    if (j == null && ref.journal != null) {
+      j = Journal.getByName(state, ref.journal);
+      if (j == null) {
+        j = new Journal(state);
+        j.setName(ref.journal);
+        if (ref.issn != null) {
+          j.setIssn(ref.issn);
         }
-        a.addAuthor(au);
       }
     }
+    if (j != null) {
+      a.setJournal(j);
+    }
 
-    if (a != null) {
-      art.addReference(a);
+    if (ref.author != null) {
+      se.dansarie.jsnowball.model.Author au =
+          se.dansarie.jsnowball.model.Author.getByName(state, "", ref.author);
+      if (au == null) {
+        au = new se.dansarie.jsnowball.model.Author(state);
+        au.setLastName(ref.author);
+      }
+      a.addAuthor(au);
     }
-    state.popInhibitUpdates();
+    return a;
   }
 
   public static class Author {
@@ -316,7 +399,7 @@ public class CrossRef {
     public final String volume;
     public final String year;
 
-    private Reference(JSONObject r) throws JSONException {
+    Reference(JSONObject r) throws JSONException {
       author = r.optString("author", null);
       doi = r.optString("DOI", null);
       issn = r.optString("ISSN", null);
@@ -0,0 +1,98 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/* Layout settings of a graph, stored with the project. */
+public class GraphSettings {
+  private final float kr;
+  private final float kg;
+  private final float tau;
+  private final float theta;
+  private final boolean linlog;
+  private final boolean strongGravity;
+  private final boolean dissuadeHubs;
+  private final boolean preventOverlap;
+
+  public GraphSettings(float kr, float kg, float tau, float theta, boolean linlog,
+      boolean strongGravity, boolean dissuadeHubs, boolean preventOverlap) {
+    this.kr = kr;
+    this.kg = kg;
+    this.tau = tau;
+    this.theta = theta;
+    this.linlog = linlog;
+    this.strongGravity = strongGravity;
+    this.dissuadeHubs = dissuadeHubs;
+    this.preventOverlap = preventOverlap;
+  }
+
+  GraphSettings(JSONObject json) throws JSONException {
+    kr = (float)json.getDouble("kr");
+    kg = (float)json.getDouble("kg");
+    tau = (float)json.getDouble("tau");
+    theta = (float)json.getDouble("theta");
+    linlog = json.optBoolean("linlog", false);
+    strongGravity = json.optBoolean("stronggravity", false);
+    dissuadeHubs = json.optBoolean("dissuadehubs", false);
+    preventOverlap = json.optBoolean("preventoverlap", false);
+  }
+
+  public float getKr() {
+    return kr;
+  }
+
+  public float getKg() {
+    return kg;
+  }
+
+  public float getTau() {
+    return tau;
+  }
+
+  public float getTheta() {
+    return theta;
+  }
+
+  public boolean isLinlog() {
+    return linlog;
+  }
+
+  public boolean isStrongGravity() {
+    return strongGravity;
+  }
+
+  public boolean isDissuadeHubs() {
+    return dissuadeHubs;
+  }
+
+  public boolean isPreventOverlap() {
+    return preventOverlap;
+  }
+
+  JSONObject toJson() {
+    JSONObject json = new JSONObject();
+    json.put("kr", kr);
+    json.put("kg", kg);
+    json.put("tau", tau);
+    json.put("theta", theta);
+    json.put("linlog", linlog);
+    json.put("stronggravity", strongGravity);
+    json.put("dissuadehubs", dissuadeHubs);
+    json.put("preventoverlap", preventOverlap);
+    return json;
+  }
+}
@@ -21,29 +21,88 @@ import org.json.JSONObject;
 public class Journal extends SnowballStateMember {
   private String name = "";
   private String issn = "";
+  private int articleCount = 0;
+  private int referenceCount = 0;
 
   public Journal(SnowballState state) {
     super(state);
+    addToState();
   }
 
-  public String getIssn() {
+  /* Restores a journal that is loaded together with the rest of the state. */
+  Journal(SnowballState state, SerializationProxy proxy) {
+    super(state, proxy.id, proxy.notes, Float.NaN, Float.NaN);
+    issn = Objects.requireNonNullElse(proxy.issn, "");
+    name = Objects.requireNonNullElse(proxy.name, "");
+  }
+
+  void addArticle(Article art) {
     lock();
     try {
-      return issn;
+      articleCount += 1;
+      referenceCount += art.getReferencesTo().size();
     } finally {
       unlock();
     }
   }
 
-  public String getName() {
+  /* Adds an article while the state is being loaded. The reference count is updated when loading
+     is finished. */
+  void addLoadedArticle() {
     lock();
     try {
-      return name;
+      articleCount += 1;
     } finally {
       unlock();
     }
   }
 
+  void addReferenceCount(int delta) {
+    lock();
+    try {
+      referenceCount += delta;
+    } finally {
+      unlock();
+    }
+  }
+
+  public int getArticleCount() {
+    readLock();
+    try {
+      return articleCount;
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Returns the total number of references to the articles published in this journal. */
+  public int getReferenceCount() {
+    readLock();
+    try {
+      return referenceCount;
+    } finally {
+      readUnlock();
+    }
+  }
+
+  public String getIssn() {
+    readLock();
+    try {
+      return issn;
+    } finally {
+      readUnlock();
+    }
+  }
+
+  public String getName() {
+    readLock();
+    try {
+      return name;
+    } finally {
+      readUnlock();
+    }
+  }
+
   public void merge(Journal merged) {
     lock();
     try {
@@ -68,7 +127,12 @@ public class Journal extends SnowballStateMember {
   public void setName(String name) {
     lock();
     try {
+      SnowballState state = getState();
+      boolean indexed = state.unindexMember(this);
       this.name = Objects.requireNonNullElse(name, "");
+      if (indexed) {
+        state.indexMember(this);
+      }
       fireUpdated();
     } finally {
       unlock();
@@ -78,7 +142,12 @@ public class Journal extends SnowballStateMember {
   public void setIssn(String issn) {
     lock();
     try {
+      SnowballState state = getState();
+      boolean indexed = state.unindexMember(this);
       this.issn = Objects.requireNonNullElse(issn, "");
+      if (indexed) {
+        state.indexMember(this);
+      }
       fireUpdated();
     } finally {
       unlock();
@@ -87,7 +156,7 @@ public class Journal extends SnowballStateMember {
 
   @Override
   public int compareTo(SnowballStateMember other) {
-    lock();
+    readLock();
     try {
       Journal o = (Journal)other;
       if (getName() == null) {
@@ -100,6 +169,16 @@ public class Journal extends SnowballStateMember {
         return 1;
       }
       return getName().compareToIgnoreCase(o.getName());
+    } finally {
+      readUnlock();
+    }
+  }
+
+  void removeArticle(Article art) {
+    lock();
+    try {
+      articleCount -= 1;
+      referenceCount -= art.getReferencesTo().size();
     } finally {
       unlock();
     }
@@ -122,38 +201,28 @@ public class Journal extends SnowballStateMember {
 
   @Override
   public String toString() {
-    lock();
+    readLock();
     try {
       return getName();
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public static Journal getByIssn(SnowballState state, String issn) {
-    for (Journal jo : state.getJournals()) {
-      if (jo.getIssn().equals(issn)) {
-        return jo;
-      }
-    }
-    return null;
+    return state.getJournalByIssn(issn);
   }
 
   public static Journal getByName(SnowballState state, String name) {
-    for (Journal jo : state.getJournals()) {
-      if (jo.getName().equals(name)) {
-        return jo;
-      }
-    }
-    return null;
+    return state.getJournalByName(name);
   }
 
   SerializationProxy getSerializationProxy() {
-    lock();
+    readLock();
     try {
       return new SerializationProxy(this);
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
@@ -161,10 +230,14 @@ public class Journal extends SnowballStateMember {
     lock();
     try {
       getState().pushInhibitUpdates();
-      setIssn(proxy.issn);
-      setName(proxy.name);
-      setNotes(proxy.notes);
-      getState().popInhibitUpdates();
+      try {
+        getState().restoreId(this, proxy.id);
+        setIssn(proxy.issn);
+        setName(proxy.name);
+        setNotes(proxy.notes);
+      } finally {
+        getState().popInhibitUpdates();
+      }
     } finally {
       unlock();
     }
@@ -174,25 +247,48 @@ public class Journal extends SnowballStateMember {
     private final String issn;
     private final String name;
     private final String notes;
+    private final int id;
+
+    /* Column types in the binary project format. */
+    static final int[] COLUMNS = {BinaryProject.STRING, BinaryProject.STRING,
+        BinaryProject.STRING, BinaryProject.INT};
 
     SerializationProxy(JSONObject json) {
+      id = json.optInt("id", -1);
       issn = json.getString("issn");
       name = json.getString("name");
       notes = json.getString("notes");
     }
 
     private SerializationProxy(Journal jo) {
+      id = jo.getId();
       issn = jo.issn;
       name = jo.name;
       notes = jo.getNotes();
     }
 
+    SerializationProxy(BinaryProject.SectionReader in) {
+      issn = in.getString();
+      name = in.getString();
+      notes = in.getString();
+      id = in.getInt();
+    }
+
     JSONObject toJson() {
       JSONObject json = new JSONObject();
+      json.put("id", id);
       json.put("issn", issn);
       json.put("name", name);
       json.put("notes", notes);
       return json;
     }
+
+    void toBinary(BinaryProject.SectionWriter out) {
+      out.putString(issn);
+      out.putString(name);
+      out.putString(notes);
+      out.putInt(id);
+      out.endRow();
+    }
   }
 }
@@ -0,0 +1,55 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/* Hash index from a normalized key to the state members that currently have that key. Several
+   members may share a key, in which case lookups return the one that was indexed first. */
+class MemberIndex<E extends SnowballStateMember> {
+  private Map<String, Set<E>> map = new HashMap<>();
+
+  void add(String key, E member) {
+    map.computeIfAbsent(Objects.requireNonNull(key), k -> new LinkedHashSet<>())
+        .add(Objects.requireNonNull(member));
+  }
+
+  boolean remove(String key, E member) {
+    Set<E> members = map.get(key);
+    if (members == null || !members.remove(member)) {
+      return false;
+    }
+    if (members.isEmpty()) {
+      map.remove(key);
+    }
+    return true;
+  }
+
+  E get(String key) {
+    Set<E> members = map.get(key);
+    if (members == null) {
+      return null;
+    }
+    return members.iterator().next();
+  }
+
+  void clear() {
+    map.clear();
+  }
+}
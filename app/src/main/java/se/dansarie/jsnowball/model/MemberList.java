@@ -0,0 +1,151 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/* List of state members that caches an immutable copy of its contents. The copy is dropped on every
+   modification and rebuilt on the next call to snapshot(), so that repeated reads of an unchanged
+   list share the same copy. The list itself must only be modified while holding the state write
+   lock, and snapshot() must be called with at least the read lock held. peekSnapshot() may be
+   called without holding any lock. Modifications through iterators or sub lists are not
+   tracked. */
+class MemberList<E extends Comparable<? super E>> extends ArrayList<E> {
+  private volatile List<E> snapshot = Collections.emptyList();
+
+  List<E> peekSnapshot() {
+    return snapshot;
+  }
+
+  List<E> snapshot() {
+    List<E> ret = snapshot;
+    if (ret == null) {
+      ret = Collections.unmodifiableList(new ArrayList<>(this));
+      snapshot = ret;
+    }
+    return ret;
+  }
+
+  /* Inserts an element at its sorted position and returns the index it was inserted at. The rest
+     of the list is assumed to be sorted. */
+  int insertSorted(E e) {
+    int idx = Collections.binarySearch(this, e);
+    if (idx < 0) {
+      idx = -idx - 1;
+    }
+    add(idx, e);
+    return idx;
+  }
+
+  /* Moves the element at idx to its sorted position if it is out of order with its neighbors,
+     which happens when its sort key has been changed. Returns the new index of the element. */
+  int resort(int idx) {
+    E e = get(idx);
+    if ((idx == 0 || get(idx - 1).compareTo(e) <= 0)
+        && (idx == size() - 1 || e.compareTo(get(idx + 1)) <= 0)) {
+      return idx;
+    }
+    remove(idx);
+    return insertSorted(e);
+  }
+
+  private void invalidate() {
+    snapshot = null;
+  }
+
+  @Override
+  public boolean add(E e) {
+    invalidate();
+    return super.add(e);
+  }
+
+  @Override
+  public void add(int idx, E e) {
+    invalidate();
+    super.add(idx, e);
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends E> c) {
+    invalidate();
+    return super.addAll(c);
+  }
+
+  @Override
+  public boolean addAll(int idx, Collection<? extends E> c) {
+    invalidate();
+    return super.addAll(idx, c);
+  }
+
+  @Override
+  public void clear() {
+    invalidate();
+    super.clear();
+  }
+
+  @Override
+  public E remove(int idx) {
+    invalidate();
+    return super.remove(idx);
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    invalidate();
+    return super.remove(o);
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    invalidate();
+    return super.removeAll(c);
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super E> filter) {
+    invalidate();
+    return super.removeIf(filter);
+  }
+
+  @Override
+  public void replaceAll(UnaryOperator<E> operator) {
+    invalidate();
+    super.replaceAll(operator);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    invalidate();
+    return super.retainAll(c);
+  }
+
+  @Override
+  public E set(int idx, E e) {
+    invalidate();
+    return super.set(idx, e);
+  }
+
+  @Override
+  public void sort(Comparator<? super E> c) {
+    invalidate();
+    super.sort(c);
+  }
+}
@@ -0,0 +1,151 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/* Reads a version 1.0 project file into a copy of a state, one member at a time. The tokenizer
+   reads the file through a fixed size buffer, and only the JSON object of the member being read is
+   held in memory before it is converted to a proxy. The top level keys may come in any order. The
+   state is then built from the proxies in one pass.
+
+   Members are not restored as they are read. The proxies are kept until the whole file has been
+   read so that the state can be built on several threads, which is done the same way for all
+   project formats. The members take over the strings of their proxies rather than copying them,
+   so what is held twice while the state is built is the proxies and their index arrays, not the
+   text of the project. */
+class ProjectReader {
+  private final JSONTokener tokener;
+  private final List<Article.SerializationProxy> articles = new ArrayList<>();
+  private final List<Author.SerializationProxy> authors = new ArrayList<>();
+  private final List<Journal.SerializationProxy> journals = new ArrayList<>();
+  private final List<Tag.SerializationProxy> tags = new ArrayList<>();
+  private final Map<String, GraphSettings> graphs = new HashMap<>();
+  private final Set<String> seen = new HashSet<>();
+  private String version = null;
+
+  ProjectReader(Reader reader) {
+    tokener = new JSONTokener(reader);
+  }
+
+  /* Reads the project. Indexes of members are not checked until the state is built. */
+  SnowballState.SerializationProxy read() throws JSONException {
+    expect('{');
+    if (tokener.nextClean() != '}') {
+      tokener.back();
+      do {
+        Object key = tokener.nextValue();
+        if (!(key instanceof String)) {
+          throw tokener.syntaxError("Expected a key");
+        }
+        expect(':');
+        readValue((String)key);
+      } while (nextSeparator('}'));
+    }
+    if (version == null) {
+      throw new JSONException("Project version missing.");
+    }
+    if (!seen.containsAll(List.of("articles", "authors", "journals", "tags"))) {
+      throw new JSONException("Project members missing.");
+    }
+    return new SnowballState.SerializationProxy(
+        articles.toArray(new Article.SerializationProxy[0]),
+        authors.toArray(new Author.SerializationProxy[0]),
+        journals.toArray(new Journal.SerializationProxy[0]),
+        tags.toArray(new Tag.SerializationProxy[0]), graphs);
+  }
+
+  private void readValue(String key) throws JSONException {
+    switch (key) {
+      case "version":
+        version = tokener.nextValue().toString();
+        if (!version.equals("1.0")) {
+          throw new JSONException("Unsupported project version: " + version);
+        }
+        break;
+      case "articles":
+        readArray(key, json -> articles.add(new Article.SerializationProxy(json)));
+        break;
+      case "authors":
+        readArray(key, json -> authors.add(new Author.SerializationProxy(json)));
+        break;
+      case "journals":
+        readArray(key, json -> journals.add(new Journal.SerializationProxy(json)));
+        break;
+      case "tags":
+        readArray(key, json -> tags.add(new Tag.SerializationProxy(json)));
+        break;
+      case "graphs":
+        JSONObject obj = nextObject();
+        for (String name : obj.keySet()) {
+          graphs.put(name, new GraphSettings(obj.getJSONObject(name)));
+        }
+        break;
+      default:
+        tokener.nextValue();
+    }
+  }
+
+  /* Reads an array of objects and passes each one to the action as soon as it has been read. */
+  private void readArray(String name, Consumer<JSONObject> action) throws JSONException {
+    if (!seen.add(name)) {
+      throw tokener.syntaxError("Duplicate " + name + " array");
+    }
+    expect('[');
+    if (tokener.nextClean() != ']') {
+      tokener.back();
+      do {
+        action.accept(nextObject());
+      } while (nextSeparator(']'));
+    }
+  }
+
+  private JSONObject nextObject() throws JSONException {
+    Object value = tokener.nextValue();
+    if (!(value instanceof JSONObject)) {
+      throw tokener.syntaxError("Expected an object");
+    }
+    return (JSONObject)value;
+  }
+
+  /* Reads the separator after a value and returns true if another value follows. */
+  private boolean nextSeparator(char end) throws JSONException {
+    char ch = tokener.nextClean();
+    if (ch == ',') {
+      return true;
+    }
+    if (ch != end) {
+      throw tokener.syntaxError("Expected ',' or '" + end + "'");
+    }
+    return false;
+  }
+
+  private void expect(char expected) throws JSONException {
+    if (tokener.nextClean() != expected) {
+      throw tokener.syntaxError("Expected '" + expected + "'");
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/* Writes a project snapshot as JSON one member at a time, so that only the JSON object of the
+   member being written is built in memory. Authors, journals and tags are written before the
+   articles that refer to them, which lets the project be read back in a single pass. */
+public class ProjectWriter {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int REPORT_INTERVAL = 1024;
+
+  private final SnowballState.SerializationProxy project;
+  private final int total;
+  private ProgressListener listener = null;
+  private volatile boolean cancelled = false;
+  private int done = 0;
+
+  /* Receives progress reports from the thread that writes the project. */
+  public interface ProgressListener {
+    void progress(int done, int total);
+  }
+
+  public ProjectWriter(SnowballState.SerializationProxy project) {
+    this.project = Objects.requireNonNull(project);
+    total = project.articles.length + project.authors.length + project.journals.length
+        + project.tags.length;
+  }
+
+  public void setProgressListener(ProgressListener listener) {
+    this.listener = listener;
+  }
+
+  /* Stops a write in progress, which then throws InterruptedIOException. A file being saved is
+     left unchanged. */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /* Writes the project to a file, in the binary format if the file name ends with .jsnb and as JSON
+     otherwise. The project is first written to a temporary file in the same directory, which then
+     replaces the file, so that the file is never left partially written. The temporary file is
+     created with the default permissions, or with those of the file if it already exists. */
+  public void save(Path file) throws IOException {
+    file = file.toAbsolutePath();
+    Path tmp = file.resolveSibling("." + file.getFileName() + ".tmp");
+    Files.deleteIfExists(tmp);
+    Files.createFile(tmp);
+    try {
+      if (Files.exists(file)) {
+        try {
+          Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(file));
+        } catch (UnsupportedOperationException ex) {
+          /* Not a POSIX file system. */
+        }
+      }
+      try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        if (BinaryProject.isBinaryName(file)) {
+          done = 0;
+          BinaryProject.write(project, channel, this);
+          report();
+        } else {
+          Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8),
+              BUFFER_SIZE);
+          write(out);
+          out.flush();
+        }
+        channel.force(true);
+      }
+      try {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /* Writes the project to a writer, which is neither flushed nor closed. The layout is the same as
+     that of JSONObject.toString(2). */
+  public void write(Writer out) throws IOException {
+    done = 0;
+    try {
+      out.write("{\n  \"version\": \"1.0\"");
+      writeArray(out, "authors", project.authors, Author.SerializationProxy::toJson);
+      writeArray(out, "journals", project.journals, Journal.SerializationProxy::toJson);
+      writeArray(out, "tags", project.tags, Tag.SerializationProxy::toJson);
+      writeArray(out, "articles", project.articles, Article.SerializationProxy::toJson);
+      JSONObject graphs = new JSONObject();
+      for (Map.Entry<String, GraphSettings> e : project.graphs.entrySet()) {
+        graphs.put(e.getKey(), e.getValue().toJson());
+      }
+      out.write(",\n  \"graphs\": ");
+      graphs.write(out, 2, 2);
+      out.write("\n}");
+    } catch (JSONException ex) {
+      /* JSONObject.write wraps errors from the writer. */
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException)ex.getCause();
+      }
+      throw ex;
+    }
+    report();
+  }
+
+  private <T> void writeArray(Writer out, String key, T[] members, Function<T, JSONObject> toJson)
+      throws IOException {
+    out.write(",\n  ");
+    out.write(JSONObject.quote(key));
+    out.write(": [");
+    for (int i = 0; i < members.length; i++) {
+      out.write(i == 0 ? "\n    " : ",\n    ");
+      toJson.apply(members[i]).write(out, 2, 4);
+      memberWritten();
+    }
+    if (members.length > 0) {
+      out.write("\n  ");
+    }
+    out.write(']');
+  }
+
+  /* Counts a written member, reports progress and stops the write if it has been cancelled. */
+  void memberWritten() throws InterruptedIOException {
+    if (++done % REPORT_INTERVAL == 0) {
+      if (cancelled) {
+        throw new InterruptedIOException("Writing cancelled.");
+      }
+      report();
+    }
+  }
+
+  private void report() {
+    ProgressListener li = listener;
+    if (li != null) {
+      li.progress(done, total);
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.util.concurrent.TimeUnit;
+
+/* Token bucket rate limiter. The bucket holds at most limit tokens and is refilled continuously at
+   a rate of limit tokens per interval. Each call to acquire() takes one token, waiting until it is
+   available if the bucket is empty. Callers that find the bucket empty reserve their token ahead
+   of time, so waiting threads are let through in the order they arrived. The limiter lets all
+   calls through until a rate has been set. */
+class RateLimiter {
+  private double capacity = 0;
+  private double tokens = 0;
+  private double tokensPerNano = 0;
+  private long lastRefill = System.nanoTime();
+
+  synchronized void setRate(int limit, long interval, TimeUnit unit) {
+    if (limit <= 0 || interval <= 0) {
+      throw new IllegalArgumentException("Rate limit and interval must be positive.");
+    }
+    refill();
+    if (capacity == 0) {
+      tokens = limit;
+    }
+    capacity = limit;
+    tokensPerNano = limit / (double)unit.toNanos(interval);
+    tokens = Math.min(tokens, capacity);
+  }
+
+  void acquire() throws InterruptedException {
+    long wait;
+    synchronized (this) {
+      if (tokensPerNano == 0) {
+        return;
+      }
+      refill();
+      tokens -= 1;
+      wait = tokens >= 0 ? 0 : (long)Math.ceil(-tokens / tokensPerNano);
+    }
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+    lastRefill = now;
+  }
+}
@@ -0,0 +1,211 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/* Imports a list of CrossRef references as outbound references of an article. The import runs in
+   three stages. References that already exist in the state are first looked up, then the metadata
+   of the remaining DOIs is fetched concurrently, and finally all new articles are created and
+   linked in a single batch while holding the state lock. */
+public class ReferenceImporter {
+  private final Article article;
+  private final List<CrossRef.Reference> references;
+  private final Function<String, CompletableFuture<CrossRef>> fetcher;
+  private final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+  private ProgressListener listener = null;
+  private volatile boolean cancelled = false;
+  private volatile List<CompletableFuture<CrossRef>> fetching = List.of();
+
+  public enum Stage {
+    DEDUPLICATE("Looking up existing articles"),
+    FETCH("Retrieving metadata"),
+    APPLY("Adding references");
+
+    private final String description;
+
+    private Stage(String description) {
+      this.description = description;
+    }
+
+    @Override
+    public String toString() {
+      return description;
+    }
+  }
+
+  /* Receives progress reports from the import. Reports for the fetch stage are made from the
+     threads that complete the requests. */
+  public interface ProgressListener {
+    void progress(Stage stage, int done, int total, double perSecond);
+  }
+
+  public ReferenceImporter(Article article, List<CrossRef.Reference> references) {
+    this(article, references, CrossRef::getDoiAsync);
+  }
+
+  ReferenceImporter(Article article, List<CrossRef.Reference> references,
+      Function<String, CompletableFuture<CrossRef>> fetcher) {
+    this.article = Objects.requireNonNull(article);
+    this.references = List.copyOf(references);
+    this.fetcher = Objects.requireNonNull(fetcher);
+  }
+
+  public void setProgressListener(ProgressListener listener) {
+    this.listener = listener;
+  }
+
+  /* Stops the import before the next stage. Fetches that have not completed are cancelled. */
+  public void cancel() {
+    cancelled = true;
+    cancelFetches();
+  }
+
+  private void cancelFetches() {
+    for (CompletableFuture<CrossRef> future : fetching) {
+      future.cancel(true);
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /* Returns the errors that caused references to be skipped. */
+  public List<Throwable> getErrors() {
+    synchronized (errors) {
+      return List.copyOf(errors);
+    }
+  }
+
+  /* Runs the import and returns the number of references that were added to the article. */
+  public int run() throws InterruptedException {
+    SnowballState state = article.getState();
+    int total = references.size();
+
+    long start = System.nanoTime();
+    Map<String, String> missingDois = new LinkedHashMap<>();
+    for (int i = 0; i < total && !cancelled; i++) {
+      CrossRef.Reference ref = references.get(i);
+      if (ref.doi != null && findExisting(state, ref) == null) {
+        missingDois.putIfAbsent(ResponseCache.doiKey(ref.doi), ref.doi.trim());
+      }
+      report(Stage.DEDUPLICATE, i + 1, total, start);
+    }
+    if (cancelled) {
+      return 0;
+    }
+
+    long fetchStart = System.nanoTime();
+    AtomicInteger fetched = new AtomicInteger();
+    int fetchTotal = missingDois.size();
+    report(Stage.FETCH, 0, fetchTotal, fetchStart);
+    Map<String, CompletableFuture<CrossRef>> fetches = new LinkedHashMap<>();
+    for (Map.Entry<String, String> e : missingDois.entrySet()) {
+      CompletableFuture<CrossRef> future = fetcher.apply(e.getValue());
+      fetches.put(e.getKey(), future);
+      future.whenComplete((cr, ex) ->
+          report(Stage.FETCH, fetched.incrementAndGet(), fetchTotal, fetchStart));
+    }
+    fetching = List.copyOf(fetches.values());
+    Map<String, CrossRef> results = new LinkedHashMap<>();
+    for (Map.Entry<String, CompletableFuture<CrossRef>> e : fetches.entrySet()) {
+      if (cancelled) {
+        cancelFetches();
+        return 0;
+      }
+      try {
+        results.put(e.getKey(), e.getValue().get());
+      } catch (CancellationException ex) {
+        return 0;
+      } catch (ExecutionException ex) {
+        Throwable cause = ex.getCause() instanceof CompletionException
+            ? ex.getCause().getCause() : ex.getCause();
+        errors.add(cause);
+      }
+    }
+    if (cancelled) {
+      return 0;
+    }
+
+    /* The lookups are repeated since the state may have changed while the metadata was fetched,
+       and since several references may resolve to the same new article. */
+    long applyStart = System.nanoTime();
+    int added = 0;
+    state.lock();
+    try {
+      state.pushInhibitUpdates();
+      try {
+        for (int i = 0; i < total; i++) {
+          CrossRef.Reference ref = references.get(i);
+          try {
+            Article a = findExisting(state, ref);
+            if (a == null && ref.doi != null) {
+              CrossRef cr = results.get(ResponseCache.doiKey(ref.doi));
+              if (cr != null) {
+                a = new Article(state, cr);
+              }
+            } else if (a == null && ref.title != null) {
+              a = CrossRef.createArticle(state, ref);
+            }
+            if (a != null && a != article && !article.getReferences().contains(a)) {
+              article.addReference(a);
+              added += 1;
+            }
+          } catch (RuntimeException ex) {
+            errors.add(ex);
+          }
+          report(Stage.APPLY, i + 1, total, applyStart);
+        }
+      } finally {
+        state.popInhibitUpdates();
+      }
+    } finally {
+      state.unlock();
+    }
+    return added;
+  }
+
+  private static Article findExisting(SnowballState state, CrossRef.Reference ref) {
+    Article a = null;
+    if (ref.doi != null) {
+      a = Article.getByDoi(state, ref.doi);
+    }
+    if (a == null && ref.title != null) {
+      a = Article.getByTitle(state, ref.title);
+    }
+    return a;
+  }
+
+  private void report(Stage stage, int done, int total, long start) {
+    ProgressListener li = listener;
+    if (li == null) {
+      return;
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    li.progress(stage, done, total, seconds > 0 ? done / seconds : 0);
+  }
+}
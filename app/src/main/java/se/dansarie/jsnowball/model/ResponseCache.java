@@ -0,0 +1,296 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import se.dansarie.jsnowball.gui.LogWindow;
+
+/* Persistent cache of CrossRef and arXiv API responses. The cache is stored as an append-only log
+   with one JSON record per line, holding the key, the time the response was retrieved and the
+   response body. Later records replace earlier ones with the same key. The log is read into memory
+   when the cache is opened and is compacted by rewriting the live records when it grows past its
+   size limit, at which point expired and, if needed, the least recently stored records are
+   dropped.
+
+   The records in memory are guarded by the monitor of the cache and the log by a separate lock,
+   so that lookups never wait for the log to be written or compacted. The log lock is always taken
+   before the monitor. */
+public class ResponseCache {
+  private static final Duration DEFAULT_TTL = Duration.ofDays(30);
+  private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+  private static final Pattern ARXIV_ID = Pattern.compile("^(?:.*/abs/|arxiv:)?(.+?)(v\\d+)?$",
+      Pattern.CASE_INSENSITIVE);
+  private static ResponseCache instance = null;
+
+  private final Path file;
+  private final long ttl;
+  private final long maxBytes;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+  private final Object logLock = new Object();
+  private long liveBytes = 0;
+  private long logBytes = 0;
+  private BufferedWriter writer = null;
+  private volatile boolean offline = false;
+
+  ResponseCache(Path file, Duration ttl, long maxBytes) {
+    this.file = Objects.requireNonNull(file);
+    this.ttl = ttl.toMillis();
+    this.maxBytes = maxBytes;
+    load();
+  }
+
+  /* Returns the cache stored in the .jsnowball directory in the home directory of the user. */
+  public static synchronized ResponseCache getInstance() {
+    if (instance == null) {
+      Path dir = Paths.get(System.getProperty("user.home"), ".jsnowball");
+      instance = new ResponseCache(dir.resolve("responses.log"), DEFAULT_TTL, DEFAULT_MAX_BYTES);
+    }
+    return instance;
+  }
+
+  /* When offline, responses are only served from the cache and API requests fail. */
+  public boolean isOffline() {
+    return offline;
+  }
+
+  public void setOffline(boolean offline) {
+    this.offline = offline;
+  }
+
+  static String doiKey(String doi) {
+    String key = doi.trim().toLowerCase(Locale.ROOT);
+    for (String prefix : new String[] {"https://doi.org/", "http://doi.org/", "doi:"}) {
+      if (key.startsWith(prefix)) {
+        key = key.substring(prefix.length());
+      }
+    }
+    return "doi:" + key;
+  }
+
+  static String arxivKey(String id) {
+    Matcher m = ARXIV_ID.matcher(id.trim().toLowerCase(Locale.ROOT));
+    m.matches();
+    return "arxiv:" + m.group(1) + Objects.requireNonNullElse(m.group(2), "");
+  }
+
+  synchronized String get(String key) {
+    Entry e = entries.get(key);
+    if (e == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() - e.time > ttl) {
+      entries.remove(key);
+      liveBytes -= e.size;
+      return null;
+    }
+    return e.body;
+  }
+
+  void put(String key, String body) {
+    Entry e = new Entry(System.currentTimeMillis(), body);
+    String record = e.toRecord(key);
+    e.size = record.getBytes(StandardCharsets.UTF_8).length + 1;
+    synchronized (this) {
+      Entry old = entries.remove(key);
+      if (old != null) {
+        liveBytes -= old.size;
+      }
+      entries.put(key, e);
+      liveBytes += e.size;
+    }
+    synchronized (logLock) {
+      try {
+        if (writer == null) {
+          Files.createDirectories(file.toAbsolutePath().getParent());
+          writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+              StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        writer.write(record);
+        writer.write('\n');
+        writer.flush();
+        logBytes += e.size;
+        if (logBytes > maxBytes) {
+          compact();
+        }
+      } catch (IOException ex) {
+        LogWindow.getInstance().addThrowable(ex);
+      }
+    }
+  }
+
+  /* Adds all CrossRef JSON responses (*.json) and arXiv Atom responses (*.xml) in a directory to
+     the cache. The key of each response is taken from its contents. Returns the number of
+     responses that were added. */
+  public int seedFromDirectory(Path dir) throws IOException {
+    int count = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.{json,xml}")) {
+      for (Path p : files) {
+        String body = Files.readString(p, StandardCharsets.UTF_8);
+        if (p.getFileName().toString().endsWith(".json")) {
+          try {
+            put(doiKey(new JSONObject(body).getJSONObject("message").getString("DOI")), body);
+            count += 1;
+          } catch (JSONException ex) {
+            throw new IOException("Unable to read CrossRef response in " + p + ".", ex);
+          }
+        } else {
+          Matcher m = Pattern.compile("<entry>.*?<id>\\s*(.+?)\\s*</id>", Pattern.DOTALL)
+              .matcher(body);
+          if (!m.find()) {
+            throw new IOException("Unable to read arXiv response in " + p + ".");
+          }
+          Matcher idm = ARXIV_ID.matcher(m.group(1));
+          idm.matches();
+          put(arxivKey(idm.group(1)), body);
+          if (idm.group(2) != null) {
+            put(arxivKey(idm.group(1) + idm.group(2)), body);
+          }
+          count += 1;
+        }
+      }
+    }
+    return count;
+  }
+
+  private void load() {
+    if (!Files.exists(file)) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int size = line.getBytes(StandardCharsets.UTF_8).length + 1;
+        logBytes += size;
+        try {
+          JSONObject json = new JSONObject(line);
+          Entry e = new Entry(json.getLong("time"), json.getString("body"));
+          e.size = size;
+          Entry old = entries.remove(json.getString("key"));
+          if (old != null) {
+            liveBytes -= old.size;
+          }
+          if (now - e.time <= ttl) {
+            entries.put(json.getString("key"), e);
+            liveBytes += size;
+          }
+        } catch (JSONException ex) {
+          /* A record may have been cut short if the program was terminated while writing it. */
+          continue;
+        }
+      }
+    } catch (IOException ex) {
+      LogWindow.getInstance().addThrowable(ex);
+      return;
+    }
+    if (logBytes > liveBytes * 2 || logBytes > maxBytes) {
+      synchronized (logLock) {
+        try {
+          compact();
+        } catch (IOException ex) {
+          LogWindow.getInstance().addThrowable(ex);
+        }
+      }
+    }
+  }
+
+  /* Rewrites the log with only the live records. If they take up more than three quarters of the
+     size limit, the oldest records are evicted first. Called with the log lock held. The records
+     are only copied while holding the monitor, so lookups can continue while the log is
+     rewritten. */
+  private void compact() throws IOException {
+    long now = System.currentTimeMillis();
+    List<Map.Entry<String, Entry>> live;
+    synchronized (this) {
+      Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+      while (it.hasNext()) {
+        Entry e = it.next().getValue();
+        if (now - e.time > ttl || liveBytes > maxBytes / 4 * 3) {
+          liveBytes -= e.size;
+          it.remove();
+        }
+      }
+      live = new ArrayList<>(entries.entrySet());
+    }
+    if (writer != null) {
+      writer.close();
+      writer = null;
+    }
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    long written = 0;
+    try {
+      try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        for (Map.Entry<String, Entry> me : live) {
+          w.write(me.getValue().toRecord(me.getKey()));
+          w.write('\n');
+          written += me.getValue().size;
+        }
+      }
+      try {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+    logBytes = written;
+  }
+
+  private static class Entry {
+    private final long time;
+    private final String body;
+    private int size = 0;
+
+    private Entry(long time, String body) {
+      this.time = time;
+      this.body = body;
+    }
+
+    private String toRecord(String key) {
+      JSONObject json = new JSONObject();
+      json.put("key", key);
+      json.put("time", time);
+      json.put("body", body);
+      return json.toString();
+    }
+  }
+}
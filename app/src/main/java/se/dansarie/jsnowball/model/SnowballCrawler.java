@@ -0,0 +1,299 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/* Crawls outbound references breadth-first from the start set. The references of every article
+   that is fewer than maxDepth hops from the start set are imported from CrossRef. Excluded articles
+   and articles without a DOI are not expanded. The articles of each hop are processed by a bounded
+   pool of workers. All requests go through CrossRef.getDoiAsync and share its rate limit.
+
+   If a checkpoint file is set, the DOIs of the articles whose references have been imported are
+   appended to it as the crawl progresses, one line per article after a header line. A crawl
+   started with an existing checkpoint skips those articles as long as their references are still
+   in the state, so an interrupted crawl can be resumed without fetching them again. */
+public class SnowballCrawler {
+  private final SnowballState state;
+  private final int maxDepth;
+  private final Function<String, CompletableFuture<CrossRef>> fetcher;
+  private final Map<String, Integer> done = new HashMap<>();
+  private final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+  private int workers = 4;
+  private Path checkpoint = null;
+  private final Object checkpointLock = new Object();
+  private Writer checkpointWriter = null;
+  private ProgressListener listener = null;
+  private volatile boolean cancelled = false;
+
+  /* Receives progress reports from the crawl. Reports are made from the worker threads. */
+  public interface ProgressListener {
+    void progress(int depth, int done, int total, int articles);
+  }
+
+  public SnowballCrawler(SnowballState state, int maxDepth) {
+    this(state, maxDepth, CrossRef::getDoiAsync);
+  }
+
+  SnowballCrawler(SnowballState state, int maxDepth,
+      Function<String, CompletableFuture<CrossRef>> fetcher) {
+    if (maxDepth < 1) {
+      throw new IllegalArgumentException("The crawl depth must be at least one.");
+    }
+    this.state = Objects.requireNonNull(state);
+    this.maxDepth = maxDepth;
+    this.fetcher = Objects.requireNonNull(fetcher);
+  }
+
+  public void setWorkers(int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("At least one worker is required.");
+    }
+    this.workers = workers;
+  }
+
+  /* Returns the path of the crawl checkpoint of a project file. */
+  public static Path checkpointFile(Path projectFile) {
+    return projectFile.resolveSibling(projectFile.getFileName() + ".crawl");
+  }
+
+  public void setCheckpoint(Path checkpoint) {
+    this.checkpoint = checkpoint;
+  }
+
+  public void setProgressListener(ProgressListener listener) {
+    this.listener = listener;
+  }
+
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /* Returns the errors that caused articles or references to be skipped. */
+  public List<Throwable> getErrors() {
+    synchronized (errors) {
+      return List.copyOf(errors);
+    }
+  }
+
+  /* Runs the crawl and returns the number of articles whose references were imported. */
+  public int run() throws IOException, InterruptedException {
+    openCheckpoint();
+    ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+      Thread th = new Thread(r, "Snowball crawler");
+      th.setDaemon(true);
+      return th;
+    });
+    AtomicInteger expanded = new AtomicInteger();
+    try {
+      Set<Article> visited = new LinkedHashSet<>();
+      List<Article> level = new ArrayList<>();
+      for (Article art : state.getStartSet()) {
+        if (expandable(art) && visited.add(art)) {
+          level.add(art);
+        }
+      }
+      for (int depth = 0; depth < maxDepth && !level.isEmpty() && !cancelled; depth++) {
+        final int d = depth;
+        final int total = level.size();
+        AtomicInteger completed = new AtomicInteger();
+        report(d, 0, total, expanded.get());
+        List<Future<?>> tasks = new ArrayList<>();
+        for (Article art : level) {
+          tasks.add(pool.submit(() -> {
+            if (!cancelled && expand(art)) {
+              expanded.incrementAndGet();
+            }
+            report(d, completed.incrementAndGet(), total, expanded.get());
+            return null;
+          }));
+        }
+        for (Future<?> task : tasks) {
+          try {
+            task.get();
+          } catch (ExecutionException ex) {
+            errors.add(ex.getCause());
+          }
+        }
+        List<Article> next = new ArrayList<>();
+        for (Article art : level) {
+          for (Article ref : art.getReferences()) {
+            if (expandable(ref) && visited.add(ref)) {
+              next.add(ref);
+            }
+          }
+        }
+        level = next;
+      }
+    } finally {
+      pool.shutdownNow();
+      closeCheckpoint();
+    }
+    return expanded.get();
+  }
+
+  private boolean expandable(Article art) {
+    return art.getStatus() != Article.ArticleStatus.EXCLUDED
+        && !art.getDoi().trim().isEmpty();
+  }
+
+  /* Imports the references of an article. Returns false if the article was skipped because it was
+     already expanded according to the checkpoint. */
+  private boolean expand(Article art) throws IOException, InterruptedException {
+    String key = ResponseCache.doiKey(art.getDoi());
+    Integer count;
+    synchronized (done) {
+      count = done.get(key);
+    }
+    if (count != null && art.getReferences().size() >= count) {
+      return false;
+    }
+    CrossRef cr;
+    try {
+      cr = fetcher.apply(art.getDoi().trim()).get();
+    } catch (ExecutionException ex) {
+      errors.add(ex.getCause() instanceof CompletionException
+          ? ex.getCause().getCause() : ex.getCause());
+      return false;
+    }
+    ReferenceImporter importer = new ReferenceImporter(art, cr.references, fetcher);
+    importer.run();
+    errors.addAll(importer.getErrors());
+    int references = art.getReferences().size();
+    synchronized (done) {
+      done.put(key, references);
+    }
+    writeCheckpoint(key, references);
+    return true;
+  }
+
+  /* Reads the checkpoint, if there is one, and opens it for appending. A line that was only partly
+     written when an earlier crawl was interrupted is cut off. */
+  private void openCheckpoint() throws IOException {
+    if (checkpoint == null) {
+      return;
+    }
+    FileChannel channel = FileChannel.open(checkpoint, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      byte[] data = Files.readAllBytes(checkpoint);
+      int end = data.length;
+      while (end > 0 && data[end - 1] != '\n') {
+        end -= 1;
+      }
+      String[] lines = new String(data, 0, end, StandardCharsets.UTF_8).split("\n");
+      if (end > 0) {
+        readCheckpoint(lines);
+      }
+      channel.truncate(end);
+      channel.position(end);
+      Writer w = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+      if (end == 0) {
+        JSONObject header = new JSONObject();
+        header.put("version", "2.0");
+        header.put("maxdepth", maxDepth);
+        w.write(header.toString());
+        w.write('\n');
+        w.flush();
+      }
+      synchronized (checkpointLock) {
+        checkpointWriter = w;
+      }
+    } catch (IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  private void readCheckpoint(String[] lines) throws IOException {
+    try {
+      JSONObject header = new JSONObject(lines[0]);
+      if (!header.getString("version").equals("2.0")) {
+        throw new IOException("Unsupported checkpoint version.");
+      }
+      synchronized (done) {
+        for (int i = 1; i < lines.length; i++) {
+          JSONObject json = new JSONObject(lines[i]);
+          done.put(json.getString("doi"), json.getInt("references"));
+        }
+      }
+    } catch (JSONException ex) {
+      throw new IOException("Unable to read crawl checkpoint.", ex);
+    }
+  }
+
+  /* Appends an expanded article to the checkpoint. Only the line is written, so the cost does not
+     grow with the size of the crawl. */
+  private void writeCheckpoint(String key, int references) throws IOException {
+    synchronized (checkpointLock) {
+      if (checkpointWriter == null) {
+        return;
+      }
+      JSONObject json = new JSONObject();
+      json.put("doi", key);
+      json.put("references", references);
+      checkpointWriter.write(json.toString());
+      checkpointWriter.write('\n');
+      checkpointWriter.flush();
+    }
+  }
+
+  private void closeCheckpoint() throws IOException {
+    synchronized (checkpointLock) {
+      if (checkpointWriter != null) {
+        checkpointWriter.close();
+        checkpointWriter = null;
+      }
+    }
+  }
+
+  private void report(int depth, int done, int total, int articles) {
+    ProgressListener li = listener;
+    if (li != null) {
+      li.progress(depth, done, total, articles);
+    }
+  }
+}
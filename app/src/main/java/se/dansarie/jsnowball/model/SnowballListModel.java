@@ -14,62 +14,91 @@
 
 package se.dansarie.jsnowball.model;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
 import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
-
+/* List model for the member lists of the state. The model is changed by threads other than the
+   event dispatch thread, so this class keeps its own copy of the list that is only accessed on the
+   event dispatch thread. Every change to the underlying list is posted to the event dispatch
+   thread, where it is applied to the copy before the corresponding event is fired. Since posted
+   changes are run in order, the indexes in each event are valid for the copy at the time the event
+   is fired. */
 class SnowballListModel<E> implements ListModel<E> {
-  private List<E> list;
+  private List<E> list = new ArrayList<>();
   private Set<ListDataListener> listeners = new HashSet<>();
 
-  SnowballListModel(List<E> list) {
-    this.list = Objects.requireNonNull(list);
-  }
-
   @Override
   public void addListDataListener(ListDataListener li) {
     listeners.add(Objects.requireNonNull(li));
   }
 
-  void fireAdded(E item) {
-    int idx = list.indexOf(item);
-    if (idx < 0) {
-      throw new IllegalArgumentException();
-    }
-    ListDataEvent ev = new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, idx, idx);
-    for (ListDataListener li : listeners) {
-      li.intervalAdded(ev);
-    }
+  void fireAdded(int idx, E item) {
+    Objects.requireNonNull(item);
+    SwingUtilities.invokeLater(() -> {
+      list.add(idx, item);
+      fire(new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, idx, idx));
+    });
   }
 
-  void fireChanged() {
-    ListDataEvent ev = new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, 0, list.size() - 1);
-    for (ListDataListener li : listeners) {
-      li.contentsChanged(ev);
-    }
+  void fireChanged(int idx) {
+    SwingUtilities.invokeLater(() ->
+        fire(new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, idx, idx)));
   }
 
-  void fireChanged(E item) {
-    int idx = list.indexOf(item);
-    if (idx < 0) {
+  void fireMoved(int from, int to) {
+    if (from == to) {
+      fireChanged(from);
       return;
     }
-    ListDataEvent ev = new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, idx, idx);
-    for (ListDataListener li : listeners) {
-      li.contentsChanged(ev);
-    }
+    SwingUtilities.invokeLater(() -> {
+      E item = list.remove(from);
+      fire(new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, from, from));
+      list.add(to, item);
+      fire(new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, to, to));
+    });
   }
 
   void fireRemoved(int idx) {
-    ListDataEvent ev = new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, idx, idx);
-    for (ListDataListener li : listeners) {
-      li.intervalRemoved(ev);
+    SwingUtilities.invokeLater(() -> {
+      list.remove(idx);
+      fire(new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, idx, idx));
+    });
+  }
+
+  /* Replaces the whole contents of the model. Used when many elements have been reordered at
+     once. */
+  void fireReset(List<E> contents) {
+    List<E> copy = new ArrayList<>(contents);
+    SwingUtilities.invokeLater(() -> {
+      list = copy;
+      fire(new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, 0, list.size() - 1));
+    });
+  }
+
+  /* Sets the contents of a model that has not been published to any other thread, without posting
+     a change. Used for the member lists of a state that is being built. The state lock is taken
+     after the state has been built and before it is handed out, which makes the contents visible
+     to the event dispatch thread once it has reached the model through the state. */
+  void initialize(List<E> contents) {
+    list = new ArrayList<>(contents);
+  }
+
+  private void fire(ListDataEvent ev) {
+    for (ListDataListener li : new ArrayList<>(listeners)) {
+      switch (ev.getType()) {
+        case ListDataEvent.CONTENTS_CHANGED: li.contentsChanged(ev); break;
+        case ListDataEvent.INTERVAL_ADDED:   li.intervalAdded(ev);   break;
+        case ListDataEvent.INTERVAL_REMOVED: li.intervalRemoved(ev); break;
+        default: throw new IllegalArgumentException();
+      }
     }
   }
 
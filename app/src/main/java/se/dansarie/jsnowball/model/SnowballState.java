@@ -14,91 +14,215 @@
 
 package se.dansarie.jsnowball.model;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
 import java.util.List;
 
 import javax.swing.ListModel;
-import javax.swing.SwingUtilities;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public class SnowballState {
-  private List<Article> articles = new ArrayList<>();
-  private List<Author> authors = new ArrayList<>();
-  private List<Journal> journals = new ArrayList<>();
-  private List<Tag> tags = new ArrayList<>();
+  private MemberList<Article> articles = new MemberList<>();
+  private MemberList<Author> authors = new MemberList<>();
+  private MemberList<Journal> journals = new MemberList<>();
+  private MemberList<Tag> tags = new MemberList<>();
+  private Map<String, GraphSettings> graphSettings = new HashMap<>();
   private Set<SnowballStateMember> updatedMembers = new HashSet<>();
   private int inhibitUpdates = 0;
   private boolean saved = true;
-  private ReentrantLock lock = new ReentrantLock();
+  private volatile long version = 0;
+  private int nextId = 0;
+  private ChangeJournal changeJournal = null;
+  private volatile Map<Article, Integer> distances = null;
+  private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
-  private SnowballListModel<Article> articleListModel = new SnowballListModel<>(articles);
-  private SnowballListModel<Author> authorListModel = new SnowballListModel<>(authors);
-  private SnowballListModel<Journal> journalListModel = new SnowballListModel<>(journals);
-  private SnowballListModel<Tag> tagListModel = new SnowballListModel<>(tags);
+  private static final int RESORT_BATCH_LIMIT = 16;
+
+  private MemberIndex<Article> articlesByDoi = new MemberIndex<>();
+  private MemberIndex<Article> articlesByTitle = new MemberIndex<>();
+  private MemberIndex<Author> authorsByName = new MemberIndex<>();
+  private MemberIndex<Author> authorsByOrcid = new MemberIndex<>();
+  private MemberIndex<Journal> journalsByIssn = new MemberIndex<>();
+  private MemberIndex<Journal> journalsByName = new MemberIndex<>();
+
+  private SnowballListModel<Article> articleListModel = new SnowballListModel<>();
+  private SnowballListModel<Author> authorListModel = new SnowballListModel<>();
+  private SnowballListModel<Journal> journalListModel = new SnowballListModel<>();
+  private SnowballListModel<Tag> tagListModel = new SnowballListModel<>();
 
   public SnowballState() {
   }
 
+  /* Builds a state from a saved copy in one pass. Members are created without going through
+     addMember and the mutators. Their lists are filled directly from the indexes in the proxies and
+     sorted once at the end, and each list model of the state is reset with a single event.
+
+     The state cannot be reached by other threads until it has been built, so the members are
+     created, and their lists filled and sorted, in parallel on the common fork-join pool. Each task
+     only changes its own members, and articles and authors are compared without taking the lock.
+     The write lock is only held by this thread between the parallel steps, so that the read lock
+     taken when tags are compared never blocks. */
   private SnowballState(SerializationProxy sp) {
+    Author[] loadedAuthors = new Author[sp.authors.length];
+    Arrays.parallelSetAll(loadedAuthors, i -> new Author(this, sp.authors[i]));
+    Journal[] loadedJournals = new Journal[sp.journals.length];
+    Arrays.parallelSetAll(loadedJournals, i -> new Journal(this, sp.journals[i]));
+    Tag[] loadedTags = new Tag[sp.tags.length];
+    Arrays.parallelSetAll(loadedTags, i -> new Tag(this, sp.tags[i]));
+    Article[] loadedArticles = new Article[sp.articles.length];
+    Arrays.parallelSetAll(loadedArticles, i -> new Article(this, sp.articles[i]));
+    IntStream.range(0, loadedArticles.length).parallel().forEach(i ->
+        loadedArticles[i].restoreRelations(sp.articles[i], loadedArticles, loadedAuthors,
+        loadedJournals, loadedTags));
+
+    /* The loaded arrays are indexed as in the file, so the sorted lists are made from copies. */
+    Author[] sortedAuthors = loadedAuthors.clone();
+    Arrays.parallelSort(sortedAuthors, Author::compareUnlocked);
+    Journal[] sortedJournals = loadedJournals.clone();
+    Arrays.parallelSort(sortedJournals);
+    Article[] sortedArticles = loadedArticles.clone();
+    Arrays.parallelSort(sortedArticles, Article::compareUnlocked);
+
     lock();
     try {
-      pushInhibitUpdates();
-      ArrayList<Author> loadedAuthors = new ArrayList<>();
-      for (Author.SerializationProxy proxy : sp.authors) {
-        Author au = new Author(this);
-        au.restoreFromProxy(proxy);
-        loadedAuthors.add(au);
+      for (SnowballStateMember[] loaded : new SnowballStateMember[][] {loadedAuthors,
+          loadedJournals, loadedTags, loadedArticles}) {
+        for (SnowballStateMember member : loaded) {
+          nextId = Math.max(nextId, member.getId() + 1);
+        }
       }
-
-      ArrayList<Journal> loadedJournals = new ArrayList<>();
-      for (Journal.SerializationProxy proxy : sp.journals) {
-        Journal jo = new Journal(this);
-        jo.restoreFromProxy(proxy);
-        loadedJournals.add(jo);
+      addLoaded(loadedTags, tags, tagListModel);
+      addLoaded(sortedAuthors, authors, authorListModel);
+      addLoaded(sortedJournals, journals, journalListModel);
+      addLoaded(sortedArticles, articles, articleListModel);
+      for (Article art : loadedArticles) {
+        art.linkLoaded();
       }
-
-      ArrayList<Tag> loadedTags = new ArrayList<>();
-      for (Tag.SerializationProxy proxy : sp.tags) {
-        Tag tag = new Tag(this);
-        tag.restoreFromProxy(proxy);
-        loadedTags.add(tag);
+      for (Article art : loadedArticles) {
+        art.countLoadedReferences();
       }
+    } finally {
+      unlock();
+    }
 
-      ArrayList<Article> loadedArticles = new ArrayList<>();
-      for (int i = 0; i < sp.articles.length; i++) {
-        Article ar = new Article(this);
-        loadedArticles.add(ar);
-      }
+    /* Tags are sorted by their position in the tag list, which has been filled above. */
+    Arrays.stream(loadedArticles).parallel().forEach(Article::finishLoad);
+    Arrays.stream(loadedAuthors).parallel().forEach(Author::finishLoad);
 
-      for (int i = 0; i < sp.articles.length; i++) {
-        loadedArticles.get(i).restoreFromProxy(sp.articles[i], loadedArticles, loadedAuthors,
-            loadedJournals, loadedTags);
-      }
-      popInhibitUpdates();
+    lock();
+    try {
+      graphSettings.putAll(sp.graphs);
       saved = true;
     } finally {
       unlock();
     }
   }
 
+  /* Adds loaded members to a list of the state, in the order they are given in. Members that were
+     saved without an identifier are given one after all saved identifiers have been reserved. */
+  private <E extends SnowballStateMember> void addLoaded(E[] loaded, MemberList<E> li,
+      SnowballListModel<E> listModel) {
+    if (loaded.length == 0) {
+      return;
+    }
+    li.addAll(Arrays.asList(loaded));
+    for (E member : loaded) {
+      if (member.getId() < 0) {
+        member.setId(nextId++);
+      }
+      indexMember(member);
+    }
+    listModel.fireReset(li);
+  }
+
   public static SnowballState fromJson(String json) throws JSONException {
     return new SnowballState(new SnowballState.SerializationProxy(new JSONObject(json)));
   }
 
+  /* Reads a project file in either the binary or the JSON format. */
+  public static SnowballState load(Path file) throws IOException, JSONException {
+    if (BinaryProject.isBinary(file)) {
+      SerializationProxy proxy = BinaryProject.read(file);
+      try {
+        return new SnowballState(proxy);
+      } catch (IndexOutOfBoundsException ex) {
+        throw new IOException("Invalid member index in project file.", ex);
+      }
+    }
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return fromJson(reader);
+    }
+  }
+
+  /* Reads a project without first reading the whole file into memory. */
+  public static SnowballState fromJson(Reader reader) throws JSONException {
+    SerializationProxy proxy = new ProjectReader(reader).read();
+    try {
+      return new SnowballState(proxy);
+    } catch (IndexOutOfBoundsException ex) {
+      throw new JSONException("Reference to missing member.", ex);
+    }
+  }
+
+  /* Acquires the write lock. All modifications of the state and its members are made while
+     holding it, which serializes writers. */
   void lock() {
-    lock.lock();
+    lock.writeLock().lock();
   }
 
   void unlock() {
-    lock.unlock();
+    lock.writeLock().unlock();
+  }
+
+  /* Acquires the read lock. Readers do not block each other. A thread holding only the read lock
+     must never attempt to acquire the write lock. */
+  void readLock() {
+    lock.readLock().lock();
+  }
+
+  void readUnlock() {
+    lock.readLock().unlock();
+  }
+
+  /* Returns an immutable snapshot of a member list without locking if the list has not been
+     modified since the last snapshot was taken. */
+  <E extends Comparable<? super E>> List<E> snapshot(MemberList<E> list) {
+    List<E> ret = list.peekSnapshot();
+    if (ret != null) {
+      return ret;
+    }
+    readLock();
+    try {
+      return list.snapshot();
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Returns a counter that is incremented on every change to the state. */
+  public long getVersion() {
+    return version;
   }
 
   void pushInhibitUpdates() {
@@ -115,10 +239,24 @@ public class SnowballState {
     try {
       inhibitUpdates -= 1;
       if (inhibitUpdates == 0) {
+        List<Article> updatedArticles = new ArrayList<>();
+        List<Author> updatedAuthors = new ArrayList<>();
+        List<Journal> updatedJournals = new ArrayList<>();
         for (SnowballStateMember member : updatedMembers) {
-          fireUpdated(member);
+          if (member instanceof Article) {
+            updatedArticles.add((Article)member);
+          } else if (member instanceof Author) {
+            updatedAuthors.add((Author)member);
+          } else if (member instanceof Journal) {
+            updatedJournals.add((Journal)member);
+          } else if (member instanceof Tag) {
+            fireUpdated(member);
+          }
         }
         updatedMembers.clear();
+        resortMembers(updatedArticles, articles, articleListModel);
+        resortMembers(updatedAuthors, authors, authorListModel);
+        resortMembers(updatedJournals, journals, journalListModel);
       } else if (inhibitUpdates < 0) {
         throw new IllegalStateException("Popped more inhibits than pushed!");
       }
@@ -130,50 +268,84 @@ public class SnowballState {
   void fireUpdated(SnowballStateMember updated) {
     lock();
     try {
-      Objects.requireNonNull(updated);
+      journalChanged(Objects.requireNonNull(updated));
       saved = false;
+      version += 1;
       if (inhibitUpdates > 0) {
         updatedMembers.add(updated);
         return;
       }
-      List<? extends SnowballStateMember> list = null;
-      SnowballListModel<? extends SnowballStateMember> listModel = null;
       if (updated instanceof Article) {
-        list = articles;
-        listModel = articleListModel;
+        resortMember((Article)updated, articles, articleListModel);
       } else if (updated instanceof Author) {
-        list = authors;
-        listModel = authorListModel;
+        resortMember((Author)updated, authors, authorListModel);
       } else if (updated instanceof Journal) {
-        list = journals;
-        listModel = journalListModel;
+        resortMember((Journal)updated, journals, journalListModel);
       } else if (updated instanceof Tag) {
         for (Article art : getArticles()) {
           if (art.getTags().contains(updated)) {
             art.sortTags();
           }
         }
-        list = tags;
-        listModel = tagListModel;
+        int idx = tags.indexOf(updated);
+        if (idx >= 0) {
+          tagListModel.fireChanged(idx);
+        }
       } else {
         throw new IllegalStateException();
       }
-      Collections.sort(list);
-      @SuppressWarnings("unchecked")
-      final SnowballListModel<SnowballStateMember> lm =
-          (SnowballListModel<SnowballStateMember>)listModel;
-      SwingUtilities.invokeLater(() -> lm.fireChanged(updated));
     } finally {
       unlock();
     }
   }
 
+  /* Moves a member whose sort key may have changed to its sorted position in the list. */
+  static <E extends SnowballStateMember> void resortMember(E member, MemberList<E> list,
+      SnowballListModel<E> listModel) {
+    int idx = list.indexOf(member);
+    if (idx < 0) {
+      return;
+    }
+    listModel.fireMoved(idx, list.resort(idx));
+  }
+
+  /* Resorts a batch of members after updates have been inhibited. Small batches are taken out of
+     the list and reinserted one by one, which keeps the events precise. Large batches are handled
+     by sorting the whole list once. */
+  private <E extends SnowballStateMember> void resortMembers(List<E> updated, MemberList<E> list,
+      SnowballListModel<E> listModel) {
+    if (updated.isEmpty()) {
+      return;
+    }
+    if (updated.size() > RESORT_BATCH_LIMIT) {
+      Collections.sort(list);
+      listModel.fireReset(list);
+      return;
+    }
+    List<Integer> indexes = new ArrayList<>();
+    for (E member : updated) {
+      int idx = list.indexOf(member);
+      if (idx >= 0) {
+        indexes.add(idx);
+      }
+    }
+    indexes.sort(Collections.reverseOrder());
+    for (int idx : indexes) {
+      list.remove(idx);
+      listModel.fireRemoved(idx);
+    }
+    for (E member : updated) {
+      int idx = list.insertSorted(member);
+      listModel.fireAdded(idx, member);
+    }
+  }
+
   public boolean isSaved() {
-    lock();
+    readLock();
     try {
       return saved;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
@@ -188,6 +360,10 @@ public class SnowballState {
         return;
       }
       Collections.swap(tags, idx, idx + 1);
+      tagListModel.fireMoved(idx, idx + 1);
+      if (changeJournal != null) {
+        changeJournal.tagsReordered();
+      }
       fireUpdated(tags.get(idx));
       fireUpdated(tags.get(idx + 1));
     } finally {
@@ -206,6 +382,10 @@ public class SnowballState {
         return;
       }
       Collections.swap(tags, idx, idx - 1);
+      tagListModel.fireMoved(idx, idx - 1);
+      if (changeJournal != null) {
+        changeJournal.tagsReordered();
+      }
       fireUpdated(tags.get(idx));
       fireUpdated(tags.get(idx - 1));
     } finally {
@@ -213,6 +393,97 @@ public class SnowballState {
     }
   }
 
+  /* Puts the tags with the given identifiers first, in the given order, followed by the other tags
+     in their current order. */
+  void reorderTags(int[] ids) {
+    lock();
+    try {
+      Map<Integer, Tag> byId = new HashMap<>();
+      for (Tag tag : tags) {
+        byId.put(tag.getId(), tag);
+      }
+      List<Tag> ordered = new ArrayList<>();
+      for (int id : ids) {
+        Tag tag = byId.remove(id);
+        if (tag != null) {
+          ordered.add(tag);
+        }
+      }
+      for (Tag tag : tags) {
+        if (byId.containsKey(tag.getId())) {
+          ordered.add(tag);
+        }
+      }
+      tags.clear();
+      tags.addAll(ordered);
+      tagListModel.fireReset(tags);
+      if (changeJournal != null) {
+        changeJournal.tagsReordered();
+      }
+      saved = false;
+      version += 1;
+    } finally {
+      unlock();
+    }
+  }
+
+  /* Gives a member the identifier it was saved with. Members that were saved without one keep the
+     identifier they were given when they were added. */
+  void restoreId(SnowballStateMember member, int id) {
+    lock();
+    try {
+      if (id >= 0) {
+        member.setId(id);
+        nextId = Math.max(nextId, id + 1);
+      }
+    } finally {
+      unlock();
+    }
+  }
+
+  ChangeJournal getChangeJournal() {
+    readLock();
+    try {
+      return changeJournal;
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Sets the journal that records changes to the state, or stops recording changes if null. */
+  void setChangeJournal(ChangeJournal changeJournal) {
+    lock();
+    try {
+      this.changeJournal = changeJournal;
+    } finally {
+      unlock();
+    }
+  }
+
+  /* Records a change to a member in the change journal. */
+  void journalChanged(SnowballStateMember member) {
+    lock();
+    try {
+      if (changeJournal != null) {
+        changeJournal.memberChanged(member);
+      }
+    } finally {
+      unlock();
+    }
+  }
+
+  /* Called when the stored graph position of a member has changed. */
+  void graphPositionChanged(SnowballStateMember member) {
+    lock();
+    try {
+      journalChanged(member);
+      saved = false;
+      version += 1;
+    } finally {
+      unlock();
+    }
+  }
+
   void removeMember(SnowballStateMember member) {
     lock();
     try {
@@ -220,6 +491,10 @@ public class SnowballState {
         throw new IllegalArgumentException("Attempted to remove member from wrong state.");
       }
       saved = false;
+      version += 1;
+      if (changeJournal != null) {
+        changeJournal.memberRemoved(member);
+      }
       List<? extends SnowballStateMember> list = null;
       SnowballListModel<? extends SnowballStateMember> listModel = null;
       if (member instanceof Article) {
@@ -237,10 +512,14 @@ public class SnowballState {
       } else {
         throw new IllegalStateException();
       }
-      final int idx = list.indexOf(member);
+      int idx = list.indexOf(member);
       list.remove(idx);
-      final SnowballListModel<? extends SnowballStateMember> lm = listModel;
-      SwingUtilities.invokeLater(() -> lm.fireChanged());
+      unindexMember(member);
+      updatedMembers.remove(member);
+      if (member instanceof Article) {
+        invalidateDistances();
+      }
+      listModel.fireRemoved(idx);
     } finally {
       unlock();
     }
@@ -250,13 +529,13 @@ public class SnowballState {
     lock();
     try {
       if (member instanceof Article) {
-        addMember((Article)member, articles);
+        addMember((Article)member, articles, articleListModel, true);
       } else if (member instanceof Author) {
-        addMember((Author)member, authors);
+        addMember((Author)member, authors, authorListModel, true);
       } else  if (member instanceof Journal) {
-        addMember((Journal)member, journals);
+        addMember((Journal)member, journals, journalListModel, true);
       } else  if (member instanceof Tag) {
-        addMember((Tag)member, tags);
+        addMember((Tag)member, tags, tagListModel, false);
       } else {
         throw new IllegalStateException();
       }
@@ -265,7 +544,8 @@ public class SnowballState {
     }
   }
 
-  <E extends SnowballStateMember> void addMember(E member, List<E> li) {
+  <E extends SnowballStateMember> void addMember(E member, MemberList<E> li,
+      SnowballListModel<E> listModel, boolean sorted) {
     lock();
     try {
       if (li.contains(Objects.requireNonNull(member))) {
@@ -274,7 +554,17 @@ public class SnowballState {
       if (member.getState() != this) {
         throw new IllegalArgumentException("Attempted to add member belonging to other state.");
       }
-      li.add(member);
+      if (member.getId() < 0) {
+        member.setId(nextId++);
+      }
+      int idx = li.size();
+      if (sorted) {
+        idx = li.insertSorted(member);
+      } else {
+        li.add(member);
+      }
+      listModel.fireAdded(idx, member);
+      indexMember(member);
       fireUpdated(member);
     } finally {
       unlock();
@@ -284,13 +574,11 @@ public class SnowballState {
   public Author getAuthorFromStrings(String firstName, String lastName) {
     lock();
     try {
-      for (Author a : authors) {
-        if (a.getFirstName().equalsIgnoreCase(firstName)
-            && a.getLastName().equalsIgnoreCase(lastName)) {
-          return a;
-        }
+      Author a = getAuthorByName(firstName, lastName);
+      if (a != null) {
+        return a;
       }
-      Author a = new Author(this);
+      a = new Author(this);
       a.setFirstName(firstName);
       a.setLastName(lastName);
       return a;
@@ -302,12 +590,11 @@ public class SnowballState {
   public Journal getJournalFromString(String name) {
     lock();
     try {
-      for (Journal j : journals) {
-        if (j.getName().equals(name)) {
-          return j;
-        }
+      Journal j = getJournalByName(name);
+      if (j != null) {
+        return j;
       }
-      Journal j = new Journal(this);
+      j = new Journal(this);
       j.setName(name);
       return j;
     } finally {
@@ -318,12 +605,11 @@ public class SnowballState {
   public Journal getJournalFromIssn(String issn) {
     lock();
     try {
-      for (Journal j : journals) {
-        if (j.getIssn().equals(issn)) {
-          return j;
-        }
+      Journal j = getJournalByIssn(issn);
+      if (j != null) {
+        return j;
       }
-      Journal j = new Journal(this);
+      j = new Journal(this);
       j.setIssn(issn);
       return j;
     } finally {
@@ -331,86 +617,300 @@ public class SnowballState {
     }
   }
 
-  public List<Article> getArticles() {
+  Article getArticleByDoi(String doi) {
+    readLock();
+    try {
+      return articlesByDoi.get(doiKey(Objects.requireNonNull(doi)));
+    } finally {
+      readUnlock();
+    }
+  }
+
+  Article getArticleByTitle(String title) {
+    readLock();
+    try {
+      if (title == null) {
+        return null;
+      }
+      return articlesByTitle.get(title);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  Author getAuthorByName(String firstName, String lastName) {
+    readLock();
+    try {
+      if (firstName == null || lastName == null) {
+        return null;
+      }
+      return authorsByName.get(nameKey(firstName, lastName));
+    } finally {
+      readUnlock();
+    }
+  }
+
+  Author getAuthorByOrcid(String orcid) {
+    readLock();
+    try {
+      if (orcid == null) {
+        return null;
+      }
+      return authorsByOrcid.get(orcid);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  Journal getJournalByIssn(String issn) {
+    readLock();
+    try {
+      if (issn == null) {
+        return null;
+      }
+      return journalsByIssn.get(issn);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  Journal getJournalByName(String name) {
+    readLock();
+    try {
+      if (name == null) {
+        return null;
+      }
+      return journalsByName.get(name);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Adds a member to the lookup indexes using the current values of its key fields. Setters that
+     change a key field must call unindexMember before the change and indexMember after it. */
+  void indexMember(SnowballStateMember member) {
     lock();
     try {
-      return Collections.unmodifiableList(new ArrayList<>(articles));
+      if (member instanceof Article) {
+        Article art = (Article)member;
+        articlesByDoi.add(doiKey(art.getDoi()), art);
+        articlesByTitle.add(Objects.requireNonNullElse(art.getTitle(), ""), art);
+      } else if (member instanceof Author) {
+        Author au = (Author)member;
+        authorsByName.add(nameKey(au.getFirstName(), au.getLastName()), au);
+        authorsByOrcid.add(Objects.requireNonNullElse(au.getOrcId(), ""), au);
+      } else if (member instanceof Journal) {
+        Journal jo = (Journal)member;
+        journalsByIssn.add(Objects.requireNonNullElse(jo.getIssn(), ""), jo);
+        journalsByName.add(Objects.requireNonNullElse(jo.getName(), ""), jo);
+      }
     } finally {
       unlock();
     }
   }
 
-  public List<Author> getAuthors() {
+  /* Removes a member from the lookup indexes. Returns false if the member was not indexed, i.e.
+     if it has been removed from the state. */
+  boolean unindexMember(SnowballStateMember member) {
     lock();
     try {
-      return Collections.unmodifiableList(new ArrayList<>(authors));
+      if (member instanceof Article) {
+        Article art = (Article)member;
+        articlesByTitle.remove(Objects.requireNonNullElse(art.getTitle(), ""), art);
+        return articlesByDoi.remove(doiKey(art.getDoi()), art);
+      } else if (member instanceof Author) {
+        Author au = (Author)member;
+        authorsByOrcid.remove(Objects.requireNonNullElse(au.getOrcId(), ""), au);
+        return authorsByName.remove(nameKey(au.getFirstName(), au.getLastName()), au);
+      } else if (member instanceof Journal) {
+        Journal jo = (Journal)member;
+        journalsByName.remove(Objects.requireNonNullElse(jo.getName(), ""), jo);
+        return journalsByIssn.remove(Objects.requireNonNullElse(jo.getIssn(), ""), jo);
+      }
+      return false;
     } finally {
       unlock();
     }
   }
 
+  private static String doiKey(String doi) {
+    return Objects.requireNonNullElse(doi, "").trim().toLowerCase(Locale.ROOT);
+  }
+
+  private static String nameKey(String firstName, String lastName) {
+    return Objects.requireNonNullElse(firstName, "").toLowerCase(Locale.ROOT) + '\0'
+        + Objects.requireNonNullElse(lastName, "").toLowerCase(Locale.ROOT);
+  }
+
+  public List<Article> getArticles() {
+    return snapshot(articles);
+  }
+
+  public List<Author> getAuthors() {
+    return snapshot(authors);
+  }
+
   public List<Journal> getJournals() {
+    return snapshot(journals);
+  }
+
+  public List<Tag> getTags() {
+    return snapshot(tags);
+  }
+
+  /* Returns the layout settings stored for a graph, or null if there are none. */
+  public GraphSettings getGraphSettings(String graph) {
+    readLock();
+    try {
+      return graphSettings.get(Objects.requireNonNull(graph));
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Stores the layout settings of a graph, so that they can be saved with the project. */
+  public void setGraphSettings(String graph, GraphSettings settings) {
     lock();
     try {
-      return Collections.unmodifiableList(new ArrayList<>(journals));
+      graphSettings.put(Objects.requireNonNull(graph), Objects.requireNonNull(settings));
     } finally {
       unlock();
     }
   }
 
-  public List<Tag> getTags() {
+  /* Returns the number of references that separate an article from the closest article in the
+     start set, or -1 if there is no such path. Excluded articles are not traversed. The distances
+     of all articles are computed with a single breadth-first search from the start set and kept
+     until the references, statuses or the start set change. */
+  public int getDistanceFromStartSet(Article art) {
+    if (Objects.requireNonNull(art).getState() != this) {
+      throw new IllegalArgumentException("Article belongs to other state.");
+    }
+    readLock();
+    try {
+      Map<Article, Integer> dist = distances;
+      if (dist == null) {
+        dist = new HashMap<>();
+        ArrayDeque<Article> queue = new ArrayDeque<>();
+        for (Article a : articles) {
+          if (a.inStartSet()) {
+            dist.put(a, 0);
+            if (a.getStatus() != Article.ArticleStatus.EXCLUDED) {
+              queue.add(a);
+            }
+          }
+        }
+        expandDistances(dist, queue);
+        /* Writers are locked out while the distances are computed, so the result cannot be made
+           stale before it has been stored. */
+        distances = dist;
+      }
+      return dist.getOrDefault(art, -1);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  private static void expandDistances(Map<Article, Integer> dist, ArrayDeque<Article> queue) {
+    while (!queue.isEmpty()) {
+      Article art = queue.poll();
+      int next = dist.get(art) + 1;
+      relaxDistances(dist, queue, art.getReferences(), next);
+      relaxDistances(dist, queue, art.getReferencesTo(), next);
+    }
+  }
+
+  private static void relaxDistances(Map<Article, Integer> dist, ArrayDeque<Article> queue,
+      List<Article> neighbors, int next) {
+    for (Article neighbor : neighbors) {
+      if (neighbor.getStatus() == Article.ArticleStatus.EXCLUDED) {
+        continue;
+      }
+      Integer d = dist.get(neighbor);
+      if (d == null || d > next) {
+        dist.put(neighbor, next);
+        queue.add(neighbor);
+      }
+    }
+  }
+
+  /* Updates the cached distances after a reference has been added between two articles. Adding a
+     reference can only shorten paths, so the search is continued from the endpoint that got
+     closer to the start set. */
+  void referenceAdded(Article from, Article to) {
     lock();
     try {
-      return Collections.unmodifiableList(new ArrayList<>(tags));
+      Map<Article, Integer> dist = distances;
+      if (dist == null || from.getStatus() == Article.ArticleStatus.EXCLUDED
+          || to.getStatus() == Article.ArticleStatus.EXCLUDED) {
+        return;
+      }
+      ArrayDeque<Article> queue = new ArrayDeque<>();
+      Integer df = dist.get(from);
+      Integer dt = dist.get(to);
+      if (df != null && (dt == null || dt > df + 1)) {
+        dist.put(to, df + 1);
+        queue.add(to);
+      } else if (dt != null && (df == null || df > dt + 1)) {
+        dist.put(from, dt + 1);
+        queue.add(from);
+      }
+      expandDistances(dist, queue);
     } finally {
       unlock();
     }
   }
 
+  /* Drops the cached distances. Called when a reference is removed or when the status or start
+     set membership of an article changes. */
+  void invalidateDistances() {
+    distances = null;
+  }
+
   public List<Article> getStartSet() {
-    lock();
+    readLock();
     try {
       ArrayList<Article> startSet = new ArrayList<>(articles);
       startSet.removeIf(a -> !a.inStartSet());
       return Collections.unmodifiableList(startSet);
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public ListModel<Article> getArticleListModel() {
-    lock();
+    readLock();
     try {
       return articleListModel;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public ListModel<Author> getAuthorListModel() {
-    lock();
+    readLock();
     try {
       return authorListModel;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public ListModel<Journal> getJournalListModel() {
-    lock();
+    readLock();
     try {
       return journalListModel;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public ListModel<Tag> getTagListModel() {
-    lock();
+    readLock();
     try {
       return tagListModel;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
@@ -424,20 +924,56 @@ public class SnowballState {
     }
   }
 
+  /* Returns an immutable copy of the state for saving, without marking the state as saved. Only
+     the read lock is held while the copy is made, so it can be made on a background thread. */
+  public SerializationProxy getSnapshot() {
+    readLock();
+    try {
+      return new SerializationProxy(this);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Marks the state as saved after a snapshot has been written, unless it has been changed since
+     the snapshot was made. */
+  public void markSaved(SerializationProxy snapshot) {
+    lock();
+    try {
+      if (snapshot.version == version) {
+        saved = true;
+      }
+    } finally {
+      unlock();
+    }
+  }
+
   public static class SerializationProxy {
-    private Article.SerializationProxy[] articles;
-    private Author.SerializationProxy[] authors;
-    private Journal.SerializationProxy[] journals;
-    private Tag.SerializationProxy[] tags;
+    final Article.SerializationProxy[] articles;
+    final Author.SerializationProxy[] authors;
+    final Journal.SerializationProxy[] journals;
+    final Tag.SerializationProxy[] tags;
+    final Map<String, GraphSettings> graphs;
+    private final long version;
+    final ChangeJournal changeJournal;
+    final long journalMark;
 
     private SerializationProxy(SnowballState st) {
-      Collections.sort(st.articles);
-      Collections.sort(st.authors);
-      Collections.sort(st.journals);
-      Collections.sort(st.tags);
+      version = st.version;
+      /* The journal records from before the mark are covered by this copy of the state. */
+      changeJournal = st.changeJournal;
+      journalMark = changeJournal == null ? -1 : changeJournal.mark();
+      /* Articles refer to other members by their index in the lists. */
+      Map<SnowballStateMember, Integer> index = new IdentityHashMap<>();
+      addIndexes(index, st.authors);
+      addIndexes(index, st.journals);
+      addIndexes(index, st.tags);
+      addIndexes(index, st.articles);
+      ToIntFunction<SnowballStateMember> indexOf = m -> index.getOrDefault(m, -1);
+
       articles = new Article.SerializationProxy[st.articles.size()];
       for (int i = 0; i < st.articles.size(); i++) {
-        articles[i] = st.articles.get(i).getSerializationProxy();
+        articles[i] = st.articles.get(i).getSerializationProxy(indexOf);
       }
       authors = new Author.SerializationProxy[st.authors.size()];
       for (int i = 0; i < st.authors.size(); i++) {
@@ -451,65 +987,71 @@ public class SnowballState {
       for (int i = 0; i < st.tags.size(); i++) {
         tags[i] = st.tags.get(i).getSerializationProxy();
       }
+      graphs = new HashMap<>(st.graphSettings);
+    }
+
+    SerializationProxy(Article.SerializationProxy[] articles, Author.SerializationProxy[] authors,
+        Journal.SerializationProxy[] journals, Tag.SerializationProxy[] tags,
+        Map<String, GraphSettings> graphs) {
+      version = 0;
+      changeJournal = null;
+      journalMark = -1;
+      this.articles = articles;
+      this.authors = authors;
+      this.journals = journals;
+      this.tags = tags;
+      this.graphs = graphs;
+    }
+
+    private static void addIndexes(Map<SnowballStateMember, Integer> index,
+        List<? extends SnowballStateMember> list) {
+      for (int i = 0; i < list.size(); i++) {
+        index.put(list.get(i), i);
+      }
     }
 
     SerializationProxy(JSONObject json) throws JSONException {
+      version = 0;
+      changeJournal = null;
+      journalMark = -1;
       if (!json.getString("version").equals("1.0")) {
         throw new RuntimeException();
       }
+      /* The members are converted in parallel. Reading a JSON object from several threads is safe
+         as long as nothing changes it. */
       JSONArray ar = json.getJSONArray("articles");
       articles = new Article.SerializationProxy[ar.length()];
-      for (int i = 0; i < ar.length(); i++) {
-        articles[i] = new Article.SerializationProxy(ar.getJSONObject(i));
-      }
+      Arrays.parallelSetAll(articles, i -> new Article.SerializationProxy(ar.getJSONObject(i)));
 
       JSONArray au = json.getJSONArray("authors");
       authors = new Author.SerializationProxy[au.length()];
-      for (int i = 0; i < au.length(); i++) {
-        authors[i] = new Author.SerializationProxy(au.getJSONObject(i));
-      }
+      Arrays.parallelSetAll(authors, i -> new Author.SerializationProxy(au.getJSONObject(i)));
 
       JSONArray jo = json.getJSONArray("journals");
       journals = new Journal.SerializationProxy[jo.length()];
-      for (int i = 0; i < jo.length(); i++) {
-        journals[i] = new Journal.SerializationProxy(jo.getJSONObject(i));
-      }
+      Arrays.parallelSetAll(journals, i -> new Journal.SerializationProxy(jo.getJSONObject(i)));
 
       JSONArray ta = json.getJSONArray("tags");
       tags = new Tag.SerializationProxy[ta.length()];
-      for (int i = 0; i < ta.length(); i++) {
-        tags[i] = new Tag.SerializationProxy(ta.getJSONObject(i));
+      Arrays.parallelSetAll(tags, i -> new Tag.SerializationProxy(ta.getJSONObject(i)));
+
+      graphs = new HashMap<>();
+      JSONObject gr = json.optJSONObject("graphs");
+      if (gr != null) {
+        for (String name : gr.keySet()) {
+          graphs.put(name, new GraphSettings(gr.getJSONObject(name)));
+        }
       }
     }
 
     public String toJson() {
-      JSONArray articleArray = new JSONArray();
-      for (Article.SerializationProxy a : articles) {
-        articleArray.put(a.toJson());
-      }
-
-      JSONArray authorArray = new JSONArray();
-      for (Author.SerializationProxy a : authors) {
-        authorArray.put(a.toJson());
-      }
-
-      JSONArray journalArray = new JSONArray();
-      for (Journal.SerializationProxy j : journals) {
-        journalArray.put(j.toJson());
-      }
-
-      JSONArray tagArray = new JSONArray();
-      for (Tag.SerializationProxy t : tags) {
-        tagArray.put(t.toJson());
+      StringWriter sw = new StringWriter();
+      try {
+        new ProjectWriter(this).write(sw);
+      } catch (IOException ex) {
+        throw new IllegalStateException(ex);
       }
-
-      JSONObject json = new JSONObject();
-      json.put("version", "1.0");
-      json.put("articles", articleArray);
-      json.put("authors", authorArray);
-      json.put("journals", journalArray);
-      json.put("tags", tagArray);
-      return json.toString(2);
+      return sw.toString();
     }
   }
 }
@@ -16,18 +16,33 @@ package se.dansarie.jsnowball.model;
 
 import java.util.Objects;
 
-abstract class SnowballStateMember implements Comparable<SnowballStateMember> {
-  private SnowballState state = null;
+public abstract class SnowballStateMember implements Comparable<SnowballStateMember> {
+  private final SnowballState state;
   private String notes = "";
+  private float graphX = Float.NaN;
+  private float graphY = Float.NaN;
+  private int id = -1;
 
+  /* Creates a member that is not yet added to the state. Subclass constructors add the member
+     with addToState once their fields have been initialized, so that other threads never see a
+     half-built member. */
   SnowballStateMember(SnowballState state) {
     this.state = Objects.requireNonNull(state);
-    lock();
-    try {
-      state.addMember(this);
-    } finally {
-      unlock();
-    }
+  }
+
+  /* Creates a member that is not added to the state. Used when a whole state is loaded at once, in
+     which case the state adds all members to its lists itself. Loaded members are created on
+     several threads before the state is handed out, so no lock is taken. */
+  SnowballStateMember(SnowballState state, int id, String notes, float graphX, float graphY) {
+    this.state = Objects.requireNonNull(state);
+    this.id = id;
+    this.notes = Objects.requireNonNullElse(notes, "");
+    this.graphX = graphX;
+    this.graphY = graphY;
+  }
+
+  void addToState() {
+    state.addMember(this);
   }
 
   protected void lock() {
@@ -38,6 +53,14 @@ abstract class SnowballStateMember implements Comparable<SnowballStateMember> {
     state.unlock();
   }
 
+  protected void readLock() {
+    state.readLock();
+  }
+
+  protected void readUnlock() {
+    state.readUnlock();
+  }
+
   protected void fireUpdated() {
     lock();
     try {
@@ -48,27 +71,78 @@ abstract class SnowballStateMember implements Comparable<SnowballStateMember> {
   }
 
   public SnowballState getState() {
-    lock();
+    return state;
+  }
+
+  public String getNotes() {
+    readLock();
     try {
-      return state;
+      return notes;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
-  public String getNotes() {
+  public void setNotes(String notes) {
     lock();
     try {
-      return notes;
+      this.notes = Objects.requireNonNullElse(notes, "");
+      state.journalChanged(this);
     } finally {
       unlock();
     }
   }
 
-  public void setNotes(String notes) {
+  /* Returns the identifier of the member, which is unique within the state and is kept when the
+     project is saved and loaded. The change journal refers to members by their identifiers. */
+  int getId() {
+    return id;
+  }
+
+  void setId(int id) {
+    this.id = id;
+  }
+
+  /* Returns true if the member has a stored position in a graph. */
+  public boolean hasGraphPosition() {
+    readLock();
+    try {
+      return !Float.isNaN(graphX) && !Float.isNaN(graphY);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  public float getGraphX() {
+    readLock();
+    try {
+      return graphX;
+    } finally {
+      readUnlock();
+    }
+  }
+
+  public float getGraphY() {
+    readLock();
+    try {
+      return graphY;
+    } finally {
+      readUnlock();
+    }
+  }
+
+  /* Stores the position of the member in a graph, so that it can be saved with the project. A new
+     position marks the project as unsaved and is recorded in the change journal, but does not fire
+     any updates. */
+  public void setGraphPosition(float x, float y) {
     lock();
     try {
-      this.notes = Objects.requireNonNullElse(notes, "");
+      if (Float.compare(graphX, x) == 0 && Float.compare(graphY, y) == 0) {
+        return;
+      }
+      graphX = x;
+      graphY = y;
+      getState().graphPositionChanged(this);
     } finally {
       unlock();
     }
@@ -24,35 +24,66 @@ public class Tag extends SnowballStateMember {
   private String name = "";
   private int color = 0;
   private TagShape shape = TagShape.CIRCLE;
+  private int articleCount = 0;
 
   public Tag(SnowballState state) {
     super(state);
+    addToState();
   }
 
-  public int getColor() {
+  /* Restores a tag that is loaded together with the rest of the state. */
+  Tag(SnowballState state, SerializationProxy proxy) {
+    super(state, proxy.id, proxy.notes, Float.NaN, Float.NaN);
+    if (proxy.color < 0 || proxy.color >= (1 << 24)) {
+      throw new IllegalArgumentException();
+    }
+    color = proxy.color;
+    name = Objects.requireNonNullElse(proxy.name, "");
+    shape = Objects.requireNonNull(proxy.shape);
+  }
+
+  void addArticle() {
     lock();
     try {
-      return color;
+      articleCount += 1;
     } finally {
       unlock();
     }
   }
 
+  public int getArticleCount() {
+    readLock();
+    try {
+      return articleCount;
+    } finally {
+      readUnlock();
+    }
+  }
+
+  public int getColor() {
+    readLock();
+    try {
+      return color;
+    } finally {
+      readUnlock();
+    }
+  }
+
   public String getName() {
-    lock();
+    readLock();
     try {
       return name;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   public TagShape getShape() {
-    lock();
+    readLock();
     try {
       return shape;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
@@ -138,10 +169,19 @@ public class Tag extends SnowballStateMember {
       throw new IllegalArgumentException("Attempted to compare tags belonging to different "
           + "states.");
     }
-    lock();
+    readLock();
     try {
       List<Tag> tags = getState().getTags();
       return tags.indexOf(this) - tags.indexOf(other);
+    } finally {
+      readUnlock();
+    }
+  }
+
+  void removeArticle() {
+    lock();
+    try {
+      articleCount -= 1;
     } finally {
       unlock();
     }
@@ -164,20 +204,20 @@ public class Tag extends SnowballStateMember {
 
   @Override
   public String toString() {
-    lock();
+    readLock();
     try {
       return name;
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
   SerializationProxy getSerializationProxy() {
-    lock();
+    readLock();
     try {
       return new SerializationProxy(this);
     } finally {
-      unlock();
+      readUnlock();
     }
   }
 
@@ -185,11 +225,15 @@ public class Tag extends SnowballStateMember {
     lock();
     try {
       getState().pushInhibitUpdates();
-      setColor(proxy.color);
-      setName(proxy.name);
-      setNotes(proxy.notes);
-      setShape(proxy.shape);
-      getState().popInhibitUpdates();
+      try {
+        getState().restoreId(this, proxy.id);
+        setColor(proxy.color);
+        setName(proxy.name);
+        setNotes(proxy.notes);
+        setShape(proxy.shape);
+      } finally {
+        getState().popInhibitUpdates();
+      }
     } finally {
       unlock();
     }
@@ -200,8 +244,14 @@ public class Tag extends SnowballStateMember {
     private final String notes;
     private final int color;
     private final TagShape shape;
+    private final int id;
+
+    /* Column types in the binary project format. */
+    static final int[] COLUMNS = {BinaryProject.STRING, BinaryProject.STRING, BinaryProject.INT,
+        BinaryProject.STRING, BinaryProject.INT};
 
     SerializationProxy(JSONObject json) {
+      id = json.optInt("id", -1);
       name = json.getString("name");
       notes = json.getString("notes");
       color = json.getInt("color");
@@ -215,20 +265,45 @@ public class Tag extends SnowballStateMember {
     }
 
     private SerializationProxy(Tag ta) {
+      id = ta.getId();
       color = ta.color;
       name = ta.name;
       notes = ta.getNotes();
       shape = ta.shape;
     }
 
+    SerializationProxy(BinaryProject.SectionReader in) {
+      name = in.getString();
+      notes = in.getString();
+      color = in.getInt();
+      TagShape sh = TagShape.CIRCLE;
+      try {
+        sh = TagShape.valueOf(in.getString());
+      } catch (IllegalArgumentException ex) {
+        /* Ignore. */
+      }
+      shape = sh;
+      id = in.getInt();
+    }
+
     JSONObject toJson() {
       JSONObject json = new JSONObject();
+      json.put("id", id);
       json.put("name", name);
       json.put("notes", notes);
       json.put("color", color);
       json.put("shape", shape.toString());
       return json;
     }
+
+    void toBinary(BinaryProject.SectionWriter out) {
+      out.putString(name);
+      out.putString(notes);
+      out.putInt(color);
+      out.putString(shape.toString());
+      out.putInt(id);
+      out.endRow();
+    }
   }
 
   public static enum TagShape {
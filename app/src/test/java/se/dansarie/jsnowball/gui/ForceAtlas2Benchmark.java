@@ -0,0 +1,51 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import java.util.concurrent.ForkJoinPool;
+
+/* Measures the time per layout iteration for a random graph with increasing numbers of threads.
+   Run with ./gradlew benchmarkLayout. The number of nodes can be given as an argument. */
+public class ForceAtlas2Benchmark {
+  private static final int WARMUP = 20;
+  private static final int ITERATIONS = 50;
+
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    int cores = Runtime.getRuntime().availableProcessors();
+    System.out.printf("%d nodes, %d cores%n", n, cores);
+    double base = 0;
+    for (int threads = 1; threads <= cores; threads = threads < cores
+        ? Math.min(threads * 2, cores) : threads + 1) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      ForceAtlas2 fa = TestForceAtlas2.randomGraph(n, 1);
+      fa.pool = threads > 1 ? pool : null;
+      for (int i = 0; i < WARMUP; i++) {
+        fa.step(-1);
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        fa.step(-1);
+      }
+      double ms = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+      if (threads == 1) {
+        base = ms;
+      }
+      System.out.printf("%2d threads: %8.2f ms/iteration, speedup %5.2f%n", threads, ms,
+          base / ms);
+      pool.shutdown();
+    }
+  }
+}
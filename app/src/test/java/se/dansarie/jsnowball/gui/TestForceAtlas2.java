@@ -0,0 +1,102 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+public class TestForceAtlas2 {
+  /* Creates a random graph where every node cites up to three earlier nodes. */
+  static ForceAtlas2 randomGraph(int n, long seed) {
+    Random rand = new Random(seed);
+    int[] degree = new int[n];
+    int[] edgeStart = new int[n + 1];
+    int[] edgeTarget = new int[3 * n];
+    for (int i = 0; i < n; i++) {
+      edgeStart[i + 1] = edgeStart[i];
+      for (int k = 0; k < 3 && i > k; k++) {
+        int j = rand.nextInt(i);
+        edgeTarget[edgeStart[i + 1]++] = j;
+        degree[j] += 1;
+      }
+    }
+    ForceAtlas2 fa = new ForceAtlas2(n, degree, edgeStart, edgeTarget);
+    for (int i = 0; i < n; i++) {
+      fa.x[i] = rand.nextFloat() * 1000;
+      fa.y[i] = rand.nextFloat() * 1000;
+      fa.size[i] = 20;
+    }
+    return fa;
+  }
+
+  @Test
+  public void testBarnesHutMatchesExact() {
+    int n = 2 * ForceAtlas2.EXACT_LIMIT;
+    ForceAtlas2 exact = randomGraph(n, 1);
+    ForceAtlas2 approx = randomGraph(n, 1);
+    exact.theta = 0;
+    approx.theta = 0.5F;
+    exact.step(-1);
+    approx.step(-1);
+    double error = 0;
+    double total = 0;
+    for (int i = 0; i < n; i++) {
+      error += Math.hypot(exact.fx[i] - approx.fx[i], exact.fy[i] - approx.fy[i]);
+      total += Math.hypot(exact.fx[i], exact.fy[i]);
+    }
+    assertTrue(error / total < 0.02);
+  }
+
+  @Test
+  public void testStep() {
+    ForceAtlas2 fa = randomGraph(1000, 2);
+    fa.preventoverlap = true;
+    fa.step(-1);
+    float minx = Float.MAX_VALUE;
+    float miny = Float.MAX_VALUE;
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(Float.isFinite(fa.x[i]) && Float.isFinite(fa.y[i]));
+      minx = Math.min(minx, fa.x[i]);
+      miny = Math.min(miny, fa.y[i]);
+    }
+    assertEquals(0F, minx);
+    assertEquals(0F, miny);
+  }
+
+  @Test
+  public void testParallelMatchesSequential() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (float theta : new float[] {0, 1.2F}) {
+      ForceAtlas2 sequential = randomGraph(ForceAtlas2.PARALLEL_LIMIT, 3);
+      ForceAtlas2 parallel = randomGraph(ForceAtlas2.PARALLEL_LIMIT, 3);
+      sequential.theta = theta;
+      parallel.theta = theta;
+      parallel.pool = pool;
+      sequential.step(5);
+      parallel.step(5);
+      /* The sums are added up in a different order, so the results are not bit-identical. */
+      for (int i = 0; i < ForceAtlas2.PARALLEL_LIMIT; i++) {
+        assertEquals(sequential.x[i], parallel.x[i], 0.1);
+        assertEquals(sequential.y[i], parallel.y[i], 0.1);
+      }
+    }
+    pool.shutdown();
+  }
+}
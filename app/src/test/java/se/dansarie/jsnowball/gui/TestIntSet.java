@@ -0,0 +1,51 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+public class TestIntSet {
+  @Test
+  public void testAddRemove() {
+    Random rand = new Random(1);
+    IntSet set = new IntSet();
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int i = 0; i < 10000; i++) {
+      int value = rand.nextInt(500);
+      if (rand.nextBoolean()) {
+        assertEquals(expected.add(value), set.add(value));
+      } else {
+        assertEquals(expected.remove(value), set.remove(value));
+      }
+    }
+    assertEquals(expected.size(), set.size());
+    int k = 0;
+    for (int value : expected) {
+      assertEquals(value, set.get(k++));
+      assertTrue(set.contains(value));
+    }
+    assertFalse(set.contains(500));
+    set.clear();
+    assertEquals(0, set.size());
+  }
+}
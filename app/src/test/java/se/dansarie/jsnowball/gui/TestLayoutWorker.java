@@ -0,0 +1,98 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class TestLayoutWorker {
+  /* Creates a path graph with ten nodes. */
+  private static ForceAtlas2 pathGraph() {
+    int n = 10;
+    int[] degree = new int[n];
+    int[] edgeStart = new int[n + 1];
+    int[] edgeTarget = new int[n - 1];
+    for (int i = 1; i < n; i++) {
+      edgeTarget[i - 1] = i - 1;
+      edgeStart[i + 1] = i;
+      degree[i - 1] = 1;
+    }
+    edgeStart[1] = 0;
+    ForceAtlas2 fa = new ForceAtlas2(n, degree, edgeStart, edgeTarget);
+    for (int i = 0; i < n; i++) {
+      fa.x[i] = i % 3 * 30;
+      fa.y[i] = i / 3 * 30;
+      fa.size[i] = 10;
+    }
+    return fa;
+  }
+
+  @Test
+  public void testFramesAndConvergence() throws InterruptedException {
+    Semaphore frames = new Semaphore(0);
+    AtomicInteger count = new AtomicInteger();
+    LayoutWorker worker = new LayoutWorker("Test layout", fa -> { }, () -> {
+      count.incrementAndGet();
+      frames.release();
+    });
+    ForceAtlas2 layout = pathGraph();
+    worker.setLayout(layout, null);
+    worker.setRunning(true);
+    assertTrue(frames.tryAcquire(5, TimeUnit.SECONDS));
+    LayoutWorker.Frame frame = worker.takeFrame();
+    assertNotNull(frame);
+    assertSame(layout, frame.layout);
+    assertEquals(10, frame.x.length);
+    worker.releaseFrame(frame);
+
+    /* The worker stops producing frames once the layout has converged. */
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+    int previous;
+    do {
+      previous = count.get();
+      Thread.sleep(600);
+    } while (count.get() != previous && System.nanoTime() < deadline);
+    assertEquals(previous, count.get());
+
+    frames.drainPermits();
+    worker.wake();
+    assertTrue(frames.tryAcquire(5, TimeUnit.SECONDS));
+    worker.setRunning(false);
+  }
+
+  @Test
+  public void testMovedWhilePaused() throws InterruptedException {
+    Semaphore frames = new Semaphore(0);
+    LayoutWorker worker = new LayoutWorker("Test layout", fa -> { }, frames::release);
+    worker.setLayout(pathGraph(), null);
+
+    /* A node that is dragged and released while the layout is paused keeps its new position. */
+    worker.setPinned(0, 1000, 1000);
+    worker.setPinned(-1, 0, 0);
+    worker.setRunning(true);
+    assertTrue(frames.tryAcquire(5, TimeUnit.SECONDS));
+    LayoutWorker.Frame frame = worker.takeFrame();
+    assertTrue(frame.x[0] > 500 && frame.y[0] > 500);
+    worker.setRunning(false);
+  }
+}
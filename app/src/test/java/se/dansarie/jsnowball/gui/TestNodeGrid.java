@@ -0,0 +1,94 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+public class TestNodeGrid {
+  @Test
+  public void testQuery() {
+    Random rand = new Random(1);
+    int n = 2000;
+    float[] x = new float[n];
+    float[] y = new float[n];
+    float[] w = new float[n];
+    float[] h = new float[n];
+    for (int i = 0; i < n; i++) {
+      x[i] = rand.nextFloat() * 5000;
+      y[i] = rand.nextFloat() * 3000;
+      w[i] = 5 + rand.nextFloat() * 25;
+      h[i] = 5 + rand.nextFloat() * 25;
+    }
+    NodeGrid grid = new NodeGrid(32);
+    for (int rebuild = 0; rebuild < 3; rebuild++) {
+      if (rebuild < 2) {
+        grid.reset(n);
+        for (int i = 0; i < n; i++) {
+          grid.setBounds(i, x[i], y[i], w[i], h[i]);
+        }
+        grid.build();
+      } else {
+        /* Move more nodes than fit in the list of moved nodes. */
+        for (int i = 0; i < 100; i++) {
+          x[i * 7] = rand.nextFloat() * 1250;
+          y[i * 7] = rand.nextFloat() * 3000;
+          grid.move(i * 7, x[i * 7], y[i * 7]);
+        }
+      }
+      for (int q = 0; q < 50; q++) {
+        float minx = rand.nextFloat() * 5500 - 250;
+        float miny = rand.nextFloat() * 3500 - 250;
+        float maxx = minx + rand.nextFloat() * 800;
+        float maxy = miny + rand.nextFloat() * 800;
+        Set<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < n; i++) {
+          if (x[i] <= maxx && x[i] + w[i] >= minx && y[i] <= maxy && y[i] + h[i] >= miny) {
+            expected.add(i);
+          }
+        }
+        Set<Integer> found = new TreeSet<>();
+        int[] calls = {0};
+        grid.query(minx, miny, maxx, maxy, i -> {
+          found.add(i);
+          calls[0] += 1;
+        });
+        assertEquals(expected, found);
+        assertEquals(expected.size(), calls[0]);
+
+        float px = rand.nextFloat() * 1300;
+        float py = rand.nextFloat() * 3000;
+        int[] hits = new int[16];
+        int count = grid.find(px, py, hits);
+        int expectedHits = 0;
+        for (int i = 0; i < n; i++) {
+          if (x[i] <= px && x[i] + w[i] >= px && y[i] <= py && y[i] + h[i] >= py) {
+            assertEquals(i, hits[expectedHits++]);
+          }
+        }
+        assertEquals(expectedHits, count);
+      }
+      /* Move the nodes closer together before rebuilding the index. */
+      for (int i = 0; i < n && rebuild == 0; i++) {
+        x[i] /= 4;
+      }
+    }
+  }
+}
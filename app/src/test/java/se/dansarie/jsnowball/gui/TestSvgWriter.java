@@ -0,0 +1,68 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+public class TestSvgWriter {
+  @Test
+  public void testElements() throws IOException {
+    StringWriter out = new StringWriter();
+    SvgWriter svg = new SvgWriter(out);
+    svg.start(100, 50.5);
+    svg.line(1.004, -2.5, 3.25, 0);
+    svg.shape(new Ellipse2D.Float(10, 20, 25, 25), Color.BLACK, null, 0);
+    svg.shape(new Rectangle2D.Float(0, 0, 5, 6), new Color(1, 2, 3, 128), Color.RED, 3);
+    svg.shape(new RhombusShape(30), Color.BLUE, null, 0);
+    svg.text("a<b & \u00e5", 1, 2);
+    svg.end();
+    String[] lines = out.toString().split("\n");
+    assertEquals("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"100\" height=\"50.5\""
+        + " viewBox=\"0 0 100 50.5\">", lines[1]);
+    assertEquals("<line x1=\"1\" y1=\"-2.5\" x2=\"3.25\" y2=\"0\"/>", lines[2]);
+    assertEquals("<ellipse cx=\"22.5\" cy=\"32.5\" rx=\"12.5\" ry=\"12.5\" fill=\"#000000\"/>",
+        lines[3]);
+    assertEquals("<rect x=\"0\" y=\"0\" width=\"5\" height=\"6\" fill=\"#010203\""
+        + " fill-opacity=\"0.5\" stroke=\"#ff0000\" stroke-width=\"3\"/>", lines[4]);
+    assertEquals("<path d=\"M 0 15 L 15 30 L 30 15 L 15 0 Z\" fill-rule=\"evenodd\""
+        + " fill=\"#0000ff\"/>", lines[5]);
+    assertEquals("<text x=\"1\" y=\"2\">a&lt;b &amp; &#229;</text>", lines[6]);
+    assertEquals("</svg>", lines[7]);
+  }
+
+  @Test
+  public void testLargeDocument() throws IOException {
+    StringWriter out = new StringWriter();
+    SvgWriter svg = new SvgWriter(out);
+    svg.start(10, 10);
+    for (int i = 0; i < 10000; i++) {
+      svg.line(i, i, i + 1, i + 1);
+    }
+    svg.end();
+    String[] lines = out.toString().split("\n");
+    assertEquals(10003, lines.length);
+    assertTrue(lines[10001].startsWith("<line x1=\"9999\""));
+  }
+}
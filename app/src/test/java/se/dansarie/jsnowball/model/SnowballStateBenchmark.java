@@ -0,0 +1,104 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Measures how many reads per second a group of reader threads gets from a shared state, first
+   on its own and then while a writer thread keeps renaming articles. Each read takes the article
+   list and the title and reference list of one of the articles. The arguments are the number of
+   articles and the number of readers, which default to 10000 and the number of processors. */
+public class SnowballStateBenchmark {
+  private static final long DURATION = TimeUnit.SECONDS.toNanos(2);
+
+  public static void main(String[] args) throws InterruptedException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+    int readers = args.length > 1 ? Integer.parseInt(args[1])
+        : Runtime.getRuntime().availableProcessors();
+    SnowballState state = new SnowballState();
+    List<Article> articles = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      Article art = new Article(state);
+      art.setTitle("Article " + i);
+      if (i > 0) {
+        art.addReference(articles.get((int)(i * 31L % i)));
+      }
+      articles.add(art);
+    }
+    System.out.printf("%d articles, %d readers%n", n, readers);
+
+    run(state, readers, false);
+    long[] quiet = run(state, readers, false);
+    System.out.printf("no writer:   %12.0f reads/s%n", perSecond(quiet[0]));
+    long[] busy = run(state, readers, true);
+    System.out.printf("one writer:  %12.0f reads/s, %9.0f writes/s%n", perSecond(busy[0]),
+        perSecond(busy[1]));
+  }
+
+  private static double perSecond(long count) {
+    return count / (DURATION / 1e9);
+  }
+
+  /* Runs the readers, and the writer if requested, for DURATION nanoseconds. Returns the number
+     of reads and writes that were made. */
+  private static long[] run(SnowballState state, int readers, boolean write)
+      throws InterruptedException {
+    AtomicBoolean done = new AtomicBoolean(false);
+    LongAdder reads = new LongAdder();
+    LongAdder writes = new LongAdder();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < readers; i++) {
+      int seed = i;
+      threads.add(new Thread(() -> {
+        int idx = seed;
+        while (!done.get()) {
+          List<Article> articles = state.getArticles();
+          idx = (idx + 7919) % articles.size();
+          Article art = articles.get(idx);
+          art.getTitle();
+          art.getReferences().size();
+          reads.increment();
+        }
+      }));
+    }
+    if (write) {
+      threads.add(new Thread(() -> {
+        int idx = 0;
+        while (!done.get()) {
+          List<Article> articles = state.getArticles();
+          idx = (idx + 104729) % articles.size();
+          Article art = articles.get(idx);
+          String title = art.getTitle();
+          art.setTitle(title.endsWith("*") ? title.substring(0, title.length() - 1)
+              : title + "*");
+          writes.increment();
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    TimeUnit.NANOSECONDS.sleep(DURATION);
+    done.set(true);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return new long[] {reads.sum(), writes.sum()};
+  }
+}
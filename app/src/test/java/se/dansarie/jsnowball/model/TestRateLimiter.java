@@ -0,0 +1,47 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class TestRateLimiter {
+  @Test
+  public void testUnlimited() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter();
+    long start = System.nanoTime();
+    for (int i = 0; i < 1000; i++) {
+      limiter.acquire();
+    }
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test
+  public void testRateLimit() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter();
+    limiter.setRate(5, 100, TimeUnit.MILLISECONDS);
+    long start = System.nanoTime();
+    for (int i = 0; i < 15; i++) {
+      limiter.acquire();
+    }
+    /* The first five tokens are available at once, the remaining ten take 200 ms. */
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+    assertThrows(IllegalArgumentException.class, () -> limiter.setRate(0, 1, TimeUnit.SECONDS));
+  }
+}
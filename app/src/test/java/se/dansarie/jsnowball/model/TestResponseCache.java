@@ -0,0 +1,125 @@
+/* Copyright (c) 2023 Marcus Dansarie
+
+   This program is free software: you can redistribute it and/or modify
+   it under the terms of the GNU General Public License as published by
+   the Free Software Foundation, either version 3 of the License, or
+   (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+   GNU General Public License for more details.
+   You should have received a copy of the GNU General Public License
+   along with this program. If not, see <http://www.gnu.org/licenses/>. */
+
+package se.dansarie.jsnowball.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TestResponseCache {
+  private Path dir;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("jsnowball");
+  }
+
+  @Test
+  public void testPersistence() {
+    Path file = dir.resolve("cache.log");
+    ResponseCache cache = new ResponseCache(file, Duration.ofDays(1), 1 << 20);
+    cache.put(ResponseCache.doiKey("10.1000/ABC"), "{\"a\": \"line\\nbreak\"}");
+    cache.put(ResponseCache.arxivKey("2101.00001"), "<feed/>");
+    cache.put(ResponseCache.arxivKey("2101.00001"), "<feed>\n</feed>");
+    ResponseCache reopened = new ResponseCache(file, Duration.ofDays(1), 1 << 20);
+    assertEquals("{\"a\": \"line\\nbreak\"}", reopened.get(ResponseCache.doiKey(
+        "https://doi.org/10.1000/abc")));
+    assertEquals("<feed>\n</feed>", reopened.get(ResponseCache.arxivKey("arXiv:2101.00001")));
+    assertNull(reopened.get(ResponseCache.doiKey("10.1000/other")));
+  }
+
+  @Test
+  public void testExpiry() throws InterruptedException {
+    ResponseCache cache = new ResponseCache(dir.resolve("cache.log"), Duration.ofMillis(1),
+        1 << 20);
+    cache.put(ResponseCache.doiKey("10.1000/abc"), "{}");
+    Thread.sleep(10);
+    assertNull(cache.get(ResponseCache.doiKey("10.1000/abc")));
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    Path file = dir.resolve("cache.log");
+    ResponseCache cache = new ResponseCache(file, Duration.ofDays(1), 4096);
+    String body = "x".repeat(100);
+    for (int i = 0; i < 100; i++) {
+      cache.put(ResponseCache.doiKey("10.1000/" + i), body);
+    }
+    assertTrue(Files.size(file) <= 4096);
+    assertNull(cache.get(ResponseCache.doiKey("10.1000/0")));
+    assertEquals(body, cache.get(ResponseCache.doiKey("10.1000/99")));
+    ResponseCache reopened = new ResponseCache(file, Duration.ofDays(1), 4096);
+    assertEquals(body, reopened.get(ResponseCache.doiKey("10.1000/99")));
+  }
+
+  @Test
+  public void testConcurrentPuts() throws InterruptedException {
+    Path file = dir.resolve("cache.log");
+    ResponseCache cache = new ResponseCache(file, Duration.ofDays(1), 16384);
+    String body = "x".repeat(100);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int first = t * 200;
+      Thread th = new Thread(() -> {
+        for (int i = first; i < first + 200; i++) {
+          cache.put(ResponseCache.doiKey("10.1000/" + i), body + i);
+          cache.get(ResponseCache.doiKey("10.1000/" + (i - 1)));
+        }
+      });
+      threads.add(th);
+      th.start();
+    }
+    for (Thread th : threads) {
+      th.join();
+    }
+
+    /* Every response that is still cached in memory is also in the compacted log. */
+    ResponseCache reopened = new ResponseCache(file, Duration.ofDays(1), 16384);
+    int cached = 0;
+    for (int i = 0; i < 800; i++) {
+      String key = ResponseCache.doiKey("10.1000/" + i);
+      if (cache.get(key) != null) {
+        assertEquals(body + i, reopened.get(key));
+        cached += 1;
+      }
+    }
+    assertTrue(cached > 0);
+  }
+
+  @Test
+  public void testSeedFromDirectory() throws IOException {
+    Path fixtures = Files.createDirectory(dir.resolve("fixtures"));
+    Files.writeString(fixtures.resolve("crossref.json"),
+        "{\"status\": \"ok\", \"message\": {\"DOI\": \"10.1000/XYZ\"}}");
+    Files.writeString(fixtures.resolve("arxiv.xml"), "<feed><entry>\n<id>"
+        + "http://arxiv.org/abs/2101.00001v2</id></entry></feed>");
+    ResponseCache cache = new ResponseCache(dir.resolve("cache.log"), Duration.ofDays(1), 1 << 20);
+    assertEquals(2, cache.seedFromDirectory(fixtures));
+    assertTrue(cache.get(ResponseCache.doiKey("10.1000/xyz")).contains("10.1000/XYZ"));
+    assertTrue(cache.get(ResponseCache.arxivKey("2101.00001")).startsWith("<feed>"));
+    assertTrue(cache.get(ResponseCache.arxivKey("2101.00001v2")).startsWith("<feed>"));
+    assertNull(cache.get(ResponseCache.arxivKey("2101.00001v1")));
+  }
+}
@@ -20,6 +20,31 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -190,6 +215,166 @@ public class TestSnowballState {
         article1_1.distanceTo(article1_2, article2_1));
   }
 
+  @Test
+  public void testDistanceFromStartSet() {
+    assertEquals(-1, state1.getDistanceFromStartSet(article1_1));
+    article1_1.setStartSet(true);
+    assertEquals(0, state1.getDistanceFromStartSet(article1_1));
+    assertEquals(-1, state1.getDistanceFromStartSet(article1_3));
+    article1_1.addReference(article1_2);
+    article1_2.addReference(article1_3);
+    assertEquals(1, state1.getDistanceFromStartSet(article1_2));
+    assertEquals(2, state1.getDistanceFromStartSet(article1_3));
+    article1_3.addReference(article1_1);
+    assertEquals(1, state1.getDistanceFromStartSet(article1_3));
+    article1_3.removeReference(article1_1);
+    assertEquals(2, state1.getDistanceFromStartSet(article1_3));
+    article1_2.setStatus(ArticleStatus.EXCLUDED);
+    assertEquals(-1, state1.getDistanceFromStartSet(article1_2));
+    assertEquals(-1, state1.getDistanceFromStartSet(article1_3));
+    article1_3.setStartSet(true);
+    assertEquals(0, state1.getDistanceFromStartSet(article1_3));
+    assertThrows(IllegalArgumentException.class, () -> state1.getDistanceFromStartSet(article2_1));
+  }
+
+  @Test
+  public void testCounters() {
+    article1_2.addReference(article1_1);
+    article1_3.addReference(article1_1);
+    article1_3.addReference(article1_2);
+    assertEquals(3, author1_1.getArticleCount());
+    assertEquals(3, author1_1.getReferenceCount());
+    assertEquals(1, author1_2.getArticleCount());
+    assertEquals(2, author1_2.getReferenceCount());
+    assertEquals(2, journal1_1.getArticleCount());
+    assertEquals(1, journal1_1.getReferenceCount());
+    assertEquals(1, tag1_1.getArticleCount());
+    assertEquals(2, tag1_2.getArticleCount());
+    article1_1.setJournal(journal1_1);
+    assertEquals(3, journal1_1.getArticleCount());
+    assertEquals(3, journal1_1.getReferenceCount());
+    article1_3.removeReference(article1_1);
+    assertEquals(2, author1_1.getReferenceCount());
+    assertEquals(1, author1_2.getReferenceCount());
+    assertEquals(2, journal1_1.getReferenceCount());
+    article1_1.removeAuthor(author1_2);
+    assertEquals(0, author1_2.getArticleCount());
+    assertEquals(0, author1_2.getReferenceCount());
+    article1_2.removeTag(tag1_2);
+    assertEquals(1, tag1_2.getArticleCount());
+    article1_1.remove();
+    assertEquals(2, author1_1.getArticleCount());
+    assertEquals(1, author1_1.getReferenceCount());
+    assertEquals(2, journal1_1.getArticleCount());
+    assertEquals(0, tag1_1.getArticleCount());
+    assertEquals(0, tag1_2.getArticleCount());
+  }
+
+  @Test
+  public void testReferenceImporter() throws InterruptedException {
+    List<CrossRef.Reference> refs = new ArrayList<>();
+    refs.add(new CrossRef.Reference(new JSONObject("{\"key\": \"r1\", \"DOI\": \"10.1000/182\"}")));
+    refs.add(new CrossRef.Reference(new JSONObject("{\"key\": \"r2\", \"DOI\": \"10.9999/new\"}")));
+    refs.add(new CrossRef.Reference(new JSONObject("{\"key\": \"r3\", \"DOI\": \"10.9999/NEW\"}")));
+    refs.add(new CrossRef.Reference(new JSONObject("{\"key\": \"r4\", "
+        + "\"article-title\": \"Manual\", \"journal-title\": \"Journal1_1\", "
+        + "\"author\": \"Smith\"}")));
+    refs.add(new CrossRef.Reference(new JSONObject("{\"key\": \"r5\", "
+        + "\"article-title\": \"Manual\"}")));
+    AtomicInteger fetches = new AtomicInteger();
+    ReferenceImporter importer = new ReferenceImporter(article1_1, refs, doi -> {
+      fetches.incrementAndGet();
+      return CompletableFuture.failedFuture(new IOException("Not found: " + doi));
+    });
+    assertEquals(2, importer.run());
+    assertEquals(1, fetches.get());
+    assertEquals(1, importer.getErrors().size());
+    Article manual = Article.getByTitle(state1, "Manual");
+    assertEquals(List.of(article1_2, manual), article1_1.getReferences());
+    assertEquals(journal1_1, manual.getJournal());
+    assertEquals("Smith", manual.getAuthors().get(0).getLastName());
+
+    /* Cancelling the import cancels fetches that are still running. */
+    CompletableFuture<CrossRef> pending = new CompletableFuture<>();
+    ReferenceImporter cancelled = new ReferenceImporter(article1_2, refs.subList(1, 2),
+        doi -> pending);
+    cancelled.setProgressListener((stage, done, total, perSecond) -> {
+      if (stage == ReferenceImporter.Stage.FETCH) {
+        new Thread(cancelled::cancel).start();
+      }
+    });
+    assertEquals(0, cancelled.run());
+    assertTrue(pending.isCancelled());
+  }
+
+  private static CrossRef crossRef(String doi, String title, String... references) {
+    JSONArray refs = new JSONArray();
+    for (String ref : references) {
+      refs.put(new JSONObject().put("key", ref).put("DOI", ref));
+    }
+    JSONObject date = new JSONObject().put("date-time", "2023-01-01T00:00:00Z");
+    JSONObject message = new JSONObject()
+        .put("publisher", "Publisher")
+        .put("title", new JSONArray().put(title))
+        .put("references-count", references.length)
+        .put("is-referenced-by-count", 0)
+        .put("source", "Crossref")
+        .put("prefix", "10.1000")
+        .put("DOI", doi)
+        .put("URL", "https://doi.org/" + doi)
+        .put("member", "1")
+        .put("type", "journal-article")
+        .put("created", date)
+        .put("deposited", date)
+        .put("indexed", date)
+        .put("issued", new JSONObject().put("date-parts",
+            new JSONArray().put(new JSONArray().put(2023))))
+        .put("reference", refs);
+    return CrossRef.parse(new JSONObject().put("status", "ok").put("message-type", "work")
+        .put("message", message).toString());
+  }
+
+  @Test
+  public void testCrawler() throws IOException, InterruptedException {
+    Map<String, CrossRef> works = new HashMap<>();
+    works.put("10.1000/181", crossRef("10.1000/181", "Article1_1", "10.1000/182", "10.1000/900"));
+    works.put("10.1000/182", crossRef("10.1000/182", "Article1_2"));
+    works.put("10.1000/900", crossRef("10.1000/900", "Hop 1", "10.1000/901"));
+    works.put("10.1000/901", crossRef("10.1000/901", "Hop 2", "10.1000/902"));
+    AtomicInteger fetches = new AtomicInteger();
+    Function<String, CompletableFuture<CrossRef>> fetcher = doi -> {
+      fetches.incrementAndGet();
+      CrossRef cr = works.get(doi);
+      if (cr == null) {
+        return CompletableFuture.failedFuture(new IOException("Not found: " + doi));
+      }
+      return CompletableFuture.completedFuture(cr);
+    };
+    article1_1.setStartSet(true);
+    Path checkpoint = Files.createTempFile("jsnowball", ".json");
+    Files.delete(checkpoint);
+    SnowballCrawler crawler = new SnowballCrawler(state1, 2, fetcher);
+    crawler.setCheckpoint(checkpoint);
+    assertEquals(3, crawler.run());
+    Article hop1 = Article.getByDoi(state1, "10.1000/900");
+    Article hop2 = Article.getByDoi(state1, "10.1000/901");
+    assertEquals(List.of(article1_2, hop1), article1_1.getReferences());
+    assertEquals(List.of(hop2), hop1.getReferences());
+    assertTrue(hop2.getReferences().isEmpty());
+    assertNull(Article.getByDoi(state1, "10.1000/902"));
+    assertEquals(2, state1.getDistanceFromStartSet(hop2));
+
+    /* A line that was cut off when the crawl was interrupted is ignored. */
+    Files.writeString(checkpoint, "{\"doi\":", StandardOpenOption.APPEND);
+    int before = fetches.get();
+    crawler = new SnowballCrawler(state1, 2, fetcher);
+    crawler.setCheckpoint(checkpoint);
+    assertEquals(0, crawler.run());
+    assertEquals(before, fetches.get());
+    assertEquals(4, Files.readAllLines(checkpoint).size());
+    Files.delete(checkpoint);
+  }
+
   @Test
   public void testGetDoi() {
     assertEquals("10.1000/181", article1_1.getDoi());
@@ -286,6 +471,112 @@ public class TestSnowballState {
     assertNull(Article.getByTitle(state2, "Article1_3"));
   }
 
+  @Test
+  public void testLookupsFollowKeyChanges() {
+    assertEquals(article1_1, Article.getByDoi(state1, " 10.1000/181 "));
+    article1_1.setDoi("10.1000/ABC");
+    assertNull(Article.getByDoi(state1, "10.1000/181"));
+    assertEquals(article1_1, Article.getByDoi(state1, "10.1000/abc"));
+    article1_1.setTitle("Renamed");
+    assertNull(Article.getByTitle(state1, "Article1_1"));
+    assertEquals(article1_1, Article.getByTitle(state1, "Renamed"));
+    article1_1.remove();
+    assertNull(Article.getByDoi(state1, "10.1000/abc"));
+    assertNull(Article.getByTitle(state1, "Renamed"));
+
+    assertEquals(author1_1, Author.getByOrcid(state1, "0000-0002-1825-0097"));
+    assertEquals(author1_1, Author.getByName(state1, "josiah", "STINKNEY CARBERRY"));
+    author1_1.setLastName("Carberry");
+    assertNull(Author.getByName(state1, "Josiah", "Stinkney Carberry"));
+    assertEquals(author1_1, Author.getByName(state1, "Josiah", "Carberry"));
+    assertEquals(author1_1, state1.getAuthorFromStrings("Josiah", "Carberry"));
+    assertNull(Author.getByName(state2, "Josiah", "Carberry"));
+
+    assertEquals(journal1_1, Journal.getByIssn(state1, "0000-1111"));
+    assertEquals(journal1_1, state1.getJournalFromString("Journal1_1"));
+    journal1_1.setIssn("0000-3333");
+    assertNull(Journal.getByIssn(state1, "0000-1111"));
+    assertEquals(journal1_1, state1.getJournalFromIssn("0000-3333"));
+    journal1_1.remove();
+    assertNull(Journal.getByName(state1, "Journal1_1"));
+  }
+
+  @Test
+  public void testConcurrentReaders() throws InterruptedException {
+    AtomicBoolean done = new AtomicBoolean(false);
+    ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+    List<Thread> readers = new ArrayList<>();
+    for (int i = 0; i < Math.max(2, Runtime.getRuntime().availableProcessors()); i++) {
+      Thread reader = new Thread(() -> {
+        try {
+          long lastVersion = 0;
+          int lastSize = 0;
+          while (!done.get()) {
+            long version = state1.getVersion();
+            List<Article> articles = state1.getArticles();
+            assertTrue(version >= lastVersion);
+            assertTrue(articles.size() >= lastSize);
+            assertThrows(UnsupportedOperationException.class, () -> articles.add(article1_1));
+            for (Article art : articles) {
+              art.getTitle();
+              art.getReferences().size();
+            }
+            lastVersion = version;
+            lastSize = articles.size();
+          }
+        } catch (Throwable ex) {
+          errors.add(ex);
+        }
+      });
+      readers.add(reader);
+      reader.start();
+    }
+    for (int i = 0; i < 200; i++) {
+      Article art = new Article(state1);
+      art.setTitle("Concurrent " + i);
+      art.addReference(article1_1);
+    }
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertTrue(errors.isEmpty(), errors.toString());
+    assertEquals(203, state1.getArticles().size());
+    assertEquals(200, article1_1.getReferencesTo().size());
+  }
+
+  @Test
+  public void testListsStaySorted() {
+    for (int i = 0; i < 40; i++) {
+      Article art = new Article(state1);
+      art.setTitle("Sorted " + ((i * 17) % 40));
+    }
+    assertSorted(state1.getArticles());
+    article1_1.setTitle("Zzz");
+    assertSorted(state1.getArticles());
+    assertEquals(article1_1, state1.getArticles().get(state1.getArticles().size() - 1));
+    state1.pushInhibitUpdates();
+    for (Article art : state1.getArticles()) {
+      if (art.getTitle().startsWith("Sorted 1")) {
+        art.setTitle("Aaa " + art.getTitle());
+      }
+    }
+    state1.popInhibitUpdates();
+    assertSorted(state1.getArticles());
+    state1.pushInhibitUpdates();
+    for (Article art : state1.getArticles()) {
+      art.setTitle("Reversed " + (1000 - state1.getArticles().indexOf(art)));
+    }
+    state1.popInhibitUpdates();
+    assertSorted(state1.getArticles());
+  }
+
+  private static <E extends Comparable<? super E>> void assertSorted(List<E> list) {
+    for (int i = 1; i < list.size(); i++) {
+      assertTrue(list.get(i - 1).compareTo(list.get(i)) <= 0);
+    }
+  }
+
   @Test
   public void testSerialization() {
     article1_1.addReference(article1_2);
@@ -309,4 +600,314 @@ public class TestSnowballState {
     assertEquals(article2, article1.getReferences().get(0));
     assertEquals(article1, article2.getReferencesTo().get(0));
   }
+
+  @Test
+  public void testGraphLayoutSerialization() {
+    assertFalse(article1_1.hasGraphPosition());
+    article1_1.setGraphPosition(12.5F, -3);
+    author1_1.setGraphPosition(100, 200);
+    state1.setGraphSettings("articles", new GraphSettings(10, 2, 0.5F, 0, true, false, true,
+        false));
+    SnowballState restored = SnowballState.fromJson(state1.getSerializationProxy().toJson());
+    Article article1 = Article.getByTitle(restored, "Article1_1");
+    Article article2 = Article.getByTitle(restored, "Article1_2");
+    assertTrue(article1.hasGraphPosition());
+    assertEquals(12.5F, article1.getGraphX());
+    assertEquals(-3F, article1.getGraphY());
+    assertFalse(article2.hasGraphPosition());
+    Author author1 = Author.getByOrcid(restored, author1_1.getOrcId());
+    assertEquals(100F, author1.getGraphX());
+    assertEquals(200F, author1.getGraphY());
+    GraphSettings settings = restored.getGraphSettings("articles");
+    assertEquals(10F, settings.getKr());
+    assertEquals(2F, settings.getKg());
+    assertEquals(0.5F, settings.getTau());
+    assertEquals(0F, settings.getTheta());
+    assertTrue(settings.isLinlog());
+    assertFalse(settings.isStrongGravity());
+    assertTrue(settings.isDissuadeHubs());
+    assertFalse(settings.isPreventOverlap());
+    assertNull(restored.getGraphSettings("authors"));
+
+    /* Moving a node marks the project as unsaved. Storing the same position does not. */
+    assertTrue(restored.isSaved());
+    article1.setGraphPosition(12.5F, -3);
+    assertTrue(restored.isSaved());
+    article1.setGraphPosition(13, -3);
+    assertFalse(restored.isSaved());
+  }
+
+  @Test
+  public void testStreamingLoad() {
+    tag1_1.setName("Tag1_1");
+    tag1_2.setName("Tag1_2");
+    article1_1.addReference(article1_3);
+    article1_3.addReference(article1_2);
+    JSONObject json = new JSONObject(state1.getSerializationProxy().toJson());
+    /* Articles first, so that they refer to authors, journals, tags and articles not yet read. */
+    String reordered = "{\"articles\":" + json.getJSONArray("articles") + ",\"unknown\":[1,{}],"
+        + "\"tags\":" + json.getJSONArray("tags") + ",\"version\":\"1.0\",\"authors\":"
+        + json.getJSONArray("authors") + ",\"journals\":" + json.getJSONArray("journals") + "}";
+    SnowballState restored = SnowballState.fromJson(new StringReader(reordered));
+    SnowballState expected = SnowballState.fromJson(json.toString());
+    assertTrue(restored.isSaved());
+    assertEquals(toStrings(expected.getArticles()), toStrings(restored.getArticles()));
+    assertEquals(toStrings(expected.getAuthors()), toStrings(restored.getAuthors()));
+    assertEquals(toStrings(expected.getJournals()), toStrings(restored.getJournals()));
+    assertEquals(toStrings(expected.getTags()), toStrings(restored.getTags()));
+    for (int i = 0; i < expected.getArticles().size(); i++) {
+      Article exp = expected.getArticles().get(i);
+      Article art = restored.getArticles().get(i);
+      assertEquals(toStrings(exp.getAuthors()), toStrings(art.getAuthors()));
+      assertEquals(toStrings(exp.getReferences()), toStrings(art.getReferences()));
+      assertEquals(toStrings(exp.getTags()), toStrings(art.getTags()));
+      assertEquals(String.valueOf(exp.getJournal()), String.valueOf(art.getJournal()));
+    }
+
+    String missing = "{\"version\":\"1.0\",\"articles\":" + json.getJSONArray("articles")
+        + ",\"authors\":[],\"journals\":" + json.getJSONArray("journals") + ",\"tags\":"
+        + json.getJSONArray("tags") + "}";
+    assertThrows(JSONException.class, () -> SnowballState.fromJson(new StringReader(missing)));
+    assertThrows(JSONException.class, () -> SnowballState.fromJson(
+        new StringReader("{\"version\":\"1.0\",\"articles\":[}")));
+  }
+
+  @Test
+  public void testProjectWriter() throws IOException {
+    article1_1.addReference(article1_2);
+    Path file = Files.createTempFile("jsnowball", ".json");
+    Files.writeString(file, "old");
+    for (int i = 0; i < 2000; i++) {
+      new Tag(state2);
+    }
+    ProjectWriter cancelled = new ProjectWriter(state2.getSnapshot());
+    cancelled.cancel();
+    assertThrows(InterruptedIOException.class, () -> cancelled.save(file));
+    assertEquals("old", Files.readString(file));
+
+    SnowballState.SerializationProxy snapshot = state1.getSnapshot();
+    assertFalse(state1.isSaved());
+    article1_2.setTitle("Changed");
+    new ProjectWriter(snapshot).save(file);
+    state1.markSaved(snapshot);
+    assertFalse(state1.isSaved());
+    SnowballState restored;
+    try (Reader reader = Files.newBufferedReader(file)) {
+      restored = SnowballState.fromJson(reader);
+    }
+    assertEquals(List.of("Article1_2"), toStrings(Article.getByTitle(restored, "Article1_1")
+        .getReferences()));
+    assertEquals(toStrings(state1.getAuthors()), toStrings(restored.getAuthors()));
+
+    snapshot = state1.getSnapshot();
+    new ProjectWriter(snapshot).save(file);
+    state1.markSaved(snapshot);
+    assertTrue(state1.isSaved());
+    Files.delete(file);
+
+    /* A new file gets the same permissions as any other new file. */
+    Path other = Files.createTempFile("jsnowball", ".json");
+    Files.delete(other);
+    Files.createFile(other);
+    new ProjectWriter(snapshot).save(file);
+    try {
+      assertEquals(Files.getPosixFilePermissions(other), Files.getPosixFilePermissions(file));
+    } catch (UnsupportedOperationException ex) {
+      /* Not a POSIX file system. */
+    }
+    Files.delete(other);
+    Files.delete(file);
+  }
+
+  @Test
+  public void testBinaryProject() throws IOException {
+    article1_1.addReference(article1_3);
+    article1_3.addReference(article1_2);
+    article1_1.setStartSet(true);
+    article1_2.setGraphPosition(1.5F, -2);
+    tag1_1.setName("Tag1_1 \u00e5");
+    tag1_1.setShape(Tag.TagShape.RHOMBUS);
+    state1.setGraphSettings("articles", new GraphSettings(10, 2, 0.5F, 0, true, false, true,
+        false));
+    Path file = Files.createTempFile("jsnowball", ".jsnb");
+    new ProjectWriter(state1.getSnapshot()).save(file);
+    SnowballState restored = SnowballState.load(file);
+    SnowballState expected = SnowballState.fromJson(state1.getSerializationProxy().toJson());
+    assertEquals(expected.getSerializationProxy().toJson(),
+        restored.getSerializationProxy().toJson());
+    assertEquals(List.of("Article1_2"), toStrings(Article.getByTitle(restored, "Article1_3")
+        .getReferences()));
+    assertTrue(Article.getByTitle(restored, "Article1_1").inStartSet());
+    assertEquals(-2F, Article.getByTitle(restored, "Article1_2").getGraphY());
+    assertTrue(restored.getGraphSettings("articles").isLinlog());
+
+    Path json = Files.createTempFile("jsnowball", ".json");
+    new ProjectWriter(restored.getSnapshot()).save(json);
+    assertEquals(toStrings(restored.getArticles()), toStrings(SnowballState.load(json)
+        .getArticles()));
+    Files.delete(json);
+
+    byte[] data = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(data, data.length / 2));
+    assertThrows(IOException.class, () -> SnowballState.load(file));
+    Files.delete(file);
+  }
+
+  @Test
+  public void testChangeJournal() throws IOException {
+    Path file = Files.createTempFile("jsnowball", ".json");
+    new ProjectWriter(state1.getSnapshot()).save(file);
+    SnowballState loaded = SnowballState.load(file);
+    ChangeJournal journal = ChangeJournal.open(loaded, file);
+    assertEquals(0, journal.getReplayed());
+    Article.getByTitle(loaded, "Article1_3").setTitle("Article1_3 renamed");
+    Article added = new Article(loaded);
+    added.setTitle("Article1_4");
+    added.addReference(Article.getByTitle(loaded, "Article1_2"));
+    Author author = new Author(loaded);
+    author.setLastName("Author4");
+    added.addAuthor(author);
+    added.addTag(loaded.getTags().get(1));
+    loaded.getTags().get(1).moveUp();
+    Article.getByTitle(loaded, "Article1_1").remove();
+    journal.flush();
+    added.setNotes("Notes");
+    journal.close();
+
+    SnowballState replayed = SnowballState.load(file);
+    journal = ChangeJournal.open(replayed, file);
+    assertTrue(journal.getReplayed() > 0);
+    assertFalse(replayed.isSaved());
+    assertEquals(loaded.getSerializationProxy().toJson().toString(),
+        replayed.getSerializationProxy().toJson().toString());
+
+    /* Saving drops the replayed records, and later changes are still recorded. */
+    long size = journal.size();
+    SnowballState.SerializationProxy snapshot = replayed.getSnapshot();
+    new ProjectWriter(snapshot).save(file);
+    Article.getByTitle(replayed, "Article1_4").setYear("2023");
+    journal.flush();
+    journal.compact(snapshot);
+    assertTrue(journal.size() < size);
+    journal.close();
+    SnowballState reloaded = SnowballState.load(file);
+    journal = ChangeJournal.open(reloaded, file);
+    assertTrue(journal.getReplayed() > 0);
+    assertEquals("2023", Article.getByTitle(reloaded, "Article1_4").getYear());
+    journal.discard();
+    assertFalse(Files.exists(ChangeJournal.journalFile(file)));
+
+    /* A journal with a record that cannot be replayed is moved aside, and the state is left with
+       updates enabled. */
+    JSONObject invalid = Article.getByTitle(state1, "Article1_2").getSerializationProxy(m -> 0)
+        .toJson().put("status", "INVALID");
+    byte[] json = invalid.toString().getBytes(StandardCharsets.UTF_8);
+    byte[] record = ByteBuffer.allocate(json.length + 6).put((byte)1).putInt(1000)
+        .put((byte)0).put(json).array();
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    Files.write(ChangeJournal.journalFile(file), ByteBuffer.allocate(record.length + 20)
+        .put("JSNOWJNL".getBytes(StandardCharsets.US_ASCII)).putInt(1).putInt(record.length)
+        .putInt((int)crc.getValue()).put(record).array());
+    SnowballState failed = SnowballState.load(file);
+    assertThrows(IOException.class, () -> ChangeJournal.open(failed, file));
+    assertFalse(Files.exists(ChangeJournal.journalFile(file)));
+    assertTrue(Files.exists(ChangeJournal.failedJournalFile(file)));
+    failed.getArticles().get(failed.getArticles().size() - 1).setTitle("A");
+    List<String> titles = new ArrayList<>(toStrings(failed.getArticles()));
+    titles.sort(String::compareToIgnoreCase);
+    assertEquals(titles, toStrings(failed.getArticles()));
+    Files.delete(ChangeJournal.failedJournalFile(file));
+    Files.delete(file);
+  }
+
+  @Test
+  public void testBulkLoad() {
+    article1_1.addReference(article1_3);
+    article1_2.addReference(article1_3);
+    article1_3.addReference(article1_2);
+    article1_2.setTitle("Article0");
+    author1_2.setLastName("Aardvark");
+    tag1_1.setName("Tag1_1");
+    tag1_2.moveUp();
+    SnowballState restored = SnowballState.fromJson(state1.getSerializationProxy().toJson());
+    assertEquals(toStrings(state1.getArticles()), toStrings(restored.getArticles()));
+    assertEquals(toStrings(state1.getAuthors()), toStrings(restored.getAuthors()));
+    assertEquals(toStrings(state1.getTags()), toStrings(restored.getTags()));
+    for (int i = 0; i < state1.getArticles().size(); i++) {
+      Article exp = state1.getArticles().get(i);
+      Article art = restored.getArticles().get(i);
+      assertEquals(toStrings(exp.getAuthors()), toStrings(art.getAuthors()));
+      assertEquals(toStrings(exp.getReferences()), toStrings(art.getReferences()));
+      assertEquals(toStrings(exp.getReferencesTo()), toStrings(art.getReferencesTo()));
+      assertEquals(toStrings(exp.getTags()), toStrings(art.getTags()));
+    }
+    for (int i = 0; i < state1.getAuthors().size(); i++) {
+      Author exp = state1.getAuthors().get(i);
+      Author au = restored.getAuthors().get(i);
+      assertEquals(toStrings(exp.getArticles()), toStrings(au.getArticles()));
+      assertEquals(exp.getReferenceCount(), au.getReferenceCount());
+    }
+    Journal jo = restored.getJournals().get(0);
+    assertEquals(journal1_1.getArticleCount(), jo.getArticleCount());
+    assertEquals(journal1_1.getReferenceCount(), jo.getReferenceCount());
+    assertEquals(tag1_2.getArticleCount(), restored.getTags().get(0).getArticleCount());
+    assertEquals(article1_2, Article.getByTitle(state1, "Article0"));
+    assertEquals("Article0", Article.getByTitle(restored, "Article0").getTitle());
+    assertTrue(restored.isSaved());
+
+    /* New members get identifiers that are not used by any loaded member. */
+    Author au = new Author(restored);
+    for (Author other : restored.getAuthors()) {
+      assertTrue(other == au || other.getId() != au.getId());
+    }
+    JSONObject json = new JSONObject(state1.getSerializationProxy().toJson());
+
+    /* Duplicate indexes are restored once. */
+    JSONObject first = json.getJSONArray("articles").getJSONObject(0);
+    first.put("references", new JSONArray().put(1).put(1));
+    first.put("authors", new JSONArray().put(0).put(0));
+    SnowballState duplicates = SnowballState.fromJson(json.toString());
+    Article dup = Article.getByTitle(duplicates, first.getString("title"));
+    assertEquals(1, dup.getReferences().size());
+    assertEquals(1, dup.getAuthors().size());
+    assertEquals(1, dup.getReferences().get(0).getReferencesTo().stream()
+        .filter(a -> a == dup).count());
+
+    first.put("references", new JSONArray().put(0));
+    assertThrows(IllegalArgumentException.class, () -> SnowballState.fromJson(json.toString()));
+  }
+
+  @Test
+  public void testParallelLoad() throws IOException {
+    /* Enough articles for the binary reader to split them into several chunks. */
+    List<Article> articles = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      Article art = new Article(state2);
+      art.setTitle("Article " + (i * 7919 % 5000));
+      art.addAuthor(i % 2 == 0 ? author2_1 : author2_2);
+      if (i > 0) {
+        art.addReference(articles.get(i * 31 % i));
+      }
+      articles.add(art);
+    }
+    String json = state2.getSerializationProxy().toJson();
+    Path file = Files.createTempFile("jsnowball", ".jsnb");
+    new ProjectWriter(state2.getSnapshot()).save(file);
+    for (SnowballState restored : List.of(SnowballState.fromJson(json),
+        SnowballState.fromJson(new StringReader(json)), SnowballState.load(file))) {
+      assertEquals(json, restored.getSerializationProxy().toJson());
+      assertEquals(author2_1.getReferenceCount(), Author.getByName(restored, "Author1", "State2")
+          .getReferenceCount());
+    }
+    Files.delete(file);
+  }
+
+  private static List<String> toStrings(List<?> members) {
+    List<String> strings = new ArrayList<>();
+    for (Object member : members) {
+      strings.add(member.toString());
+    }
+    return strings;
+  }
 }